@@ -26,6 +26,13 @@ import java.util.Arrays;
 import java.util.Collection;
 
 /**
+ * Decorates the suggestions of a {@link CollectionSuggestionProvider}.
+ * <p>
+ * Overriding {@link #querySuggestions(AutocompleteQuery)} is enough, the
+ * extension queries the provider through the override. The suggestions
+ * returned by {@code super.querySuggestions(query)} are new on every query,
+ * so they can be modified.
+ * </p>
  *
  * @author Max Schuster
  */
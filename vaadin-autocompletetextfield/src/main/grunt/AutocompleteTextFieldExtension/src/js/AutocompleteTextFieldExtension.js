@@ -27,7 +27,8 @@ function eu_maxschuster_vaadin_autocompletetextfield_AutocompleteTextFieldExtens
     var AutoComplete = window.autoComplete,
             self = this,
             fontIconPrefix = "fonticon://",
-            EVENT_SELECT = "autocompletefield-select";
+            EVENT_SELECT = "autocompletefield-select",
+            INCOMPLETE_CLASS = "autocomplete-suggestions-incomplete";
     
     function CustomAutoComplete() {
         AutoComplete.apply(this, arguments);
@@ -71,6 +72,7 @@ function eu_maxschuster_vaadin_autocompletetextfield_AutocompleteTextFieldExtens
     this.init = function () {
         this.lastResponseId = 0;
         this.pendingResponses = {};
+        this.answeredResponse = null;
         this.textField = this.findTextField();
         this.popupContainer = this.findPopupContainer();
         this.autoComplete = this.createAutoComplete(this.getConfig(this.getState()));
@@ -222,11 +224,75 @@ function eu_maxschuster_vaadin_autocompletetextfield_AutocompleteTextFieldExtens
         }
     };
 
-    this.setSuggestions = function (responseId, suggestions) {
-        var pendingResponses = this.pendingResponses;
+    this.setSuggestions = function (responseId, suggestions, incomplete) {
+        var pendingResponses = this.pendingResponses, id;
         if (typeof pendingResponses[responseId] === "function") {
             pendingResponses[responseId](suggestions);
+            // keep it for updateSuggestions
+            this.answeredResponse = {
+                id: responseId,
+                callback: pendingResponses[responseId],
+                empty: !suggestions || suggestions.length === 0
+            };
             delete pendingResponses[responseId];
+            this.setIncomplete(!!incomplete);
+        }
+        // the server skips superseded requests, don't wait for them
+        for (id in pendingResponses) {
+            if (pendingResponses.hasOwnProperty(id) && +id < responseId) {
+                delete pendingResponses[id];
+            }
+        }
+    };
+
+    /**
+     * Replaces the suggestions of the latest request with refined
+     * suggestions.
+     * 
+     * @param {number} responseId
+     * @param {Array} suggestions
+     * @param {boolean} incomplete
+     * @returns {undefined}
+     */
+    this.updateSuggestions = function (responseId, suggestions, incomplete) {
+        var answered = this.answeredResponse,
+                textField = this.textField,
+                instance = textField.autoCompleteInstance;
+        if (!answered || answered.id !== responseId ||
+                responseId !== this.lastResponseId) {
+            return; // superseded by a newer request
+        }
+        if (answered.callback.term !== textField.value ||
+                document.activeElement !== textField) {
+            return; // the user has moved on
+        }
+        // don't reopen a container the user has closed
+        if (!answered.empty && !(instance &&
+                this.autoComplete.isVisible(instance))) {
+            return;
+        }
+        answered.empty = !suggestions || suggestions.length === 0;
+        answered.callback(suggestions);
+        this.setIncomplete(!!incomplete);
+    };
+
+    /**
+     * Marks the suggestions container if the server has stopped looking for
+     * suggestions before finding all of them.
+     * 
+     * @param {boolean} incomplete
+     * @returns {undefined}
+     */
+    this.setIncomplete = function (incomplete) {
+        var instance = this.textField.autoCompleteInstance,
+                sc = instance && instance.suggestionsContainer;
+        if (!sc) {
+            return;
+        }
+        if (incomplete) {
+            sc.classList.add(INCOMPLETE_CLASS);
+        } else {
+            sc.classList.remove(INCOMPLETE_CLASS);
         }
     };
 
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2017 Max Schuster.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.maxschuster.vaadin.autocompletetextfield;
+
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * An {@link AutocompleteSuggestionProvider} that finds its
+ * {@link AutocompleteSuggestion}s in the background.
+ * <p>
+ * The {@link AutocompleteTextFieldExtension} does not wait for the result
+ * while it holds the lock of the session, so a slow provider does not block
+ * other requests of the session. The result is sent to the client-side with
+ * {@link com.vaadin.ui.UI#access(java.lang.Runnable)} once it is available,
+ * which requires server push to be enabled for the UI. Results of queries
+ * that have been superseded by a newer query of the same extension are
+ * discarded.
+ * </p>
+ *
+ * @author Max Schuster
+ * @see AutocompleteTextFieldExtension
+ * @since 3.0
+ */
+public interface AsyncAutocompleteSuggestionProvider extends AutocompleteSuggestionProvider {
+
+    /**
+     * Starts finding {@link AutocompleteSuggestion}s for the given
+     * {@link AutocompleteQuery}. Must not block the calling thread.
+     * <p>
+     * The same rules for the limit as for
+     * {@link #querySuggestions(eu.maxschuster.vaadin.autocompletetextfield.AutocompleteQuery)}
+     * apply.
+     * </p>
+     *
+     * @param query The {@link AutocompleteQuery} generated by a
+     * {@link AutocompleteTextFieldExtension}.
+     * @return A {@link CompletableFuture} completed with the
+     * {@link AutocompleteSuggestion}s for the given {@link AutocompleteQuery}.
+     */
+    public CompletableFuture<Collection<AutocompleteSuggestion>> querySuggestionsAsync(
+            AutocompleteQuery query);
+
+    /**
+     * Finds {@link AutocompleteSuggestion}s for the given
+     * {@link AutocompleteQuery} and waits for the result.
+     *
+     * @param query The {@link AutocompleteQuery}.
+     * @return The result of
+     * {@link #querySuggestionsAsync(eu.maxschuster.vaadin.autocompletetextfield.AutocompleteQuery)}.
+     */
+    @Override
+    public default Collection<AutocompleteSuggestion> querySuggestions(AutocompleteQuery query) {
+        return querySuggestionsAsync(query).join();
+    }
+
+}
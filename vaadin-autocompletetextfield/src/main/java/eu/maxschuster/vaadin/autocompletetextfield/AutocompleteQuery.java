@@ -16,6 +16,7 @@
 package eu.maxschuster.vaadin.autocompletetextfield;
 
 import java.io.Serializable;
+import java.time.Duration;
 import java.util.Objects;
 
 /**
@@ -44,6 +45,27 @@ public final class AutocompleteQuery implements Serializable {
      */
     private final int limit;
 
+    /**
+     * {@link System#nanoTime()} at which the time budget of the query ends.
+     * Only valid if {@link #hasDeadline}.
+     */
+    private final long deadlineNanos;
+
+    /**
+     * Whether the query has a time budget.
+     */
+    private final boolean hasDeadline;
+
+    /**
+     * Set when the query has been superseded by a newer one.
+     */
+    private transient volatile boolean cancelled;
+
+    /**
+     * Set by a provider that has stopped before finding all suggestions.
+     */
+    private transient volatile boolean incomplete;
+
     /**
      * Creates a new query for the given search term.
      *
@@ -62,11 +84,30 @@ public final class AutocompleteQuery implements Serializable {
      * @param limit Max result limit.
      */
     public AutocompleteQuery(AutocompleteTextFieldExtension extension, String term, int limit) {
+        this(extension, term, limit, null);
+    }
+
+    /**
+     * Creates a new query for the given search term with a result limit and
+     * a time budget.
+     *
+     * @param extension The extension that has created this query.
+     * @param term The search term.
+     * @param limit Max result limit.
+     * @param timeBudget Time the providers should spend on the query,
+     * starting now. {@code null} for no time budget.
+     * @since 3.0
+     */
+    public AutocompleteQuery(AutocompleteTextFieldExtension extension, String term,
+            int limit, Duration timeBudget) {
         Objects.requireNonNull(extension, "The extension is null!");
         Objects.requireNonNull(term, "The term is null!");
         this.extension = extension;
         this.term = term;
         this.limit = limit;
+        this.hasDeadline = timeBudget != null;
+        this.deadlineNanos = timeBudget != null
+                ? System.nanoTime() + timeBudget.toNanos() : 0;
     }
 
     /**
@@ -107,6 +148,80 @@ public final class AutocompleteQuery implements Serializable {
         return limit > 0;
     }
 
+    /**
+     * Checks if this query has a time budget.
+     *
+     * @return {@code true} if this query has a time budget.
+     * @since 3.0
+     */
+    public boolean hasDeadline() {
+        return hasDeadline;
+    }
+
+    /**
+     * Gets the {@link System#nanoTime()} at which the time budget of this
+     * query ends. Only valid if {@link #hasDeadline()}.
+     *
+     * @return The deadline in nanoseconds.
+     * @since 3.0
+     */
+    public long getDeadlineNanos() {
+        return deadlineNanos;
+    }
+
+    /**
+     * Checks if the time budget of this query has been used up. Long running
+     * providers should check it now and then, stop early and
+     * {@link #markIncomplete() mark} the query as incomplete.
+     *
+     * @return {@code true} if the time budget has been used up.
+     * @since 3.0
+     */
+    public boolean isExpired() {
+        return hasDeadline && System.nanoTime() - deadlineNanos >= 0;
+    }
+
+    /**
+     * Marks this query as incomplete. Called by a provider that has stopped
+     * before finding all suggestions, e.g. because the time budget has been
+     * used up. The client-side is told that the suggestions may be
+     * incomplete.
+     *
+     * @since 3.0
+     */
+    public void markIncomplete() {
+        incomplete = true;
+    }
+
+    /**
+     * Checks if a provider has stopped before finding all suggestions.
+     *
+     * @return {@code true} if the suggestions may be incomplete.
+     * @since 3.0
+     */
+    public boolean isIncomplete() {
+        return incomplete;
+    }
+
+    /**
+     * Checks if this query has been cancelled because the client-side has
+     * sent a newer query. Long running providers should check it now and then
+     * and stop early, the result of a cancelled query is discarded.
+     *
+     * @return {@code true} if this query has been cancelled.
+     * @since 3.0
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Cancels this query.
+     */
+    void cancel() {
+        cancelled = true;
+    }
+
     @Override
     public String toString() {
         return "AutocompleteQuery{" + "term=" + term + ", limit=" + limit + '}';
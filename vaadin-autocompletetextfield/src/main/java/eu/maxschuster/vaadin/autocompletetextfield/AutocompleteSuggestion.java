@@ -73,6 +73,11 @@ public final class AutocompleteSuggestion implements Serializable {
      */
     private List<String> styleNames;
 
+    /**
+     * The suggestion can no longer be modified.
+     */
+    private boolean readOnly;
+
     /**
      * Creates a new {@link AutocompleteSuggestion} with the given
      * {@code value}.
@@ -123,6 +128,44 @@ public final class AutocompleteSuggestion implements Serializable {
             throw new NullPointerException("value mustn't be null!");
         }
     }
+
+    /**
+     * Checks that the suggestion can be modified.
+     *
+     * @throws UnsupportedOperationException If the suggestion is read-only.
+     */
+    private void checkWritable() throws UnsupportedOperationException {
+        if (readOnly) {
+            throw new UnsupportedOperationException("suggestion is read-only!");
+        }
+    }
+
+    /**
+     * Makes the suggestion read-only. All following attempts to modify it
+     * throw an {@link UnsupportedOperationException}.
+     * <p>
+     * Read-only suggestions can safely be cached by an
+     * {@link AutocompleteSuggestionProvider} and returned by many queries.
+     * </p>
+     *
+     * @return this (for method chaining)
+     * @since 3.0
+     */
+    public AutocompleteSuggestion readOnly() {
+        readOnly = true;
+        return this;
+    }
+
+    /**
+     * Checks if the suggestion is read-only.
+     *
+     * @return {@code true} if the suggestion can no longer be modified.
+     * @see #readOnly()
+     * @since 3.0
+     */
+    public boolean isReadOnly() {
+        return readOnly;
+    }
     
     /**
      * Gets the data of the suggestion.
@@ -141,6 +184,7 @@ public final class AutocompleteSuggestion implements Serializable {
      * @since 3.0
      */
     public void setData(Object data) {
+        checkWritable();
         this.data = data;
     }
     
@@ -176,6 +220,7 @@ public final class AutocompleteSuggestion implements Serializable {
      * @throws NullPointerException If {@code value} is {@code null}.
      */
     public void setValue(String value) throws NullPointerException {
+        checkWritable();
         validateValue(value);
         this.value = value;
     }
@@ -211,6 +256,7 @@ public final class AutocompleteSuggestion implements Serializable {
      * @param description The description {@link String} or {@code null}.
      */
     public void setDescription(String description) {
+        checkWritable();
         this.description = description;
     }
 
@@ -241,6 +287,7 @@ public final class AutocompleteSuggestion implements Serializable {
      * @param icon The icon {@link Resource} or {@code null}.
      */
     public void setIcon(Resource icon) {
+        checkWritable();
         this.icon = icon;
     }
 
@@ -296,6 +343,7 @@ public final class AutocompleteSuggestion implements Serializable {
      * @param styleName The new style to be added to the suggestion.
      */
     public void addStyleName(String styleName) {
+        checkWritable();
         if (styleName == null || styleName.isEmpty()) {
             return;
         }
@@ -335,6 +383,7 @@ public final class AutocompleteSuggestion implements Serializable {
      * @param styleName The style name or style names to be removed.
      */
     public void removeStyleName(String styleName) {
+        checkWritable();
         if (styleName == null || styleName.isEmpty() || styleNames == null) {
             return;
         }
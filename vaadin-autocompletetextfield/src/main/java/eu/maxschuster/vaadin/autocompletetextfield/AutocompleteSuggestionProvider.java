@@ -50,4 +50,29 @@ public interface AutocompleteSuggestionProvider extends Serializable {
      */
     public Collection<AutocompleteSuggestion> querySuggestions(AutocompleteQuery query);
 
+    /**
+     * Finds {@link AutocompleteSuggestion}s for the given
+     * {@link AutocompleteQuery} and adds them to the given {@link Collection}.
+     * <p>
+     * The {@link AutocompleteTextFieldExtension} calls this method with a
+     * buffer it reuses for every query. Providers that override it can avoid
+     * allocating a result {@link Collection} per query. The default
+     * implementation adds the result of
+     * {@link #querySuggestions(eu.maxschuster.vaadin.autocompletetextfield.AutocompleteQuery)}.
+     * </p>
+     *
+     * @param query The {@link AutocompleteQuery} generated by a
+     * {@link AutocompleteTextFieldExtension}.
+     * @param result Receives the {@link AutocompleteSuggestion}s for the given
+     * {@link AutocompleteQuery}.
+     * @since 3.0
+     */
+    public default void collectSuggestions(AutocompleteQuery query,
+            Collection<AutocompleteSuggestion> result) {
+        Collection<AutocompleteSuggestion> suggestions = querySuggestions(query);
+        if (suggestions != null) {
+            result.addAll(suggestions);
+        }
+    }
+
 }
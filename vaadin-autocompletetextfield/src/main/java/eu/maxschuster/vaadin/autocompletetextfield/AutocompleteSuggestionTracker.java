@@ -19,7 +19,6 @@ import java.io.Serializable;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
-import java.util.UUID;
 
 /**
  * Keeps track of visible suggestions.
@@ -34,6 +33,11 @@ public class AutocompleteSuggestionTracker implements Serializable {
      */
     private final Map<String, AutocompleteSuggestion> suggestions
             = new HashMap<>();
+
+    /**
+     * Counter used to generate keys.
+     */
+    private long keyCounter;
     
     /**
      * Tracks the given suggestion and returns a key to later identify it.
@@ -53,13 +57,14 @@ public class AutocompleteSuggestionTracker implements Serializable {
     /**
      * Generates a key for the given suggestion.
      * 
-     * The key can be random.
+     * The key can be random. The default implementation uses a counter, which
+     * is cheaper than a random key and never repeats a key of this tracker.
      * 
      * @param suggestion The suggestion.
      * @return A tracker key.
      */
     protected String generateKey(AutocompleteSuggestion suggestion) {
-        return UUID.randomUUID().toString();
+        return Long.toString(++keyCounter, Character.MAX_RADIX);
     }
 
     /**
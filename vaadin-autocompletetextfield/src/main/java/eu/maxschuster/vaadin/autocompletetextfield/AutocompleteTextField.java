@@ -23,6 +23,7 @@ import com.vaadin.shared.Registration;
 import com.vaadin.shared.ui.ValueChangeMode;
 import com.vaadin.ui.TextField;
 import eu.maxschuster.vaadin.autocompletetextfield.shared.ScrollBehavior;
+import java.time.Duration;
 import java.util.Locale;
 
 /**
@@ -181,6 +182,86 @@ public class AutocompleteTextField extends TextField
         return this;
     }
 
+    /**
+     * Gets the time the {@link AutocompleteSuggestionProvider} should spend on
+     * a query.
+     *
+     * @return The time budget or {@code null} for no limit.
+     * @since 3.0
+     */
+    public Duration getQueryTimeBudget() {
+        return extension.getQueryTimeBudget();
+    }
+
+    /**
+     * Sets the time the {@link AutocompleteSuggestionProvider} should spend on
+     * a query. Providers that support it stop when the time is up, return the
+     * suggestions found so far and let the client-side know that they may be
+     * incomplete.
+     *
+     * @param queryTimeBudget The time budget or {@code null} for no limit.
+     * @throws IllegalArgumentException If {@code queryTimeBudget} is negative.
+     * @since 3.0
+     */
+    public void setQueryTimeBudget(Duration queryTimeBudget)
+            throws IllegalArgumentException {
+        extension.setQueryTimeBudget(queryTimeBudget);
+    }
+
+    /**
+     * Sets the time the {@link AutocompleteSuggestionProvider} should spend on
+     * a query.
+     *
+     * @param queryTimeBudget The time budget or {@code null} for no limit.
+     * @return this (for method chaining)
+     * @throws IllegalArgumentException If {@code queryTimeBudget} is negative.
+     * @see #setQueryTimeBudget(java.time.Duration)
+     * @since 3.0
+     */
+    public AutocompleteTextField withQueryTimeBudget(Duration queryTimeBudget)
+            throws IllegalArgumentException {
+        setQueryTimeBudget(queryTimeBudget);
+        return this;
+    }
+
+    /**
+     * Gets how queries of an {@link AutocompleteSuggestionProvider} that is
+     * not an {@link AsyncAutocompleteSuggestionProvider} are executed.
+     *
+     * @return The execution mode.
+     * @since 3.0
+     */
+    public AutocompleteTextFieldExtension.ExecutionMode getExecutionMode() {
+        return extension.getExecutionMode();
+    }
+
+    /**
+     * Sets how queries of an {@link AutocompleteSuggestionProvider} that is
+     * not an {@link AsyncAutocompleteSuggestionProvider} are executed. The
+     * default is {@link AutocompleteTextFieldExtension.ExecutionMode#SESSION}.
+     *
+     * @param executionMode The execution mode.
+     * @since 3.0
+     */
+    public void setExecutionMode(AutocompleteTextFieldExtension.ExecutionMode executionMode) {
+        extension.setExecutionMode(executionMode);
+    }
+
+    /**
+     * Sets how queries of an {@link AutocompleteSuggestionProvider} that is
+     * not an {@link AsyncAutocompleteSuggestionProvider} are executed.
+     *
+     * @param executionMode The execution mode.
+     * @return this (for method chaining)
+     * @see #setExecutionMode(eu.maxschuster.vaadin.autocompletetextfield.AutocompleteTextFieldExtension.ExecutionMode)
+     * @since 3.0
+     */
+    public AutocompleteTextField withExecutionMode(
+            AutocompleteTextFieldExtension.ExecutionMode executionMode) {
+        setExecutionMode(executionMode);
+        return this;
+    }
+
     /**
      * Checks whether items are rendered as HTML.
      * <p>
@@ -23,21 +23,25 @@ import com.vaadin.server.Resource;
 import com.vaadin.shared.Registration;
 import com.vaadin.ui.AbstractTextField;
 import com.vaadin.ui.JavaScriptFunction;
+import com.vaadin.ui.UI;
 import elemental.json.Json;
 import elemental.json.JsonArray;
 import elemental.json.JsonObject;
 import elemental.json.JsonValue;
 import eu.maxschuster.vaadin.autocompletetextfield.shared.AutocompleteTextFieldExtensionState;
 import eu.maxschuster.vaadin.autocompletetextfield.shared.ScrollBehavior;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -87,6 +91,63 @@ public class AutocompleteTextFieldExtension extends AbstractJavaScriptExtension
      */
     protected AutocompleteSuggestionProvider suggestionProvider = null;
 
+    /**
+     * Buffer reused by every query. Empty between queries.
+     */
+    private transient List<AutocompleteSuggestion> suggestionBuffer;
+
+    /**
+     * Suggestions already added to {@link #suggestionBuffer}, used to remove
+     * duplicates. Empty between queries.
+     */
+    private transient IdentityHashMap<AutocompleteSuggestion, Boolean> seenSuggestions;
+
+    /**
+     * Candidates of the last query of a {@link RefinableSuggestionProvider}
+     */
+    private transient RefinableSuggestionProvider.Candidates lastCandidates;
+
+    /**
+     * Request id of the query received from the client-side that has not
+     * been executed yet. Executed in {@link #beforeClientResponse(boolean)},
+     * so only the latest of several queries sent at once is executed.
+     */
+    private transient JsonValue pendingRequestId;
+
+    /**
+     * Search term of the pending query.
+     */
+    private transient String pendingTerm;
+
+    /**
+     * Time the providers should spend on a query, {@code null} for no limit.
+     */
+    private Duration queryTimeBudget;
+
+    /**
+     * How queries of providers that are not asynchronous are executed.
+     */
+    private ExecutionMode executionMode = ExecutionMode.SESSION;
+
+    /**
+     * The running query of an {@link AsyncAutocompleteSuggestionProvider} or
+     * of {@link ExecutionMode#BACKGROUND}. Only accessed while holding the
+     * session lock.
+     */
+    private transient AutocompleteQuery runningQuery;
+
+    /**
+     * The result of the {@link #runningQuery}.
+     */
+    private transient CompletableFuture<Collection<AutocompleteSuggestion>> runningFuture;
+
+    /**
+     * Completed when the last query started on the background executor has
+     * returned, even if it has been cancelled. Only accessed while holding
+     * the session lock.
+     */
+    private transient CompletableFuture<Void> lastBackgroundQuery;
+
     /**
      * Construct a new {@link AutocompleteTextFieldExtension}.
      */
@@ -152,8 +213,11 @@ public class AutocompleteTextFieldExtension extends AbstractJavaScriptExtension
     }
 
     /**
-     * Receives a search term from the client-side, executes the query and sends
-     * the results to the JavaScript method "setSuggestions".
+     * Receives a search term from the client-side. The query is executed
+     * before the response is written, and its results are sent to the
+     * JavaScript method "setSuggestions". If the client-side has sent several
+     * queries at once only the latest one is executed, the client-side
+     * ignores the results of the older ones anyway.
      * 
      * <p>
      * <b>Parameters:</b>
@@ -165,13 +229,245 @@ public class AutocompleteTextFieldExtension extends AbstractJavaScriptExtension
      * 
      * @param arguments Parameters from the client-side.
      */
-    private void jsQuerySuggestions(JsonArray arguments) {
-        JsonValue requestId = arguments.get(0);
-        String term = arguments.getString(1);
-        Set<AutocompleteSuggestion> suggestions = querySuggestions(term);
-        JsonValue suggestionsAsJson = suggestionsToJson(suggestions);
-        callFunction("setSuggestions", requestId, suggestionsAsJson);
+    void jsQuerySuggestions(JsonArray arguments) {
+        cancelRunningQuery();
+        pendingRequestId = arguments.get(0);
+        pendingTerm = arguments.getString(1);
+        markAsDirty();
     };
+
+    @Override
+    public void beforeClientResponse(boolean initial) {
+        super.beforeClientResponse(initial);
+        if (pendingRequestId != null) {
+            JsonValue requestId = pendingRequestId;
+            String term = pendingTerm;
+            pendingRequestId = null;
+            pendingTerm = null;
+            executeQuery(requestId, term);
+        }
+    }
+
+    @Override
+    public void detach() {
+        cancelRunningQuery();
+        pendingRequestId = null;
+        pendingTerm = null;
+        super.detach();
+    }
+
+    /**
+     * Executes a query from the client-side and sends the results to the
+     * JavaScript method "setSuggestions".
+     *
+     * @param requestId Request id to send back to the client-side.
+     * @param term The search term.
+     */
+    private void executeQuery(JsonValue requestId, String term) {
+        AutocompleteQuery query = new AutocompleteQuery(this, term,
+                suggestionLimit, queryTimeBudget);
+        if (suggestionProvider instanceof ProgressiveSuggestionProvider
+                && getUI() != null) {
+            List<AutocompleteSuggestion> first = sendFirstSuggestions(
+                    (ProgressiveSuggestionProvider) suggestionProvider, query,
+                    requestId);
+            if (first != null) {
+                // the time budget of the refined suggestions starts now
+                queryAsync(new AutocompleteQuery(this, term, suggestionLimit,
+                        queryTimeBudget), requestId, first);
+            }
+            return;
+        }
+        if (suggestionProvider instanceof AsyncAutocompleteSuggestionProvider
+                || (suggestionProvider != null
+                && executionMode == ExecutionMode.BACKGROUND)) {
+            queryAsync(query, requestId, null);
+            return;
+        }
+        if (suggestionBuffer == null) {
+            suggestionBuffer = new ArrayList<>();
+        }
+        List<AutocompleteSuggestion> suggestions = suggestionBuffer;
+        try {
+            collectSuggestions(query, suggestions);
+            JsonValue suggestionsAsJson = suggestionsToJson(suggestions);
+            callFunction("setSuggestions", requestId, suggestionsAsJson,
+                    query.isIncomplete());
+        } finally {
+            // don't keep the suggestions alive until the next query
+            suggestions.clear();
+        }
+    }
+
+    /**
+     * Sends the first suggestions of the given
+     * {@link ProgressiveSuggestionProvider} to the JavaScript method
+     * "setSuggestions". They are marked as incomplete, because the refined
+     * suggestions are still to come, unless they already reach the suggestion
+     * limit. Then they are final and no refined suggestions are queried.
+     *
+     * @param provider The provider.
+     * @param query The query.
+     * @param requestId Request id to send back to the client-side.
+     * @return A copy of the first suggestions or {@code null} if they are
+     * final.
+     */
+    private List<AutocompleteSuggestion> sendFirstSuggestions(
+            ProgressiveSuggestionProvider provider, AutocompleteQuery query,
+            JsonValue requestId) {
+        if (suggestionBuffer == null) {
+            suggestionBuffer = new ArrayList<>();
+        }
+        List<AutocompleteSuggestion> suggestions = suggestionBuffer;
+        try {
+            provider.collectFirstSuggestions(query, suggestions);
+            filterSuggestions(query, suggestions, 0);
+            boolean complete = query.hasLimit() && !query.isIncomplete()
+                    && suggestions.size() >= query.getLimit();
+            callFunction("setSuggestions", requestId,
+                    suggestionsToJson(suggestions), !complete);
+            return complete ? null : new ArrayList<>(suggestions);
+        } finally {
+            suggestions.clear();
+        }
+    }
+
+    /**
+     * Starts the given query without waiting for its result. The result is
+     * sent to the JavaScript method "setSuggestions", or "updateSuggestions"
+     * for refined suggestions, with {@link UI#access(java.lang.Runnable)}
+     * unless the query has been cancelled in the meantime.
+     *
+     * @param query The query.
+     * @param requestId Request id to send back to the client-side.
+     * @param first The first suggestions of a
+     * {@link ProgressiveSuggestionProvider} the result replaces or
+     * {@code null} if there are none.
+     */
+    private void queryAsync(AutocompleteQuery query, JsonValue requestId,
+            List<AutocompleteSuggestion> first) {
+        UI ui = getUI();
+        if (ui == null) {
+            return; // not attached, nobody to send the result to
+        }
+        boolean refine = first != null;
+        CompletableFuture<Collection<AutocompleteSuggestion>> future
+                = startQuery(suggestionProvider, query, first);
+        if (future == null) {
+            throw new NullPointerException("future is null!");
+        }
+        if (!future.isDone()) {
+            runningQuery = query;
+            runningFuture = future;
+        }
+        future.whenComplete((suggestions, error) -> ui.access(() -> {
+            if (query.isCancelled()) {
+                return; // superseded by a newer query
+            }
+            if (runningQuery == query) {
+                runningQuery = null;
+                runningFuture = null;
+            }
+            List<AutocompleteSuggestion> result = new ArrayList<>();
+            if (error != null) {
+                Logger.getLogger(AutocompleteTextFieldExtension.class.getName())
+                        .log(Level.SEVERE, "Query for '" + query.getTerm()
+                                + "' has failed", error);
+                if (refine) {
+                    return; // keep the first suggestions
+                }
+            } else if (suggestions != null) {
+                result.addAll(suggestions);
+                filterSuggestions(query, result, 0);
+            }
+            // also answer failed queries, so the client-side stops waiting
+            callFunction(refine ? "updateSuggestions" : "setSuggestions",
+                    requestId, suggestionsToJson(result), query.isIncomplete());
+        }));
+    }
+
+    /**
+     * Starts the given query of the given provider. Providers that are not
+     * asynchronous are queried by the background executor, including the
+     * refined suggestions of a {@link ProgressiveSuggestionProvider}, which
+     * are found with
+     * {@link ProgressiveSuggestionProvider#refineSuggestions(eu.maxschuster.vaadin.autocompletetextfield.AutocompleteQuery, java.util.List)}.
+     * <p>
+     * A query on the background executor starts after the previous one of
+     * this extension has returned, so the provider is never queried by two
+     * threads at once. A cancelled query still waiting for its turn is
+     * skipped, which stops a burst of keystrokes from piling up.
+     * </p>
+     *
+     * @param provider The provider.
+     * @param query The query.
+     * @param first The first suggestions of a
+     * {@link ProgressiveSuggestionProvider} or {@code null}.
+     * @return The result of the query.
+     */
+    private CompletableFuture<Collection<AutocompleteSuggestion>> startQuery(
+            AutocompleteSuggestionProvider provider, AutocompleteQuery query,
+            List<AutocompleteSuggestion> first) {
+        if (provider instanceof AsyncAutocompleteSuggestionProvider) {
+            return ((AsyncAutocompleteSuggestionProvider) provider)
+                    .querySuggestionsAsync(query);
+        }
+        CompletableFuture<Collection<AutocompleteSuggestion>> future
+                = new CompletableFuture<>();
+        CompletableFuture<Void> returned = new CompletableFuture<>();
+        Runnable task = () -> {
+            try {
+                if (query.isCancelled()) {
+                    future.cancel(false);
+                } else if (first != null) {
+                    future.complete(((ProgressiveSuggestionProvider) provider)
+                            .refineSuggestions(query, first));
+                } else {
+                    future.complete(provider.querySuggestions(query));
+                }
+            } catch (RuntimeException | Error ex) {
+                future.completeExceptionally(ex);
+            } finally {
+                returned.complete(null);
+            }
+        };
+        Runnable submit = () -> {
+            try {
+                QueryExecutors.getDefault().execute(task);
+            } catch (RejectedExecutionException ex) {
+                // too many running queries, answer with an empty result
+                future.completeExceptionally(ex);
+                returned.complete(null);
+            }
+        };
+        CompletableFuture<Void> previous = lastBackgroundQuery;
+        lastBackgroundQuery = returned;
+        if (previous == null) {
+            submit.run();
+        } else {
+            previous.thenRun(submit);
+        }
+        return future;
+    }
+
+    /**
+     * Cancels the running query of an
+     * {@link AsyncAutocompleteSuggestionProvider} or a query running in the
+     * background, its result is discarded.
+     * The provider sees {@link AutocompleteQuery#isCancelled()} and a
+     * cancelled {@link CompletableFuture}.
+     */
+    private void cancelRunningQuery() {
+        AutocompleteQuery query = runningQuery;
+        if (query == null) {
+            return;
+        }
+        CompletableFuture<Collection<AutocompleteSuggestion>> future = runningFuture;
+        runningQuery = null;
+        runningFuture = null;
+        query.cancel();
+        future.cancel(true);
+    }
     
     /**
      * Called when the user selects a suggestion.
@@ -236,34 +532,94 @@ public class AutocompleteTextFieldExtension extends AbstractJavaScriptExtension
      * predictable iteration order.
      */
     protected Set<AutocompleteSuggestion> querySuggestions(AutocompleteQuery query) {
+        List<AutocompleteSuggestion> suggestions = new ArrayList<>();
+        collectSuggestions(query, suggestions);
+        return new LinkedHashSet<>(suggestions);
+    }
+
+    /**
+     * Executes the given {@link AutocompleteQuery} and adds the result to the
+     * given {@link List}. It makes sure the added suggestions are within the
+     * boundries of the {@link AutocompleteQuery}'s limit and contain no
+     * duplicates.
+     * <p>
+     * Unlike {@link #querySuggestions(eu.maxschuster.vaadin.autocompletetextfield.AutocompleteQuery)}
+     * this method lets the {@link AutocompleteSuggestionProvider} write into
+     * the given {@link List}, so no intermediate collections are created.
+     * </p>
+     *
+     * @param query The Query.
+     * @param result Receives the {@link AutocompleteSuggestion}s.
+     * @since 3.0
+     */
+    protected void collectSuggestions(AutocompleteQuery query,
+            List<AutocompleteSuggestion> result) {
         if (suggestionProvider == null) {
             // no suggestionProvider set
-            return Collections.emptySet();
+            return;
+        }
+        int offset = result.size();
+        if (suggestionProvider instanceof RefinableSuggestionProvider) {
+            collectRefinedSuggestions(
+                    (RefinableSuggestionProvider) suggestionProvider, query, result);
+        } else {
+            suggestionProvider.collectSuggestions(query, result);
         }
+        filterSuggestions(query, result, offset);
+    }
 
-        Collection<AutocompleteSuggestion> suggestions
-                = suggestionProvider.querySuggestions(query);
-        if (suggestions == null) {
-            // suggestionProvider has returned null
-            return Collections.emptySet();
+    /**
+     * Removes duplicates and {@code null}s from the given {@link List}
+     * starting at the given offset and truncates it to the limit of the
+     * given {@link AutocompleteQuery}.
+     */
+    private void filterSuggestions(AutocompleteQuery query,
+            List<AutocompleteSuggestion> result, int offset) {
+        // remove duplicates in place
+        if (seenSuggestions == null) {
+            seenSuggestions = new IdentityHashMap<>();
+        }
+        int size = result.size();
+        int out = offset;
+        for (int i = offset; i < size; ++i) {
+            AutocompleteSuggestion suggestion = result.get(i);
+            if (suggestion != null
+                    && seenSuggestions.put(suggestion, Boolean.TRUE) == null) {
+                result.set(out++, suggestion);
+            }
         }
+        seenSuggestions.clear();
 
         int limit = query.getLimit();
-        if (limit > 0 && limit < suggestions.size()) {
+        if (limit > 0 && out - offset > limit) {
             // suggestionProvider has returned more results than allowed
-            Set<AutocompleteSuggestion> subSet = new LinkedHashSet<>(limit);
-            for (AutocompleteSuggestion suggestion : suggestions) {
-                subSet.add(suggestion);
-                if (subSet.size() >= limit) {
-                    // size has reached the limit, ignore the following results
-                    // TODO: Should we log a message here?
-                    break;
-                }
-            }
-            return subSet;
+            // TODO: Should we log a message here?
+            out = offset + limit;
+        }
+        for (int i = result.size() - 1; i >= out; --i) {
+            result.remove(i);
+        }
+    }
+
+    /**
+     * Lets the given {@link RefinableSuggestionProvider} refine the candidates
+     * of the last query. Falls back to a full query if the provider can not
+     * refine them.
+     */
+    private void collectRefinedSuggestions(RefinableSuggestionProvider provider,
+            AutocompleteQuery query, List<AutocompleteSuggestion> result) {
+        RefinableSuggestionProvider.Candidates candidates = null;
+        if (lastCandidates != null) {
+            candidates = provider.refineCandidates(lastCandidates, query);
+        }
+        if (candidates == null) {
+            candidates = provider.queryCandidates(query);
+        }
+        lastCandidates = candidates;
+        if (candidates != null) {
+            provider.collectSuggestions(candidates, query, result);
         } else {
-            // suggestionProvider has respected the query limit
-            return new LinkedHashSet<>(suggestions);
+            provider.collectSuggestions(query, result);
         }
     }
 
@@ -275,7 +631,7 @@ public class AutocompleteTextFieldExtension extends AbstractJavaScriptExtension
      * @param suggestions Suggestions.
      * @return {@link JsonValue} representation.
      */
-    protected JsonValue suggestionsToJson(Set<AutocompleteSuggestion> suggestions) {
+    protected JsonValue suggestionsToJson(Collection<AutocompleteSuggestion> suggestions) {
         final boolean hasSelectListeners
                 = hasListeners(AutocompleteEvents.SelectEvent.class);
         suggestionTracker.clear();
@@ -341,6 +697,8 @@ public class AutocompleteTextFieldExtension extends AbstractJavaScriptExtension
      */
     public void setSuggestionProvider(AutocompleteSuggestionProvider suggestionProvider) {
         this.suggestionProvider = suggestionProvider;
+        this.lastCandidates = null;
+        cancelRunningQuery();
     }
 
     /**
@@ -408,6 +766,92 @@ public class AutocompleteTextFieldExtension extends AbstractJavaScriptExtension
         return this;
     }
 
+    /**
+     * Gets the time the {@link AutocompleteSuggestionProvider} should spend on
+     * a query.
+     *
+     * @return The time budget or {@code null} for no limit.
+     * @since 3.0
+     */
+    public Duration getQueryTimeBudget() {
+        return queryTimeBudget;
+    }
+
+    /**
+     * Sets the time the {@link AutocompleteSuggestionProvider} should spend on
+     * a query. Providers that support it stop when the time is up, return the
+     * suggestions found so far and let the client-side know that they may be
+     * incomplete.
+     *
+     * @param queryTimeBudget The time budget or {@code null} for no limit.
+     * @throws IllegalArgumentException If {@code queryTimeBudget} is negative.
+     * @see AutocompleteQuery#isExpired()
+     * @since 3.0
+     */
+    public void setQueryTimeBudget(Duration queryTimeBudget)
+            throws IllegalArgumentException {
+        if (queryTimeBudget != null && queryTimeBudget.isNegative()) {
+            throw new IllegalArgumentException("queryTimeBudget must not be negative!");
+        }
+        this.queryTimeBudget = queryTimeBudget;
+    }
+
+    /**
+     * Sets the time the {@link AutocompleteSuggestionProvider} should spend on
+     * a query.
+     *
+     * @param queryTimeBudget The time budget or {@code null} for no limit.
+     * @return this (for method chaining)
+     * @throws IllegalArgumentException If {@code queryTimeBudget} is negative.
+     * @see #setQueryTimeBudget(java.time.Duration)
+     * @since 3.0
+     */
+    public AutocompleteTextFieldExtension withQueryTimeBudget(Duration queryTimeBudget)
+            throws IllegalArgumentException {
+        setQueryTimeBudget(queryTimeBudget);
+        return this;
+    }
+
+    /**
+     * Gets how queries of an {@link AutocompleteSuggestionProvider} that is
+     * not an {@link AsyncAutocompleteSuggestionProvider} are executed.
+     *
+     * @return The execution mode.
+     * @since 3.0
+     */
+    public ExecutionMode getExecutionMode() {
+        return executionMode;
+    }
+
+    /**
+     * Sets how queries of an {@link AutocompleteSuggestionProvider} that is
+     * not an {@link AsyncAutocompleteSuggestionProvider} are executed. The
+     * default is {@link ExecutionMode#SESSION}.
+     *
+     * @param executionMode The execution mode.
+     * @since 3.0
+     */
+    public void setExecutionMode(ExecutionMode executionMode) {
+        if (executionMode == null) {
+            throw new NullPointerException("executionMode is null!");
+        }
+        this.executionMode = executionMode;
+    }
+
+    /**
+     * Sets how queries of an {@link AutocompleteSuggestionProvider} that is
+     * not an {@link AsyncAutocompleteSuggestionProvider} are executed.
+     *
+     * @param executionMode The execution mode.
+     * @return this (for method chaining)
+     * @see #setExecutionMode(eu.maxschuster.vaadin.autocompletetextfield.AutocompleteTextFieldExtension.ExecutionMode)
+     * @since 3.0
+     */
+    public AutocompleteTextFieldExtension withExecutionMode(ExecutionMode executionMode) {
+        setExecutionMode(executionMode);
+        return this;
+    }
+
     /**
      * Checks whether items are rendered as HTML.
      * <p>
@@ -709,4 +1153,48 @@ public class AutocompleteTextFieldExtension extends AbstractJavaScriptExtension
         return this;
     }
 
+    /**
+     * Defines how the queries of an {@link AutocompleteSuggestionProvider}
+     * are executed.
+     *
+     * @since 3.0
+     */
+    public enum ExecutionMode {
+
+        /**
+         * Queries are executed by the request thread while it holds the lock
+         * of the session.
+         */
+        SESSION,
+
+        /**
+         * Queries are executed in the background and their results are sent
+         * to the client-side with {@link UI#access(java.lang.Runnable)}, which
+         * requires server push. Use it for providers that block on a database
+         * or a remote service, so they don't block the lock of the session or
+         * a request thread.
+         * <p>
+         * On Java 21 and later every query runs on its own virtual thread,
+         * older JVMs use a bounded pool of threads shared by all sessions.
+         * Providers can't use {@link UI#getCurrent()} or
+         * {@link com.vaadin.server.VaadinSession#getCurrent()} in the
+         * background.
+         * </p>
+         * <p>
+         * The queries of one extension run one after another, a query starts
+         * once the previous one has returned or has been skipped because it
+         * was cancelled. Providers that are not shared between extensions
+         * therefore need not be thread-safe. Providers shared between
+         * extensions or sessions must be thread-safe, like a
+         * {@link eu.maxschuster.vaadin.autocompletetextfield.provider.CollectionSuggestionProvider}
+         * whose values no longer change, the
+         * {@link eu.maxschuster.vaadin.autocompletetextfield.provider.SnapshotSuggestionProvider},
+         * the {@link eu.maxschuster.vaadin.autocompletetextfield.provider.MappedSuggestionProvider}
+         * and the caching providers around a thread-safe provider.
+         * </p>
+         */
+        BACKGROUND
+
+    }
+
 }
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2017 Max Schuster.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.maxschuster.vaadin.autocompletetextfield;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * An {@link AutocompleteSuggestionProvider} that answers a query in two
+ * phases: first suggestions that are found quickly, e.g. in memory, then the
+ * refined suggestions of a slow source.
+ * <p>
+ * The {@link AutocompleteTextFieldExtension} sends the first suggestions
+ * right away and queries the refined suggestions with
+ * {@link #refineSuggestions(eu.maxschuster.vaadin.autocompletetextfield.AutocompleteQuery, java.util.List)}
+ * in the background, or with
+ * {@link AsyncAutocompleteSuggestionProvider#querySuggestionsAsync(eu.maxschuster.vaadin.autocompletetextfield.AutocompleteQuery)}
+ * if the provider implements it as well. The refined suggestions replace the
+ * first ones in the open suggestion container, so they should contain the
+ * first suggestions that are still relevant. Like the results of an
+ * {@link AsyncAutocompleteSuggestionProvider} they are sent with server push.
+ * If the first suggestions already reach the suggestion limit, no refined
+ * suggestions are queried.
+ * </p>
+ *
+ * @author Max Schuster
+ * @see eu.maxschuster.vaadin.autocompletetextfield.provider.TwoPhaseSuggestionProvider
+ * @since 3.0
+ */
+public interface ProgressiveSuggestionProvider extends AutocompleteSuggestionProvider {
+
+    /**
+     * Quickly finds the first {@link AutocompleteSuggestion}s for the given
+     * {@link AutocompleteQuery} and adds them to the given
+     * {@link Collection}. Called while holding the lock of the session.
+     *
+     * @param query The {@link AutocompleteQuery} generated by a
+     * {@link AutocompleteTextFieldExtension}.
+     * @param result Receives the first {@link AutocompleteSuggestion}s.
+     */
+    public void collectFirstSuggestions(AutocompleteQuery query,
+            Collection<AutocompleteSuggestion> result);
+
+    /**
+     * Finds the refined {@link AutocompleteSuggestion}s for the given
+     * {@link AutocompleteQuery}. Called in the background, possibly while
+     * {@link #collectFirstSuggestions(eu.maxschuster.vaadin.autocompletetextfield.AutocompleteQuery, java.util.Collection)}
+     * finds the first suggestions of the next query. The default
+     * implementation calls
+     * {@link #querySuggestions(eu.maxschuster.vaadin.autocompletetextfield.AutocompleteQuery)},
+     * which must then be thread-safe.
+     *
+     * @param query The {@link AutocompleteQuery} generated by a
+     * {@link AutocompleteTextFieldExtension}.
+     * @param first The first suggestions that have been sent for the query.
+     * @return The refined {@link AutocompleteSuggestion}s.
+     */
+    public default Collection<AutocompleteSuggestion> refineSuggestions(
+            AutocompleteQuery query, List<AutocompleteSuggestion> first) {
+        return querySuggestions(query);
+    }
+
+}
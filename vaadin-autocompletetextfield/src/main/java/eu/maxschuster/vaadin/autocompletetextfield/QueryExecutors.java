@@ -0,0 +1,125 @@
+/*
+ * Copyright 2017 Max Schuster.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.maxschuster.vaadin.autocompletetextfield;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Holds the JVM-wide {@link ExecutorService} running queries of
+ * {@link AutocompleteTextFieldExtension.ExecutionMode#BACKGROUND}.
+ * <p>
+ * On Java 21 and later every query runs on its own virtual thread. The
+ * executor is looked up reflectively, so the add-on still runs on Java 8.
+ * Older JVMs use a bounded pool of daemon threads instead.
+ * </p>
+ *
+ * @author Max Schuster
+ * @since 3.0
+ */
+final class QueryExecutors {
+
+    /**
+     * Number of threads of the fallback pool
+     */
+    static final int POOL_SIZE = 64;
+
+    /**
+     * Max number of queries waiting for a thread of the fallback pool
+     */
+    static final int QUEUE_CAPACITY = 1024;
+
+    private QueryExecutors() {
+    }
+
+    /**
+     * Gets the executor running background queries.
+     *
+     * @return The executor.
+     */
+    static ExecutorService getDefault() {
+        return Holder.EXECUTOR;
+    }
+
+    /**
+     * Checks if background queries run on virtual threads.
+     *
+     * @return {@code true} if background queries run on virtual threads.
+     */
+    static boolean isVirtual() {
+        return Holder.VIRTUAL;
+    }
+
+    /**
+     * Creates a virtual-thread-per-task executor.
+     *
+     * @return The executor or {@code null} if the JVM has no virtual threads.
+     */
+    static ExecutorService createVirtual() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            // older JVM
+            return null;
+        }
+    }
+
+    /**
+     * Creates the bounded fallback pool. Queries beyond its capacity are
+     * rejected.
+     *
+     * @return The executor.
+     */
+    static ExecutorService createPool() {
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable,
+                    "autocomplete-query-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE,
+                60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(QUEUE_CAPACITY),
+                threadFactory);
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /**
+     * Creates the executor on first use.
+     */
+    private static final class Holder {
+
+        static final ExecutorService EXECUTOR;
+
+        static final boolean VIRTUAL;
+
+        static {
+            ExecutorService virtual = createVirtual();
+            VIRTUAL = virtual != null;
+            EXECUTOR = virtual != null ? virtual : createPool();
+        }
+
+    }
+
+}
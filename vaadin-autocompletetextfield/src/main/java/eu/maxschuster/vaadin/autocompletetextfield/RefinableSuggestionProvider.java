@@ -0,0 +1,79 @@
+/*
+ * Copyright 2017 Max Schuster.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.maxschuster.vaadin.autocompletetextfield;
+
+import java.util.Collection;
+
+/**
+ * An {@link AutocompleteSuggestionProvider} that can narrow down the result of
+ * a previous query instead of searching all values again.
+ * <p>
+ * If the user extends the term, for example from {@code "jav"} to
+ * {@code "java"}, every value matching the new term usually matches the
+ * previous term as well. The {@link AutocompleteTextFieldExtension} keeps the
+ * {@link Candidates} of its last query and asks the provider to refine them.
+ * If the provider can not refine them, for example after a backspace, the
+ * extension runs a full query.
+ * </p>
+ *
+ * @author Max Schuster
+ * @see AutocompleteTextFieldExtension
+ * @since 3.0
+ */
+public interface RefinableSuggestionProvider extends AutocompleteSuggestionProvider {
+
+    /**
+     * All values matching a term, regardless of the limit of the query. Only
+     * the provider that created them knows their content.
+     */
+    public interface Candidates {
+    }
+
+    /**
+     * Finds all values matching the term of the given
+     * {@link AutocompleteQuery}, ignoring its limit.
+     *
+     * @param query The {@link AutocompleteQuery}.
+     * @return The {@link Candidates} or {@code null} if this provider can not
+     * refine queries with its current settings.
+     */
+    public Candidates queryCandidates(AutocompleteQuery query);
+
+    /**
+     * Narrows the given {@link Candidates} of a previous query down to the
+     * values matching the term of the given {@link AutocompleteQuery}.
+     *
+     * @param candidates The {@link Candidates} of a previous query.
+     * @param query The {@link AutocompleteQuery}.
+     * @return The refined {@link Candidates} or {@code null} if the new term
+     * does not extend the previous one, the settings do not allow a refinement
+     * or the values have changed since.
+     */
+    public Candidates refineCandidates(Candidates candidates, AutocompleteQuery query);
+
+    /**
+     * Adds the {@link AutocompleteSuggestion}s of the given
+     * {@link Candidates} to the given {@link Collection}, limited by the given
+     * {@link AutocompleteQuery}.
+     *
+     * @param candidates The {@link Candidates} of the query.
+     * @param query The {@link AutocompleteQuery}.
+     * @param result Receives the {@link AutocompleteSuggestion}s.
+     */
+    public void collectSuggestions(Candidates candidates, AutocompleteQuery query,
+            Collection<AutocompleteSuggestion> result);
+
+}
@@ -0,0 +1,384 @@
+/*
+ * Copyright 2017 Max Schuster.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.maxschuster.vaadin.autocompletetextfield.provider;
+
+import eu.maxschuster.vaadin.autocompletetextfield.AutocompleteQuery;
+import eu.maxschuster.vaadin.autocompletetextfield.AutocompleteSuggestion;
+import eu.maxschuster.vaadin.autocompletetextfield.AutocompleteSuggestionProvider;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A thread-safe {@link AutocompleteSuggestionProvider} that caches the results
+ * of another provider.
+ * <p>
+ * Results are cached by the normalized term and the limit of the query. The
+ * cache holds at most {@code maxSize} results and evicts the least recently
+ * used one first. A result expires {@code timeToLive} after it has been
+ * queried from the other provider. Call {@link #invalidate()} whenever the
+ * values of the other provider change. Results of queries that ran out of
+ * time or have been cancelled are not cached.
+ * </p>
+ * <p>
+ * If the other provider ignores case, pass {@code ignoreCase = true} so terms
+ * differing only in case share a cache entry. Cached suggestions are
+ * read-only, suggestions that are not read-only are copied before caching.
+ * </p>
+ *
+ * @author Max Schuster
+ * @since 3.0
+ */
+public class CachingSuggestionProvider implements AutocompleteSuggestionProvider {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The default max number of cached results
+     */
+    public static final int DEFAULT_MAX_SIZE = 1000;
+
+    /**
+     * The default time a result stays cached
+     */
+    public static final Duration DEFAULT_TIME_TO_LIVE = Duration.ofMinutes(5);
+
+    /**
+     * The provider whose results are cached
+     */
+    private final AutocompleteSuggestionProvider delegate;
+
+    /**
+     * Max number of cached results
+     */
+    private final int maxSize;
+
+    /**
+     * Time a result stays cached
+     */
+    private final Duration timeToLive;
+
+    /**
+     * Normalizes the terms of the cache keys
+     */
+    private final TextFolding folding;
+
+    /**
+     * Lock for {@link #cache}
+     */
+    private final Object lock = new Object[0];
+
+    /**
+     * The cached results in access order
+     */
+    private transient LinkedHashMap<Key, CachedResult> cache;
+
+    /**
+     * Incremented by {@link #invalidate()}, so results queried before are not
+     * cached
+     */
+    private transient long generation;
+
+    private final AtomicLong hitCount = new AtomicLong();
+
+    private final AtomicLong missCount = new AtomicLong();
+
+    public CachingSuggestionProvider(AutocompleteSuggestionProvider delegate) {
+        this(delegate, DEFAULT_MAX_SIZE, DEFAULT_TIME_TO_LIVE);
+    }
+
+    public CachingSuggestionProvider(AutocompleteSuggestionProvider delegate,
+            int maxSize, Duration timeToLive) {
+        this(delegate, maxSize, timeToLive, false, Locale.getDefault());
+    }
+
+    /**
+     * Creates a new caching provider.
+     *
+     * @param delegate The provider whose results are cached.
+     * @param maxSize Max number of cached results.
+     * @param timeToLive Time a result stays cached.
+     * @param ignoreCase Terms differing only in case share a cache entry.
+     * @param locale Locale used to fold the case of the terms.
+     * @throws IllegalArgumentException If {@code maxSize < 1} or
+     * {@code timeToLive} is not positive.
+     */
+    public CachingSuggestionProvider(AutocompleteSuggestionProvider delegate,
+            int maxSize, Duration timeToLive, boolean ignoreCase, Locale locale)
+            throws IllegalArgumentException {
+        if (delegate == null) {
+            throw new NullPointerException("delegate is null!");
+        }
+        if (timeToLive == null) {
+            throw new NullPointerException("timeToLive is null!");
+        }
+        if (locale == null) {
+            throw new NullPointerException("locale is null!");
+        }
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be > 0!");
+        }
+        if (timeToLive.isNegative() || timeToLive.isZero()) {
+            throw new IllegalArgumentException("timeToLive must be positive!");
+        }
+        this.delegate = delegate;
+        this.maxSize = maxSize;
+        this.timeToLive = timeToLive;
+        this.folding = new TextFolding(ignoreCase, false, locale);
+    }
+
+    @Override
+    public Collection<AutocompleteSuggestion> querySuggestions(AutocompleteQuery query) {
+        return new ArrayList<>(getSuggestions(query));
+    }
+
+    @Override
+    public void collectSuggestions(AutocompleteQuery query,
+            Collection<AutocompleteSuggestion> result) {
+        List<AutocompleteSuggestion> suggestions = getSuggestions(query);
+        int size = suggestions.size();
+        for (int i = 0; i < size; ++i) {
+            result.add(suggestions.get(i));
+        }
+    }
+
+    /**
+     * Gets the cached result of the given query or queries the other
+     * provider.
+     *
+     * @param query The query.
+     * @return The read-only suggestions.
+     */
+    private List<AutocompleteSuggestion> getSuggestions(AutocompleteQuery query) {
+        String term = query.getTerm();
+        if (term == null) {
+            return copy(delegate.querySuggestions(query));
+        }
+        Key key = new Key(folding.fold(term), query.hasLimit() ? query.getLimit() : 0);
+        long now = currentTime();
+        long queried;
+        synchronized (lock) {
+            CachedResult cached = getCache().get(key);
+            if (cached != null && now - cached.expires < 0) {
+                hitCount.incrementAndGet();
+                return cached.suggestions;
+            }
+            queried = generation;
+        }
+        missCount.incrementAndGet();
+        // query outside the lock, so a slow provider does not block hits
+        List<AutocompleteSuggestion> suggestions = copy(delegate.querySuggestions(query));
+        if (query.isIncomplete() || query.isCancelled()) {
+            return suggestions; // don't cache partial results
+        }
+        long expires = currentTime() + timeToLive.toNanos();
+        synchronized (lock) {
+            if (queried == generation) {
+                getCache().put(key, new CachedResult(suggestions, expires));
+            }
+        }
+        return suggestions;
+    }
+
+    /**
+     * Gets the cache and creates it if necessary. Must be called while
+     * holding the {@link #lock}.
+     */
+    private LinkedHashMap<Key, CachedResult> getCache() {
+        if (cache == null) {
+            cache = new LinkedHashMap<Key, CachedResult>(16, 0.75f, true) {
+
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Key, CachedResult> eldest) {
+                    return size() > maxSize;
+                }
+
+            };
+        }
+        return cache;
+    }
+
+    /**
+     * Copies the given suggestions into an unmodifiable {@link List} of
+     * read-only suggestions.
+     */
+    static List<AutocompleteSuggestion> copy(
+            Collection<AutocompleteSuggestion> suggestions) {
+        if (suggestions == null || suggestions.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<AutocompleteSuggestion> copy = new ArrayList<>(suggestions.size());
+        for (AutocompleteSuggestion suggestion : suggestions) {
+            if (suggestion == null) {
+                continue;
+            }
+            if (!suggestion.isReadOnly()) {
+                AutocompleteSuggestion readOnly = new AutocompleteSuggestion(
+                        suggestion.getValue(), suggestion.getDescription(),
+                        suggestion.getIcon()).withData(suggestion.getData());
+                List<String> styleNames = suggestion.getStyleNames();
+                if (styleNames != null) {
+                    for (String styleName : styleNames) {
+                        readOnly.addStyleName(styleName);
+                    }
+                }
+                suggestion = readOnly.readOnly();
+            }
+            copy.add(suggestion);
+        }
+        return Collections.unmodifiableList(copy);
+    }
+
+    /**
+     * Gets the current time in nanoseconds.
+     *
+     * @return The current time.
+     */
+    long currentTime() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Removes all cached results. Call it when the values of the other
+     * provider change.
+     */
+    public void invalidate() {
+        synchronized (lock) {
+            ++generation;
+            if (cache != null) {
+                cache.clear();
+            }
+        }
+    }
+
+    /**
+     * Gets the number of queries answered from the cache.
+     *
+     * @return The number of cache hits.
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * Gets the number of queries passed to the other provider.
+     *
+     * @return The number of cache misses.
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * Gets the number of cached results, including expired ones that have not
+     * been evicted yet.
+     *
+     * @return The number of cached results.
+     */
+    public int getSize() {
+        synchronized (lock) {
+            return cache != null ? cache.size() : 0;
+        }
+    }
+
+    /**
+     * Gets the provider whose results are cached.
+     *
+     * @return The provider.
+     */
+    public AutocompleteSuggestionProvider getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * Gets the max number of cached results.
+     *
+     * @return The max number of cached results.
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Gets the time a result stays cached.
+     *
+     * @return The time a result stays cached.
+     */
+    public Duration getTimeToLive() {
+        return timeToLive;
+    }
+
+    /**
+     * The cache key of a query.
+     */
+    private static final class Key {
+
+        private final String term;
+
+        private final int limit;
+
+        Key(String term, int limit) {
+            this.term = term;
+            this.limit = limit;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * term.hashCode() + limit;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return limit == other.limit && term.equals(other.term);
+        }
+
+    }
+
+    /**
+     * A cached result.
+     */
+    private static final class CachedResult {
+
+        private final List<AutocompleteSuggestion> suggestions;
+
+        /**
+         * {@link #currentTime()} at which the result expires
+         */
+        private final long expires;
+
+        CachedResult(List<AutocompleteSuggestion> suggestions, long expires) {
+            this.suggestions = suggestions;
+            this.expires = expires;
+        }
+
+    }
+
+}
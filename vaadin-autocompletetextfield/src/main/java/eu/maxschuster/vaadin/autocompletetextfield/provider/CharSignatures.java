@@ -0,0 +1,153 @@
+/*
+ * Copyright 2017 Max Schuster.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.maxschuster.vaadin.autocompletetextfield.provider;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The 64-bit char signature of each normalized value.
+ * <p>
+ * Every char sets one bit of the signature: the letters {@code a - z} without
+ * regard to case and the digits {@code 0 - 9} have a bit of their own, the
+ * remaining chars share the other bits. A value can only contain a term if its
+ * signature has all bits of the signature of the term, so
+ * {@link #mayContain(int, long)} rejects most values with a single {@code AND}
+ * before their chars are touched.
+ * </p>
+ *
+ * @author Max Schuster
+ * @since 3.0
+ */
+final class CharSignatures implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * First bit of the digits
+     */
+    private static final int DIGITS = 26;
+
+    /**
+     * First bit and number of bits shared by the remaining ASCII chars
+     */
+    private static final int ASCII = 36;
+
+    private static final int ASCII_BITS = 8;
+
+    /**
+     * First bit and number of bits shared by the non-ASCII chars
+     */
+    private static final int OTHER = ASCII + ASCII_BITS;
+
+    private static final int OTHER_BITS = Long.SIZE - OTHER;
+
+    private long[] signatures;
+
+    private int size;
+
+    /**
+     * Creates the signatures of the given values.
+     *
+     * @param search The normalized values. The list index is the value id.
+     */
+    CharSignatures(List<String> search) {
+        signatures = new long[Math.max(search.size(), 16)];
+        added(search, 0);
+    }
+
+    /**
+     * Computes the signature of the given string.
+     *
+     * @param value The string.
+     * @return The signature.
+     */
+    static long of(String value) {
+        long signature = 0;
+        int length = value.length();
+        for (int i = 0; i < length; ++i) {
+            signature |= 1L << bit(value.charAt(i));
+        }
+        return signature;
+    }
+
+    private static int bit(char c) {
+        if (c >= 'a' && c <= 'z') {
+            return c - 'a';
+        }
+        if (c >= 'A' && c <= 'Z') {
+            return c - 'A';
+        }
+        if (c >= '0' && c <= '9') {
+            return DIGITS + c - '0';
+        }
+        if (c < 0x80) {
+            return ASCII + c % ASCII_BITS;
+        }
+        return OTHER + c % OTHER_BITS;
+    }
+
+    /**
+     * Checks if the value with the given id may contain a term.
+     *
+     * @param id The value id.
+     * @param termSignature The signature of the term.
+     * @return {@code false} if the value can not contain the term.
+     */
+    boolean mayContain(int id, long termSignature) {
+        return (signatures[id] & termSignature) == termSignature;
+    }
+
+    /**
+     * Appends the signatures of the values from the given id to the end of
+     * the list.
+     *
+     * @param search The normalized values.
+     * @param fromId The first id.
+     */
+    void added(List<String> search, int fromId) {
+        int length = search.size();
+        if (length > signatures.length) {
+            signatures = Arrays.copyOf(signatures,
+                    Math.max(signatures.length << 1, length));
+        }
+        for (int id = fromId; id < length; ++id) {
+            signatures[id] = of(search.get(id));
+        }
+        size = length;
+    }
+
+    /**
+     * Removes the signatures with the given ids and shifts the remaining ones
+     * down.
+     *
+     * @param removedIds The ascending ids to remove.
+     */
+    void removed(int[] removedIds) {
+        int out = removedIds[0];
+        int next = 0;
+        for (int id = removedIds[0]; id < size; ++id) {
+            if (next < removedIds.length && removedIds[next] == id) {
+                ++next;
+            } else {
+                signatures[out++] = signatures[id];
+            }
+        }
+        size = out;
+    }
+
+}
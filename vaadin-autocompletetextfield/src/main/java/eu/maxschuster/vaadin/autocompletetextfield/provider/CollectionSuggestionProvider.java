@@ -18,25 +18,76 @@ package eu.maxschuster.vaadin.autocompletetextfield.provider;
 import eu.maxschuster.vaadin.autocompletetextfield.AutocompleteQuery;
 import eu.maxschuster.vaadin.autocompletetextfield.AutocompleteSuggestion;
 import eu.maxschuster.vaadin.autocompletetextfield.AutocompleteSuggestionProvider;
+import eu.maxschuster.vaadin.autocompletetextfield.RefinableSuggestionProvider;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * A simple {@link AutocompleteSuggestionProvider} backed by a
  * {@link Collection}
+ * <p>
+ * Without an index the provider refines the result of the previous query of
+ * an {@link eu.maxschuster.vaadin.autocompletetextfield.AutocompleteTextFieldExtension}
+ * when the user extends the term. {@link MatchMode#FUZZY} is never refined.
+ * </p>
+ * <p>
+ * By default suggestions are returned in the order of the values, so an
+ * indexed query with {@link MatchMode#BEGINS} or {@link MatchMode#WORD_BEGINS}
+ * has to visit every match of the term to find the first ones. Its cost is
+ * {@code O(log n + m log limit)} for {@code m} matches, which is close to a
+ * scan for short terms. Call
+ * {@link #setPreserveOrder(boolean) setPreserveOrder(false)} to get
+ * {@code O(log n + limit)} queries in the order of the normalized values.
+ * </p>
+ * <p>
+ * Queries only read the values and the index, so a provider can be queried
+ * by several threads at once, e.g. by extensions in
+ * {@link eu.maxschuster.vaadin.autocompletetextfield.AutocompleteTextFieldExtension.ExecutionMode#BACKGROUND}.
+ * Each thread reuses its own buffer. Changing the values or the options
+ * while querying requires external synchronization, or use a
+ * {@link SnapshotSuggestionProvider}. A scan stops early when its query has
+ * been cancelled.
+ * </p>
  *
  * @author Max Schuster
  * @see AutocompleteSuggestionProvider
  */
-public class CollectionSuggestionProvider implements AutocompleteSuggestionProvider {
+public class CollectionSuggestionProvider implements RefinableSuggestionProvider {
 
     private static final long serialVersionUID = 1L;
 
+    /**
+     * Whether a class overrides {@link #querySuggestions(AutocompleteQuery)}
+     */
+    private static final ClassValue<Boolean> QUERY_OVERRIDDEN = new ClassValue<Boolean>() {
+
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            try {
+                return type.getMethod("querySuggestions", AutocompleteQuery.class)
+                        .getDeclaringClass() != CollectionSuggestionProvider.class;
+            } catch (NoSuchMethodException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+
+    };
+
+    /**
+     * Buffer for the ids found by the index, reused by every query of a
+     * thread
+     */
+    private static final ThreadLocal<IntList> QUERY_IDS
+            = ThreadLocal.withInitial(() -> new IntList(16));
+
     /**
      * List of available values
      */
@@ -47,6 +98,17 @@ public class CollectionSuggestionProvider implements AutocompleteSuggestionProvi
      */
     private List<String> search;
 
+    /**
+     * Ids of the removed values, which stay in {@link #values} and
+     * {@link #search} until they outnumber the remaining ones
+     */
+    private final BitSet removed = new BitSet();
+
+    /**
+     * Number of removed values
+     */
+    private int removedCount;
+
     /**
      * The match mode
      */
@@ -62,6 +124,65 @@ public class CollectionSuggestionProvider implements AutocompleteSuggestionProvi
      */
     private Locale locale;
 
+    /**
+     * Ignore diacritics while matching
+     */
+    private boolean ignoreDiacritics;
+
+    /**
+     * Normalizes values and terms for matching
+     */
+    private TextFolding folding;
+
+    /**
+     * Char signatures of the {@link #search} values used to skip values
+     * while scanning
+     */
+    private CharSignatures signatures;
+
+    /**
+     * Return suggestions in the order of {@link #values}
+     */
+    private boolean preserveOrder = true;
+
+    /**
+     * Max edit distance used by {@link MatchMode#FUZZY}
+     */
+    private int maxEditDistance = 1;
+
+    /**
+     * Use a {@link SuggestionIndex} instead of scanning all values
+     */
+    private boolean indexed = true;
+
+    /**
+     * Add the cached read-only suggestions in {@link #collectSuggestions}
+     */
+    private boolean sharedSuggestions;
+
+    /**
+     * Index over {@link #search}, lazily built for the active
+     * {@link MatchMode}
+     */
+    private transient volatile SuggestionIndex index;
+
+    /**
+     * Number of values compared with the term during the last query
+     */
+    private transient volatile int lastQueryCost;
+
+    /**
+     * Read-only suggestion of each value, created on first use. May be
+     * shorter than {@link #values} after values have been added.
+     */
+    private transient volatile AtomicReferenceArray<AutocompleteSuggestion> suggestions;
+
+    /**
+     * Incremented whenever the values or the matching options change, so
+     * {@link Candidates} of earlier queries are not refined
+     */
+    private transient int modCount;
+
     @SuppressWarnings("unchecked")
     public CollectionSuggestionProvider() {
         this(Collections.EMPTY_LIST);
@@ -122,75 +243,421 @@ public class CollectionSuggestionProvider implements AutocompleteSuggestionProvi
     }
 
     /**
-     * Converts the given {@link List} of {@link String}s to lower case
+     * Folds the given {@link List} of {@link String}s for matching
      *
      * @param list {@link List} of {@link String}s
-     * @param locale {@link Locale} used for converting
-     * @return {@link List} containing only lower case {@link String}s
+     * @param folding {@link TextFolding} used for converting
+     * @return {@link List} containing only folded {@link String}s
      */
-    private static List<String> listToLowerCase(List<String> list, Locale locale) {
-        List<String> lowerCase = new ArrayList<>(list);
-        int length = lowerCase.size();
+    private static List<String> foldList(List<String> list, TextFolding folding) {
+        List<String> folded = new ArrayList<>(list);
+        int length = folded.size();
         for (int i = 0; i < length; ++i) {
-            String normalCase = lowerCase.get(i);
-            lowerCase.set(i, normalCase.toLowerCase(locale));
+            folded.set(i, folding.fold(folded.get(i)));
         }
-        return lowerCase;
+        return folded;
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Every call returns new suggestions, which can be modified by the
+     * caller, e.g. by a subclass that adds descriptions or icons.
+     * </p>
+     */
     @Override
     public Collection<AutocompleteSuggestion> querySuggestions(AutocompleteQuery query) {
-        String term = query.getTerm();
-        if (values.isEmpty() || term == null || term.isEmpty()) {
-            return Collections.emptyList();
+        Set<AutocompleteSuggestion> suggestions;
+        if (query.hasLimit()) {
+            suggestions = new LinkedHashSet<>(query.getLimit());
+        } else {
+            suggestions = new LinkedHashSet<>();
         }
-        if (ignoreCase) {
-            // Use lower case version of the term for matching
-            term = term.toLowerCase(locale);
+        IntList ids = findIds(query);
+        int size = ids.size();
+        for (int i = 0; i < size; ++i) {
+            suggestions.add(new AutocompleteSuggestion(values.get(ids.get(i))));
         }
+        return suggestions;
+    }
 
-        boolean hasLimit = query.hasLimit();
-        int limit = query.getLimit();
-        int length = search.size();
+    /**
+     * {@inheritDoc}
+     * <p>
+     * If a subclass overrides
+     * {@link #querySuggestions(eu.maxschuster.vaadin.autocompletetextfield.AutocompleteQuery)},
+     * the result of the override is added. Otherwise the suggestions are new
+     * ones, or the shared read-only ones if
+     * {@link #setSharedSuggestions(boolean) shared suggestions} are enabled.
+     * Together with the reused buffers of this provider and of the
+     * {@link eu.maxschuster.vaadin.autocompletetextfield.AutocompleteTextFieldExtension}
+     * a query with shared suggestions allocates no suggestions.
+     * </p>
+     */
+    @Override
+    public void collectSuggestions(AutocompleteQuery query,
+            Collection<AutocompleteSuggestion> result) {
+        if (isQueryOverridden()) {
+            Collection<AutocompleteSuggestion> suggestions = querySuggestions(query);
+            if (suggestions != null) {
+                result.addAll(suggestions);
+            }
+            return;
+        }
+        IntList ids = findIds(query);
+        int size = ids.size();
+        for (int i = 0; i < size; ++i) {
+            result.add(getSuggestion(ids.get(i)));
+        }
+    }
 
-        Set<AutocompleteSuggestion> suggestions;
-        if (hasLimit) {
-            suggestions = new LinkedHashSet<>(limit);
+    /**
+     * Finds the ids of the values matching the given query.
+     *
+     * @param query The query.
+     * @return The ids in a buffer reused by the next query of the thread.
+     */
+    private IntList findIds(AutocompleteQuery query) {
+        IntList ids = QUERY_IDS.get();
+        ids.clear();
+        String term = query.getTerm();
+        if (values.isEmpty() || term == null || term.isEmpty()) {
+            lastQueryCost = 0;
+            return ids;
+        }
+        // Use the folded version of the term for matching
+        term = folding.fold(term);
+        if (usesIndex()) {
+            lastQueryCost = getIndex().search(term, query.getLimit(), query, ids);
         } else {
-            suggestions = new LinkedHashSet<>();
+            lastQueryCost = scan(term, 0, query.getLimit(), query, ids);
         }
+        return ids;
+    }
+
+    /**
+     * Checks if the class of this provider overrides
+     * {@link #querySuggestions(eu.maxschuster.vaadin.autocompletetextfield.AutocompleteQuery)}.
+     * All queries go through the override then.
+     */
+    private boolean isQueryOverridden() {
+        return QUERY_OVERRIDDEN.get(getClass());
+    }
 
+    /**
+     * Checks if the index or the packed scan finds the matching values.
+     */
+    private boolean usesIndex() {
+        return indexed || MatchMode.FUZZY == matchMode
+                || MatchMode.CONTAINS == matchMode;
+    }
+
+    /**
+     * Scans the values for the given folded term without an index. Stops
+     * early when the query has been cancelled and marks the query as
+     * incomplete when its time budget has been used up.
+     *
+     * @param term The folded term.
+     * @param from Id of the first value to scan.
+     * @param limit Max number of ids to find, {@code <= 0} for all.
+     * @param query The query.
+     * @param result Receives the ids.
+     * @return The number of compared values.
+     */
+    private int scan(String term, int from, int limit, AutocompleteQuery query,
+            IntList result) {
+        long termSignature = CharSignatures.of(term);
+        int length = search.size();
         int added = 0;
-        for (int i = 0; i < length; ++i) {
-            if (hasLimit && added >= limit) {
+        int compared = 0;
+        int i = from;
+        for (; i < length; ++i) {
+            if (limit > 0 && added >= limit) {
                 break; // limit reached, exit loop
             }
-            String searchValue = search.get(i);
-            if (MatchMode.BEGINS == matchMode && searchValue.startsWith(term)
-                    || MatchMode.CONTAINS == matchMode && searchValue.contains(term)) {
-                if (suggestions.add(new AutocompleteSuggestion(values.get(i)))) {
-                    ++added;
-                }
+            if ((i - from) % SuggestionIndex.DEADLINE_CHECK_INTERVAL == 0 && i > from
+                    && SuggestionIndex.isOverdue(query)) {
+                break; // return the values found so far
+            }
+            if (!signatures.mayContain(i, termSignature) || removed.get(i)) {
+                continue; // a char of the term is missing or removed
+            }
+            ++compared;
+            if (matches(search.get(i), term)) {
+                result.add(i);
+                ++added;
             }
         }
-        return suggestions;
+        return compared;
+    }
+
+    /**
+     * Checks if the given folded value matches the given folded term without
+     * an index. Not used for {@link MatchMode#FUZZY}.
+     */
+    private boolean matches(String searchValue, String term) {
+        switch (matchMode) {
+            case BEGINS:
+                return searchValue.startsWith(term);
+            case CONTAINS:
+                return searchValue.contains(term);
+            case WORD_BEGINS:
+                return WordIndex.matches(searchValue, term);
+            default:
+                throw new IllegalStateException(
+                        "Unsupported match mode " + matchMode);
+        }
+    }
+
+    /**
+     * Checks if the candidates of a query can be refined. Every match of an
+     * extended term matches the original term in all modes except
+     * {@link MatchMode#FUZZY}. With an index a full query is cheap anyway.
+     */
+    private boolean isRefinable() {
+        return !indexed && MatchMode.FUZZY != matchMode;
+    }
+
+    @Override
+    public Candidates queryCandidates(AutocompleteQuery query) {
+        String term = query.getTerm();
+        if (!isRefinable() || isQueryOverridden() || term == null || term.isEmpty()) {
+            return null;
+        }
+        term = folding.fold(term);
+        IntList ids = new IntList();
+        lastQueryCost = usesIndex() ? getIndex().search(term, 0, query, ids)
+                : scan(term, 0, 0, query, ids);
+        return new ValueCandidates(this, modCount, term, ids.toArray(),
+                scannedUntil(query, ids, 0));
+    }
+
+    @Override
+    public Candidates refineCandidates(Candidates candidates, AutocompleteQuery query) {
+        String term = query.getTerm();
+        if (!isRefinable() || isQueryOverridden() || !isCurrent(candidates)
+                || term == null) {
+            return null;
+        }
+        ValueCandidates previous = (ValueCandidates) candidates;
+        term = folding.fold(term);
+        if (term.equals(previous.term) && previous.scanned == search.size()) {
+            lastQueryCost = 0;
+            return previous;
+        }
+        if (!term.startsWith(previous.term)) {
+            return null; // not an extension, e.g. after a backspace
+        }
+        long termSignature = CharSignatures.of(term);
+        int[] previousIds = previous.ids;
+        IntList ids = new IntList(previousIds.length);
+        int compared = 0;
+        for (int id : previousIds) {
+            if (!signatures.mayContain(id, termSignature)) {
+                continue;
+            }
+            ++compared;
+            if (matches(search.get(id), term)) {
+                ids.add(id);
+            }
+        }
+        int scanned = previous.scanned;
+        if (scanned < search.size()) {
+            // the previous query ran out of time, scan the remaining values
+            compared += scan(term, scanned, 0, query, ids);
+            scanned = scannedUntil(query, ids, scanned);
+        }
+        lastQueryCost = compared;
+        return new ValueCandidates(this, modCount, term, ids.toArray(), scanned);
+    }
+
+    /**
+     * Gets the id of the first value that has not been scanned by a query
+     * that found ascending ids. After an early stop the values from the last
+     * match on are scanned again by the next refinement.
+     *
+     * @param query The query.
+     * @param ids The found ids.
+     * @param from Id of the first value the query scanned.
+     * @return The id of the first value that has not been scanned.
+     */
+    private int scannedUntil(AutocompleteQuery query, IntList ids, int from) {
+        if (!query.isIncomplete() && !query.isCancelled()) {
+            return search.size();
+        }
+        return ids.isEmpty() ? from : Math.max(from, ids.get(ids.size() - 1) + 1);
+    }
+
+    @Override
+    public void collectSuggestions(Candidates candidates, AutocompleteQuery query,
+            Collection<AutocompleteSuggestion> result) {
+        if (isQueryOverridden() || !isCurrent(candidates)) {
+            collectSuggestions(query, result);
+            return;
+        }
+        int[] ids = ((ValueCandidates) candidates).ids;
+        int end = query.hasLimit() ? Math.min(query.getLimit(), ids.length) : ids.length;
+        for (int i = 0; i < end; ++i) {
+            result.add(getSuggestion(ids[i]));
+        }
+    }
+
+    /**
+     * Checks if the given {@link Candidates} have been created by this
+     * provider since the last change.
+     */
+    private boolean isCurrent(Candidates candidates) {
+        if (!(candidates instanceof ValueCandidates)) {
+            return false;
+        }
+        ValueCandidates valueCandidates = (ValueCandidates) candidates;
+        return valueCandidates.provider == this
+                && valueCandidates.modCount == modCount;
+    }
+
+    /**
+     * The ids of all values matching a folded term in result order.
+     */
+    private static final class ValueCandidates implements Candidates {
+
+        private final CollectionSuggestionProvider provider;
+
+        private final int modCount;
+
+        private final String term;
+
+        private final int[] ids;
+
+        /**
+         * Id of the first value that has not been scanned, less than the
+         * number of values if the query ran out of time
+         */
+        private final int scanned;
+
+        ValueCandidates(CollectionSuggestionProvider provider, int modCount,
+                String term, int[] ids, int scanned) {
+            this.provider = provider;
+            this.modCount = modCount;
+            this.term = term;
+            this.ids = ids;
+            this.scanned = scanned;
+        }
+
+    }
+
+    /**
+     * Gets the suggestion of the value with the given id, the cached
+     * read-only one if {@link #sharedSuggestions} is enabled.
+     *
+     * @param id The id of the value.
+     * @return The suggestion.
+     */
+    private AutocompleteSuggestion getSuggestion(int id) {
+        if (!sharedSuggestions) {
+            return new AutocompleteSuggestion(values.get(id));
+        }
+        AtomicReferenceArray<AutocompleteSuggestion> cache = suggestions;
+        if (cache == null || id >= cache.length()) {
+            cache = growSuggestions();
+        }
+        AutocompleteSuggestion suggestion = cache.get(id);
+        if (suggestion == null) {
+            suggestion = new AutocompleteSuggestion(values.get(id)).readOnly();
+            if (!cache.compareAndSet(id, null, suggestion)) {
+                suggestion = cache.get(id); // created by another thread
+            }
+        }
+        return suggestion;
+    }
+
+    /**
+     * Grows {@link #suggestions} to the number of values.
+     *
+     * @return The grown suggestions.
+     */
+    private synchronized AtomicReferenceArray<AutocompleteSuggestion> growSuggestions() {
+        AtomicReferenceArray<AutocompleteSuggestion> cache = suggestions;
+        int size = values.size();
+        if (cache != null && cache.length() >= size) {
+            return cache; // grown by another thread
+        }
+        AtomicReferenceArray<AutocompleteSuggestion> grown = new AtomicReferenceArray<>(
+                cache == null ? size : Math.max(size, cache.length() << 1));
+        if (cache != null) {
+            for (int i = 0; i < cache.length(); ++i) {
+                grown.set(i, cache.get(i));
+            }
+        }
+        suggestions = grown;
+        return grown;
     }
 
     /**
      * Refreshes the {@link List} used for matching.
      * <p>
-     * It's eigther a {@link List} of lower case values or the {@link #values}
-     * {@link List} itself, depending on {@code ignoreCase}.
+     * It's eigther a {@link List} of folded values or the {@link #values}
+     * {@link List} itself, depending on {@code ignoreCase} and
+     * {@code ignoreDiacritics}.
      * </p>
      */
     private void refreshSearchList() {
-        if (ignoreCase) {
-            // Use lower case values for matching
-            search = listToLowerCase(values, locale);
+        folding = new TextFolding(ignoreCase, ignoreDiacritics, locale);
+        if (!folding.isIdentity()) {
+            // Use folded values for matching
+            search = foldList(values, folding);
         } else {
             // Use normal values for matching
             search = values;
         }
+        signatures = new CharSignatures(search);
+        index = null;
+        ++modCount;
+    }
+
+    /**
+     * Gets the {@link SuggestionIndex} for the active {@link MatchMode} and
+     * builds it if necessary.
+     *
+     * @return The {@link SuggestionIndex}.
+     */
+    private SuggestionIndex getIndex() {
+        SuggestionIndex current = index;
+        return current != null ? current : buildIndex();
+    }
+
+    /**
+     * Builds the {@link SuggestionIndex} for the active {@link MatchMode}
+     * once, even if several queries need it at the same time.
+     *
+     * @return The {@link SuggestionIndex}.
+     */
+    private synchronized SuggestionIndex buildIndex() {
+        if (index == null) {
+            SuggestionIndex built;
+            switch (matchMode) {
+                case BEGINS:
+                    built = new PrefixIndex(search, preserveOrder);
+                    break;
+                case CONTAINS:
+                    built = indexed ? new TrigramIndex(search)
+                            : new ShiftOrScan(values, search, signatures, folding);
+                    break;
+                case FUZZY:
+                    built = new FuzzyIndex(search, maxEditDistance);
+                    break;
+                case WORD_BEGINS:
+                    built = new WordIndex(search, preserveOrder);
+                    break;
+                default:
+                    throw new IllegalStateException(
+                            "Unsupported match mode " + matchMode);
+            }
+            if (removedCount > 0) {
+                built.removed(removed.stream().toArray());
+            }
+            index = built;
+        }
+        return index;
     }
 
     /**
@@ -200,7 +667,24 @@ public class CollectionSuggestionProvider implements AutocompleteSuggestionProvi
      * @return An unmodifiable {@link Collection}
      */
     public Collection<String> getValues() {
-        return Collections.unmodifiableList(values);
+        return Collections.unmodifiableList(liveValues());
+    }
+
+    /**
+     * Gets the values that have not been removed.
+     *
+     * @return {@link #values} itself or a copy without the removed values.
+     */
+    private List<String> liveValues() {
+        if (removedCount == 0) {
+            return values;
+        }
+        int length = values.size();
+        List<String> live = new ArrayList<>(length - removedCount);
+        for (int id = removed.nextClearBit(0); id < length; id = removed.nextClearBit(id + 1)) {
+            live.add(values.get(id));
+        }
+        return live;
     }
 
     /**
@@ -211,6 +695,9 @@ public class CollectionSuggestionProvider implements AutocompleteSuggestionProvi
     public void setValues(Collection<String> values) {
         validateValues(values);
         this.values = copyToList(values);
+        this.suggestions = null;
+        this.removed.clear();
+        this.removedCount = 0;
         refreshSearchList();
     }
 
@@ -226,6 +713,201 @@ public class CollectionSuggestionProvider implements AutocompleteSuggestionProvi
         return this;
     }
 
+    /**
+     * Adds a value to the end of the values used by this provider. Unlike
+     * {@link #setValues(java.util.Collection)} only the new value is
+     * normalized and inserted into an existing index.
+     *
+     * @param value The value to add.
+     * @since 3.0
+     */
+    public void addValue(String value) {
+        addAll(Collections.singletonList(value));
+    }
+
+    /**
+     * Adds values to the end of the values used by this provider. Unlike
+     * {@link #setValues(java.util.Collection)} only the new values are
+     * normalized and inserted into an existing index.
+     *
+     * @param values The values to add.
+     * @since 3.0
+     */
+    public void addAll(Collection<String> values) {
+        validateValues(values);
+        for (String value : values) {
+            if (value == null) {
+                throw new NullPointerException("value is null!");
+            }
+        }
+        if (values.isEmpty()) {
+            return;
+        }
+        int fromId = this.values.size();
+        this.values.addAll(values);
+        if (search != this.values) {
+            for (String value : values) {
+                search.add(folding.fold(value));
+            }
+        }
+        signatures.added(search, fromId);
+        ++modCount;
+        SuggestionIndex current = index;
+        if (current != null) {
+            current.added(fromId);
+        }
+    }
+
+    /**
+     * Removes the first occurrence of a value from the values used by this
+     * provider. Unlike {@link #setValues(java.util.Collection)} the remaining
+     * values are not normalized again. The value is only marked as removed
+     * until the removed values outnumber the remaining ones, then all of
+     * them are dropped from the lists and the index in a single pass.
+     *
+     * @param value The value to remove.
+     * @return {@code true} if the value was removed.
+     * @since 3.0
+     */
+    public boolean removeValue(String value) {
+        int length = values.size();
+        for (int id = removed.nextClearBit(0); id < length; id = removed.nextClearBit(id + 1)) {
+            if (values.get(id).equals(value)) {
+                removeIds(new int[]{id});
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Removes all occurrences of the given values from the values used by
+     * this provider. Unlike {@link #setValues(java.util.Collection)} the
+     * remaining values are not normalized again and the values are only
+     * marked as removed, see {@link #removeValue(java.lang.String)}.
+     *
+     * @param values The values to remove.
+     * @return {@code true} if at least one value was removed.
+     * @since 3.0
+     */
+    public boolean removeAll(Collection<String> values) {
+        validateValues(values);
+        Set<String> remove = new HashSet<>(values);
+        IntList ids = new IntList();
+        int length = this.values.size();
+        for (int id = removed.nextClearBit(0); id < length; id = removed.nextClearBit(id + 1)) {
+            if (remove.contains(this.values.get(id))) {
+                ids.add(id);
+            }
+        }
+        if (ids.isEmpty()) {
+            return false;
+        }
+        removeIds(ids.toArray());
+        return true;
+    }
+
+    /**
+     * Marks the values with the given ids as removed. The values keep their
+     * ids, so the index only has to skip them. Once the removed values
+     * outnumber the remaining ones they are dropped, which amortizes the
+     * linear cost of the compaction over the removals.
+     *
+     * @param ids The ascending ids to remove.
+     */
+    private void removeIds(int[] ids) {
+        for (int id : ids) {
+            removed.set(id);
+        }
+        removedCount += ids.length;
+        ++modCount;
+        AtomicReferenceArray<AutocompleteSuggestion> cache = suggestions;
+        if (cache != null) {
+            for (int id : ids) {
+                if (id < cache.length()) {
+                    cache.set(id, null);
+                }
+            }
+        }
+        SuggestionIndex current = index;
+        if (current != null) {
+            current.removed(ids);
+        }
+        if (removedCount > values.size() - removedCount) {
+            compactRemoved();
+        }
+    }
+
+    /**
+     * Drops the removed values from {@link #values}, {@link #search}, the
+     * signatures and the index in a single pass each. The ids of the
+     * remaining values are shifted down to close the gaps.
+     */
+    private void compactRemoved() {
+        int[] ids = removed.stream().toArray();
+        int[] newIds = IdRemapping.newIds(values.size(), ids);
+        compact(values, ids);
+        if (search != values) {
+            compact(search, ids);
+        }
+        signatures.removed(ids);
+        AtomicReferenceArray<AutocompleteSuggestion> cache = suggestions;
+        if (cache != null) {
+            compact(cache, ids);
+        }
+        SuggestionIndex current = index;
+        if (current != null) {
+            current.compacted(newIds);
+        }
+        removed.clear();
+        removedCount = 0;
+    }
+
+    /**
+     * Removes the elements at the given positions from the given {@link List}
+     * by shifting the remaining elements down.
+     *
+     * @param list The {@link List}.
+     * @param ids The ascending positions to remove.
+     */
+    private static <T> void compact(List<T> list, int[] ids) {
+        int length = list.size();
+        int out = ids[0];
+        int next = 0;
+        for (int i = ids[0]; i < length; ++i) {
+            if (next < ids.length && ids[next] == i) {
+                ++next;
+            } else {
+                list.set(out++, list.get(i));
+            }
+        }
+        list.subList(out, length).clear();
+    }
+
+    /**
+     * Removes the elements at the given positions from the given array by
+     * shifting the remaining elements down and clearing the end.
+     *
+     * @param array The array.
+     * @param ids The ascending positions to remove.
+     */
+    private static <T> void compact(AtomicReferenceArray<T> array, int[] ids) {
+        int length = array.length();
+        int out = ids[0];
+        int next = 0;
+        for (int i = ids[0]; i < length; ++i) {
+            if (next < ids.length && ids[next] == i) {
+                ++next;
+            } else {
+                array.set(out++, array.get(i));
+            }
+        }
+        for (; out < length; ++out) {
+            array.set(out, null);
+        }
+    }
+
+
     /**
      * Gets the {@link MatchMode} of this provider.
      *
@@ -242,7 +924,12 @@ public class CollectionSuggestionProvider implements AutocompleteSuggestionProvi
      */
     public void setMatchMode(MatchMode matchMode) {
         validateMatchMode(matchMode);
+        boolean changed = this.matchMode != matchMode;
         this.matchMode = matchMode;
+        if (changed) {
+            index = null;
+            ++modCount;
+        }
     }
 
     /**
@@ -292,6 +979,49 @@ public class CollectionSuggestionProvider implements AutocompleteSuggestionProvi
         return this;
     }
 
+    /**
+     * Gets whether this provider ignores diacritics.
+     *
+     * @return This provider ignores diacritics.
+     * @since 3.0
+     */
+    public boolean isIgnoreDiacritics() {
+        return ignoreDiacritics;
+    }
+
+    /**
+     * Sets whether this provider ignores diacritics. If {@code true}, values
+     * and terms are decomposed with Unicode NFKD and their combining marks are
+     * removed, so {@code "Zurich"} matches {@code "Zürich"}. The values are
+     * folded once when they are set, only the term is folded per query.
+     * <p>
+     * The default is {@code false}.
+     * </p>
+     *
+     * @param ignoreDiacritics This provider ignores diacritics.
+     * @since 3.0
+     */
+    public void setIgnoreDiacritics(boolean ignoreDiacritics) {
+        boolean changed = this.ignoreDiacritics != ignoreDiacritics;
+        this.ignoreDiacritics = ignoreDiacritics;
+        if (changed) {
+            refreshSearchList();
+        }
+    }
+
+    /**
+     * Sets whether this provider ignores diacritics.
+     *
+     * @param ignoreDiacritics This provider ignores diacritics.
+     * @return this (for method chaining)
+     * @see #setIgnoreDiacritics(boolean)
+     * @since 3.0
+     */
+    public CollectionSuggestionProvider withIgnoreDiacritics(boolean ignoreDiacritics) {
+        setIgnoreDiacritics(ignoreDiacritics);
+        return this;
+    }
+
     /**
      * Gets the {@link Locale} of this provider.
      *
@@ -327,13 +1057,236 @@ public class CollectionSuggestionProvider implements AutocompleteSuggestionProvi
         return this;
     }
 
+    /**
+     * Gets whether suggestions are returned in the order of the values.
+     *
+     * @return Suggestions are returned in the order of the values.
+     * @since 3.0
+     */
+    public boolean isPreserveOrder() {
+        return preserveOrder;
+    }
+
+    /**
+     * Sets whether suggestions are returned in the order of the values.
+     * <p>
+     * If {@code false}, an indexed provider with {@link MatchMode#BEGINS}
+     * returns suggestions in ascending order of their (normalized) values and
+     * values that are equal keep their original order. With
+     * {@link MatchMode#WORD_BEGINS} the order of the matching words is used
+     * instead. This allows the provider to stop as soon as the query limit is
+     * reached instead of visiting every match.
+     * </p>
+     * <p>
+     * The default is {@code true}, which keeps the order of earlier versions
+     * but makes every indexed query visit all matches of the term.
+     * Use {@code false} for large collections with short terms.
+     * </p>
+     *
+     * @param preserveOrder Suggestions are returned in the order of the
+     * values.
+     * @since 3.0
+     */
+    public void setPreserveOrder(boolean preserveOrder) {
+        boolean changed = this.preserveOrder != preserveOrder;
+        this.preserveOrder = preserveOrder;
+        if (changed) {
+            index = null;
+        }
+    }
+
+    /**
+     * Sets whether suggestions are returned in the order of the values.
+     *
+     * @param preserveOrder Suggestions are returned in the order of the
+     * values.
+     * @return this (for method chaining)
+     * @since 3.0
+     * @see #setPreserveOrder(boolean)
+     */
+    public CollectionSuggestionProvider withPreserveOrder(boolean preserveOrder) {
+        setPreserveOrder(preserveOrder);
+        return this;
+    }
+
+    /**
+     * Gets the max edit distance used by {@link MatchMode#FUZZY}.
+     *
+     * @return The max edit distance.
+     * @since 3.0
+     */
+    public int getMaxEditDistance() {
+        return maxEditDistance;
+    }
+
+    /**
+     * Sets the max edit distance used by {@link MatchMode#FUZZY}.
+     * <p>
+     * Each inserted, deleted or replaced char counts as one edit. The distance
+     * allowed for a term is further limited to a third of its length, so short
+     * terms do not match everything. Suggestions are ordered by their distance
+     * and then by the order of the values.
+     * </p>
+     * <p>
+     * The default is {@code 1}.
+     * </p>
+     *
+     * @param maxEditDistance The max edit distance.
+     * @throws IllegalArgumentException If {@code maxEditDistance < 0}.
+     * @since 3.0
+     */
+    public void setMaxEditDistance(int maxEditDistance) throws IllegalArgumentException {
+        if (maxEditDistance < 0) {
+            throw new IllegalArgumentException("maxEditDistance must be >= 0!");
+        }
+        boolean changed = this.maxEditDistance != maxEditDistance;
+        this.maxEditDistance = maxEditDistance;
+        if (changed && MatchMode.FUZZY == matchMode) {
+            index = null;
+        }
+    }
+
+    /**
+     * Sets the max edit distance used by {@link MatchMode#FUZZY}.
+     *
+     * @param maxEditDistance The max edit distance.
+     * @return this (for method chaining)
+     * @throws IllegalArgumentException If {@code maxEditDistance < 0}.
+     * @since 3.0
+     * @see #setMaxEditDistance(int)
+     */
+    public CollectionSuggestionProvider withMaxEditDistance(int maxEditDistance) throws IllegalArgumentException {
+        setMaxEditDistance(maxEditDistance);
+        return this;
+    }
+
+    /**
+     * Gets whether this provider uses an index to find matching values.
+     *
+     * @return This provider uses an index.
+     * @since 3.0
+     */
+    public boolean isIndexed() {
+        return indexed;
+    }
+
+    /**
+     * Sets whether this provider uses an index to find matching values.
+     * <p>
+     * The index is built on the first query after the values or matching
+     * options have changed. Without an index every query scans all values,
+     * which needs less memory but is much slower on large collections.
+     * {@link MatchMode#FUZZY} always uses an index. Without an index
+     * {@link MatchMode#CONTAINS} scans a compact buffer of all values with a
+     * bit-parallel matcher.
+     * </p>
+     * <p>
+     * The default is {@code true}.
+     * </p>
+     *
+     * @param indexed This provider uses an index.
+     * @since 3.0
+     */
+    public void setIndexed(boolean indexed) {
+        boolean changed = this.indexed != indexed;
+        this.indexed = indexed;
+        if (changed) {
+            index = null;
+            ++modCount;
+        }
+    }
+
+    /**
+     * Sets whether this provider uses an index to find matching values.
+     *
+     * @param indexed This provider uses an index.
+     * @return this (for method chaining)
+     * @since 3.0
+     * @see #setIndexed(boolean)
+     */
+    public CollectionSuggestionProvider withIndexed(boolean indexed) {
+        setIndexed(indexed);
+        return this;
+    }
+
+    /**
+     * Gets whether
+     * {@link #collectSuggestions(eu.maxschuster.vaadin.autocompletetextfield.AutocompleteQuery, java.util.Collection)}
+     * adds shared read-only suggestions.
+     *
+     * @return Shared read-only suggestions are added.
+     * @since 3.0
+     */
+    public boolean isSharedSuggestions() {
+        return sharedSuggestions;
+    }
+
+    /**
+     * Sets whether
+     * {@link #collectSuggestions(eu.maxschuster.vaadin.autocompletetextfield.AutocompleteQuery, java.util.Collection)}
+     * adds shared read-only suggestions.
+     * <p>
+     * If {@code true}, each value has a single read-only
+     * {@link AutocompleteSuggestion} that is created on first use and added
+     * by every query that finds the value, which is what the
+     * {@link eu.maxschuster.vaadin.autocompletetextfield.AutocompleteTextFieldExtension}
+     * calls. A query then allocates no suggestions. The setters of the
+     * shared suggestions throw an {@link UnsupportedOperationException}.
+     * {@link #querySuggestions(eu.maxschuster.vaadin.autocompletetextfield.AutocompleteQuery)}
+     * always returns new suggestions, and a subclass that overrides it
+     * gets no shared suggestions at all.
+     * </p>
+     * <p>
+     * The default is {@code false}.
+     * </p>
+     *
+     * @param sharedSuggestions Shared read-only suggestions are added.
+     * @since 3.0
+     */
+    public void setSharedSuggestions(boolean sharedSuggestions) {
+        this.sharedSuggestions = sharedSuggestions;
+    }
+
+    /**
+     * Sets whether
+     * {@link #collectSuggestions(eu.maxschuster.vaadin.autocompletetextfield.AutocompleteQuery, java.util.Collection)}
+     * adds shared read-only suggestions.
+     *
+     * @param sharedSuggestions Shared read-only suggestions are added.
+     * @return this (for method chaining)
+     * @since 3.0
+     * @see #setSharedSuggestions(boolean)
+     */
+    public CollectionSuggestionProvider withSharedSuggestions(boolean sharedSuggestions) {
+        setSharedSuggestions(sharedSuggestions);
+        return this;
+    }
+
+    /**
+     * Gets the number of values that were compared with the term during the
+     * last query. It is a measure of the cost of a query and shows the effect
+     * of {@link #setIndexed(boolean)}. If several threads query the provider,
+     * it is the cost of the query that finished last.
+     *
+     * @return The number of compared values.
+     * @since 3.0
+     */
+    public int getLastQueryCost() {
+        return lastQueryCost;
+    }
+
     @Override
     public int hashCode() {
         int hash = 3;
-        hash = 97 * hash + (this.values != null ? this.values.hashCode() : 0);
+        hash = 97 * hash + (this.values != null ? liveValues().hashCode() : 0);
         hash = 97 * hash + (this.matchMode != null ? this.matchMode.hashCode() : 0);
         hash = 97 * hash + (this.ignoreCase ? 1 : 0);
+        hash = 97 * hash + (this.ignoreDiacritics ? 1 : 0);
         hash = 97 * hash + (this.locale != null ? this.locale.hashCode() : 0);
+        hash = 97 * hash + (this.preserveOrder ? 1 : 0);
+        hash = 97 * hash + (this.indexed ? 1 : 0);
+        hash = 97 * hash + (this.sharedSuggestions ? 1 : 0);
+        hash = 97 * hash + this.maxEditDistance;
         return hash;
     }
 
@@ -349,7 +1302,18 @@ public class CollectionSuggestionProvider implements AutocompleteSuggestionProvi
         final CollectionSuggestionProvider other = (CollectionSuggestionProvider) obj;
         if (this.ignoreCase != other.ignoreCase) {
             return false;
-        } else if (this.values != other.values && (this.values == null || !this.values.equals(other.values))) {
+        } else if (this.ignoreDiacritics != other.ignoreDiacritics) {
+            return false;
+        } else if (this.preserveOrder != other.preserveOrder) {
+            return false;
+        } else if (this.indexed != other.indexed) {
+            return false;
+        } else if (this.sharedSuggestions != other.sharedSuggestions) {
+            return false;
+        } else if (this.maxEditDistance != other.maxEditDistance) {
+            return false;
+        } else if (this.values != other.values && (this.values == null || other.values == null
+                || !liveValues().equals(other.liveValues()))) {
             return false;
         } else if (this.matchMode != other.matchMode) {
             return false;
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2017 Max Schuster.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.maxschuster.vaadin.autocompletetextfield.provider;
+
+import eu.maxschuster.vaadin.autocompletetextfield.AutocompleteQuery;
+import eu.maxschuster.vaadin.autocompletetextfield.AutocompleteSuggestion;
+import eu.maxschuster.vaadin.autocompletetextfield.AutocompleteSuggestionProvider;
+import java.util.Collection;
+
+/**
+ * An {@link AutocompleteSuggestionProvider} that delegates to a dictionary of
+ * the {@link DictionaryRegistry}.
+ * <p>
+ * A handle keeps the shared provider of its dictionary in memory while it is
+ * in use. Only the name of the dictionary is serialized, so a handle adds
+ * next to nothing to the size of a session. After deserialization the
+ * provider is looked up again on the next query.
+ * </p>
+ *
+ * @author Max Schuster
+ * @see DictionaryRegistry#getHandle(java.lang.String)
+ * @since 3.0
+ */
+public final class DictionaryHandle implements AutocompleteSuggestionProvider {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The name of the dictionary
+     */
+    private final String name;
+
+    /**
+     * The registry entry the provider was acquired from
+     */
+    private transient DictionaryRegistry.Entry entry;
+
+    /**
+     * The shared provider
+     */
+    private transient AutocompleteSuggestionProvider provider;
+
+    DictionaryHandle(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Gets the name of the dictionary.
+     *
+     * @return The name of the dictionary.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gets the shared provider of the dictionary. It is acquired again if the
+     * dictionary has been registered anew.
+     *
+     * @return The shared provider.
+     * @throws IllegalStateException If the dictionary is not registered and
+     * this handle has not acquired it before.
+     */
+    private synchronized AutocompleteSuggestionProvider getProvider() {
+        DictionaryRegistry.Entry current = DictionaryRegistry.findEntry(name);
+        if (current == null) {
+            if (provider == null) {
+                throw new IllegalStateException(
+                        "No dictionary registered with name '" + name + "'");
+            }
+            return provider; // unregistered, keep using the acquired one
+        }
+        if (current != entry || provider == null) {
+            provider = current.acquire();
+            entry = current;
+        }
+        return provider;
+    }
+
+    @Override
+    public Collection<AutocompleteSuggestion> querySuggestions(AutocompleteQuery query) {
+        return getProvider().querySuggestions(query);
+    }
+
+    @Override
+    public int hashCode() {
+        return name.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+        return name.equals(((DictionaryHandle) obj).name);
+    }
+
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2017 Max Schuster.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.maxschuster.vaadin.autocompletetextfield.provider;
+
+import eu.maxschuster.vaadin.autocompletetextfield.AutocompleteSuggestionProvider;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * A JVM-wide registry of named dictionaries.
+ * <p>
+ * A dictionary is registered once with a factory that builds its
+ * {@link AutocompleteSuggestionProvider}. Sessions use a lightweight
+ * {@link DictionaryHandle} that only serializes the name of the dictionary,
+ * so all sessions share one provider per dictionary instead of holding their
+ * own copy of the values.
+ * </p>
+ * <p>
+ * The registry itself only holds a weak reference to a built provider. It
+ * stays in memory as long as a handle uses it and is collected once no
+ * handle does. The next handle that needs it builds it again with the
+ * factory.
+ * </p>
+ * <p>
+ * The providers are queried concurrently by many sessions, so the factory
+ * must return a thread-safe provider like a
+ * {@link SnapshotSuggestionProvider}.
+ * </p>
+ *
+ * @author Max Schuster
+ * @see DictionaryHandle
+ * @since 3.0
+ */
+public final class DictionaryRegistry {
+
+    private static final ConcurrentMap<String, Entry> ENTRIES = new ConcurrentHashMap<>();
+
+    private DictionaryRegistry() {
+    }
+
+    private static void validateName(String name) {
+        if (name == null) {
+            throw new NullPointerException("name is null!");
+        }
+    }
+
+    /**
+     * Registers a dictionary. A dictionary already registered with the same
+     * name is replaced and handles switch to the new dictionary with their
+     * next query.
+     *
+     * @param name The name of the dictionary.
+     * @param factory Builds the thread-safe provider of the dictionary.
+     */
+    public static void register(String name,
+            Supplier<? extends AutocompleteSuggestionProvider> factory) {
+        validateName(name);
+        if (factory == null) {
+            throw new NullPointerException("factory is null!");
+        }
+        ENTRIES.put(name, new Entry(name, factory));
+    }
+
+    /**
+     * Removes a dictionary from the registry. Handles that already use it
+     * keep working, new handles can no longer be created.
+     *
+     * @param name The name of the dictionary.
+     * @return {@code true} if the dictionary was registered.
+     */
+    public static boolean unregister(String name) {
+        validateName(name);
+        return ENTRIES.remove(name) != null;
+    }
+
+    /**
+     * Checks if a dictionary is registered.
+     *
+     * @param name The name of the dictionary.
+     * @return {@code true} if the dictionary is registered.
+     */
+    public static boolean isRegistered(String name) {
+        validateName(name);
+        return ENTRIES.containsKey(name);
+    }
+
+    /**
+     * Checks if the provider of a dictionary is currently built.
+     *
+     * @param name The name of the dictionary.
+     * @return {@code true} if the provider is in memory.
+     */
+    public static boolean isLoaded(String name) {
+        validateName(name);
+        Entry entry = ENTRIES.get(name);
+        return entry != null && entry.reference.get() != null;
+    }
+
+    /**
+     * Creates a handle for a registered dictionary.
+     *
+     * @param name The name of the dictionary.
+     * @return A new handle.
+     * @throws IllegalArgumentException If no dictionary is registered with
+     * the name.
+     */
+    public static DictionaryHandle getHandle(String name) {
+        if (findEntry(name) == null) {
+            throw new IllegalArgumentException(
+                    "No dictionary registered with name '" + name + "'");
+        }
+        return new DictionaryHandle(name);
+    }
+
+    /**
+     * Gets the entry of a dictionary.
+     *
+     * @param name The name of the dictionary.
+     * @return The entry or {@code null} if no dictionary is registered with
+     * the name.
+     */
+    static Entry findEntry(String name) {
+        validateName(name);
+        return ENTRIES.get(name);
+    }
+
+    /**
+     * A registered dictionary.
+     */
+    static final class Entry {
+
+        private final String name;
+
+        private final Supplier<? extends AutocompleteSuggestionProvider> factory;
+
+        private volatile WeakReference<AutocompleteSuggestionProvider> reference
+                = new WeakReference<>(null);
+
+        Entry(String name, Supplier<? extends AutocompleteSuggestionProvider> factory) {
+            this.name = name;
+            this.factory = factory;
+        }
+
+        /**
+         * Gets the provider and builds it if it is not in memory.
+         *
+         * @return The provider.
+         */
+        synchronized AutocompleteSuggestionProvider acquire() {
+            AutocompleteSuggestionProvider provider = reference.get();
+            if (provider == null) {
+                provider = factory.get();
+                if (provider == null) {
+                    throw new IllegalStateException("Factory of dictionary '"
+                            + name + "' returned null!");
+                }
+                reference = new WeakReference<>(provider);
+            }
+            return provider;
+        }
+
+    }
+
+}
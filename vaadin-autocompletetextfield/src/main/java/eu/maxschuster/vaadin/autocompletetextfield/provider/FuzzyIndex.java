@@ -0,0 +1,220 @@
+/*
+ * Copyright 2017 Max Schuster.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.maxschuster.vaadin.autocompletetextfield.provider;
+
+import eu.maxschuster.vaadin.autocompletetextfield.AutocompleteQuery;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@link SuggestionIndex} for {@link MatchMode#FUZZY}.
+ * <p>
+ * The sorted array of normalized keys forms an implicit trie: all keys
+ * sharing a prefix are a contiguous range and the children of a prefix are
+ * found by binary searches over the next char. The index walks a Levenshtein
+ * automaton for the term along this trie. The state of the automaton is a row
+ * of the edit distance matrix, and a branch is abandoned as soon as no cell
+ * of its row is within the max edit distance. Only the parts of the trie that
+ * can still match are visited.
+ * </p>
+ * <p>
+ * A value matches if one of its prefixes is within the max edit distance of
+ * the term. Matches are returned ordered by their distance and then by their
+ * original order.
+ * </p>
+ *
+ * @author Max Schuster
+ * @since 3.0
+ */
+final class FuzzyIndex extends SortedKeyIndex {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The max edit distance.
+     */
+    private final int maxEditDistance;
+
+    /**
+     * Creates a new index over the given normalized values.
+     *
+     * @param search The normalized values. The list index is the value id.
+     * @param maxEditDistance The max edit distance.
+     */
+    FuzzyIndex(List<String> search, int maxEditDistance) {
+        super(search);
+        this.maxEditDistance = maxEditDistance;
+    }
+
+    /**
+     * Gets the edit distance allowed for the given term. It is limited to a
+     * third of the term length, so a short term does not match everything.
+     *
+     * @param term The term.
+     * @param maxEditDistance The configured max edit distance.
+     * @return The allowed edit distance.
+     */
+    static int allowedDistance(String term, int maxEditDistance) {
+        return Math.min(maxEditDistance, term.length() / 3);
+    }
+
+    @Override
+    public int search(String term, int limit, AutocompleteQuery query,
+            IntList result) {
+        Walk walk = new Walk(term, allowedDistance(term, maxEditDistance));
+        int[] row = walk.row(0);
+        for (int j = 0; j < row.length; ++j) {
+            row[j] = j;
+        }
+        walk.visit(0, size, 0, term.length());
+        return walk.emit(limit, result);
+    }
+
+    /**
+     * The state of a single search.
+     */
+    private final class Walk {
+
+        private final String term;
+
+        private final int distance;
+
+        /**
+         * Automaton state (edit distance row) per trie depth
+         */
+        private final List<int[]> rows = new ArrayList<>();
+
+        /**
+         * Matching ids per edit distance
+         */
+        private final IntList[] matches;
+
+        /**
+         * Number of visited trie nodes
+         */
+        private int visited;
+
+        Walk(String term, int distance) {
+            this.term = term;
+            this.distance = distance;
+            this.matches = new IntList[distance + 1];
+            for (int d = 0; d <= distance; ++d) {
+                matches[d] = new IntList();
+            }
+        }
+
+        int[] row(int depth) {
+            while (rows.size() <= depth) {
+                rows.add(new int[term.length() + 1]);
+            }
+            return rows.get(depth);
+        }
+
+        /**
+         * Visits the trie node formed by the given range of keys sharing a
+         * prefix of length {@code depth}.
+         *
+         * @param from Start of the range (inclusive).
+         * @param to End of the range (exclusive).
+         * @param depth Length of the shared prefix.
+         * @param best Smallest distance of the term to the shared prefix or
+         * one of its prefixes.
+         */
+        void visit(int from, int to, int depth, int best) {
+            ++visited;
+            int i = from;
+            // keys ending at this node are sorted first
+            while (i < to && keys[i].length() == depth) {
+                if (best <= distance) {
+                    matches[best].add(ids[i]);
+                }
+                ++i;
+            }
+            int[] row = row(depth);
+            int length = term.length();
+            while (i < to) {
+                char c = keys[i].charAt(depth);
+                int end = childEnd(i, to, depth, c);
+                int[] next = row(depth + 1);
+                next[0] = row[0] + 1;
+                int min = next[0];
+                for (int j = 1; j <= length; ++j) {
+                    int cost = term.charAt(j - 1) == c ? 0 : 1;
+                    next[j] = Math.min(Math.min(row[j] + 1, next[j - 1] + 1),
+                            row[j - 1] + cost);
+                    min = Math.min(min, next[j]);
+                }
+                int nextBest = Math.min(best, next[length]);
+                if (min <= distance) {
+                    visit(i, end, depth + 1, nextBest);
+                } else if (nextBest <= distance) {
+                    // no longer prefix can do better, the whole subtree
+                    // matches with the distance found so far
+                    for (int k = i; k < end; ++k) {
+                        matches[nextBest].add(ids[k]);
+                    }
+                }
+                i = end;
+            }
+        }
+
+        /**
+         * Finds the end of the child range whose char at {@code depth} is
+         * {@code c}.
+         */
+        private int childEnd(int from, int to, int depth, char c) {
+            int low = from;
+            int high = to;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (keys[mid].charAt(depth) <= c) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * Appends the matches ordered by distance and original order.
+         *
+         * @param limit Max number of ids.
+         * @param result Receives the ids.
+         * @return The number of visited trie nodes.
+         */
+        int emit(int limit, IntList result) {
+            int added = 0;
+            for (IntList bucket : matches) {
+                bucket.sort(0);
+                int count = bucket.size();
+                for (int i = 0; i < count; ++i) {
+                    if (limit > 0 && added >= limit) {
+                        return visited;
+                    }
+                    int id = bucket.get(i);
+                    if (!tombstones.get(id)) {
+                        result.add(id);
+                        ++added;
+                    }
+                }
+            }
+            return visited;
+        }
+
+    }
+
+}
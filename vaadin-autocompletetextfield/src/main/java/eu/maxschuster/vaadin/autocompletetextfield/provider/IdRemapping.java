@@ -0,0 +1,53 @@
+/*
+ * Copyright 2017 Max Schuster.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.maxschuster.vaadin.autocompletetextfield.provider;
+
+/**
+ * Maps the value ids of a {@link SuggestionIndex} after removed values have
+ * been dropped from the middle of the value list.
+ *
+ * @author Max Schuster
+ * @since 3.0
+ */
+final class IdRemapping {
+
+    private IdRemapping() {
+    }
+
+    /**
+     * Gets the new id of every value after the given values have been
+     * dropped, so each id is mapped in constant time.
+     *
+     * @param length The number of values before the removal.
+     * @param removedIds The ascending ids of the removed values.
+     * @return The new id by old id, {@code -1} for a removed value.
+     */
+    static int[] newIds(int length, int[] removedIds) {
+        int[] newIds = new int[length];
+        int next = 0;
+        int out = 0;
+        for (int id = 0; id < length; ++id) {
+            if (next < removedIds.length && removedIds[next] == id) {
+                newIds[id] = -1;
+                ++next;
+            } else {
+                newIds[id] = out++;
+            }
+        }
+        return newIds;
+    }
+
+}
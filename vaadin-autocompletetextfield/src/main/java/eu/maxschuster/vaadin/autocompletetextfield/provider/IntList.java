@@ -0,0 +1,211 @@
+/*
+ * Copyright 2017 Max Schuster.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.maxschuster.vaadin.autocompletetextfield.provider;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.function.IntBinaryOperator;
+
+/**
+ * A minimal growable list of primitive {@code int}s used to collect value ids
+ * without boxing.
+ *
+ * @author Max Schuster
+ * @since 3.0
+ */
+final class IntList implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The elements of this list.
+     */
+    private int[] elements;
+
+    /**
+     * The number of elements in this list.
+     */
+    private int size;
+
+    /**
+     * Creates a new empty list.
+     */
+    IntList() {
+        this(16);
+    }
+
+    /**
+     * Creates a new empty list with the given initial capacity.
+     *
+     * @param capacity The initial capacity.
+     */
+    IntList(int capacity) {
+        elements = new int[Math.max(capacity, 1)];
+    }
+
+    /**
+     * Appends the given element.
+     *
+     * @param element The element to append.
+     */
+    void add(int element) {
+        if (size == elements.length) {
+            elements = Arrays.copyOf(elements, size << 1);
+        }
+        elements[size++] = element;
+    }
+
+    /**
+     * Gets the element at the given index.
+     *
+     * @param index The index.
+     * @return The element.
+     */
+    int get(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("index " + index
+                    + " >= size " + size);
+        }
+        return elements[index];
+    }
+
+    /**
+     * Replaces the element at the given index.
+     *
+     * @param index The index.
+     * @param element The new element.
+     */
+    void set(int index, int element) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("index " + index
+                    + " >= size " + size);
+        }
+        elements[index] = element;
+    }
+
+    /**
+     * Gets the number of elements.
+     *
+     * @return The number of elements.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Checks if this list is empty.
+     *
+     * @return {@code true} if this list is empty.
+     */
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Shrinks this list to the given size.
+     *
+     * @param newSize The new size.
+     */
+    void truncate(int newSize) {
+        if (newSize < size) {
+            size = Math.max(newSize, 0);
+        }
+    }
+
+    /**
+     * Removes all elements.
+     */
+    void clear() {
+        size = 0;
+    }
+
+    /**
+     * Sorts the elements starting at the given index in ascending order.
+     *
+     * @param fromIndex Index of the first element to sort.
+     */
+    void sort(int fromIndex) {
+        Arrays.sort(elements, fromIndex, size);
+    }
+
+    /**
+     * Sorts the given ints with a stable merge sort, so elements the
+     * comparator considers equal keep their order. Used to sort value ids by
+     * their keys without boxing.
+     *
+     * @param elements The ints to sort.
+     * @param comparator Compares two elements.
+     */
+    static void stableSort(int[] elements, IntBinaryOperator comparator) {
+        int length = elements.length;
+        int[] source = elements;
+        int[] target = new int[length];
+        for (int width = 1; width < length; width <<= 1) {
+            for (int low = 0; low < length; low += width << 1) {
+                int mid = Math.min(low + width, length);
+                int high = Math.min(low + (width << 1), length);
+                int left = low;
+                int right = mid;
+                int out = low;
+                while (left < mid && right < high) {
+                    if (comparator.applyAsInt(source[right], source[left]) < 0) {
+                        target[out++] = source[right++];
+                    } else {
+                        target[out++] = source[left++];
+                    }
+                }
+                System.arraycopy(source, left, target, out, mid - left);
+                out += mid - left;
+                System.arraycopy(source, right, target, out, high - right);
+            }
+            int[] swap = source;
+            source = target;
+            target = swap;
+        }
+        if (source != elements) {
+            System.arraycopy(source, 0, elements, 0, length);
+        }
+    }
+
+    /**
+     * Shrinks the backing array to the number of elements.
+     */
+    void trimToSize() {
+        if (elements.length > size) {
+            elements = Arrays.copyOf(elements, Math.max(size, 1));
+        }
+    }
+
+    /**
+     * Gets the backing array for fast iteration. Only the first
+     * {@link #size()} elements are valid and the array must not be modified.
+     *
+     * @return The backing array.
+     */
+    int[] elements() {
+        return elements;
+    }
+
+    /**
+     * Copies the elements into a new array.
+     *
+     * @return A new array containing all elements.
+     */
+    int[] toArray() {
+        return Arrays.copyOf(elements, size);
+    }
+
+}
@@ -0,0 +1,313 @@
+/*
+ * Copyright 2017 Max Schuster.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.maxschuster.vaadin.autocompletetextfield.provider;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Writes dictionary files for the {@link MappedSuggestionProvider}. A
+ * dictionary file is built offline once, so a provider can be started without
+ * normalizing or sorting any values.
+ * <p>
+ * A dictionary file starts with a header:
+ * </p>
+ * <ul>
+ * <li>the magic number {@code ACTF} and the format version</li>
+ * <li>the name of the {@link MatchMode}, the {@code ignoreCase} flag and the
+ * language tag of the {@link Locale} the keys have been normalized with</li>
+ * <li>the CRC-32 checksum of everything following the header</li>
+ * </ul>
+ * <p>
+ * The header is followed by the number of entries, the position of every
+ * entry followed by the end position of the last entry and the entries in the
+ * order of their keys. Positions are relative to the number of entries. An
+ * entry is the length of its UTF-8 encoded key, the key and the UTF-8 encoded
+ * value. If the key equals the value, the key length is {@code -1} and the key
+ * is not stored.
+ * </p>
+ * <p>
+ * Strings in the header are UTF-8 encoded and prefixed by their length as an
+ * unsigned 16-bit integer. All other numbers are big-endian 32-bit integers,
+ * except the checksum, which is a 64-bit integer. The entries can not exceed
+ * 2 GB.
+ * </p>
+ * <p>
+ * A dictionary is written to a temporary file in the directory of the target
+ * file, which is then moved over the target atomically. A provider never maps
+ * a partially written file, and providers that have mapped the previous file
+ * keep reading it.
+ * </p>
+ * <p>
+ * Dictionary files can be written from the command line with
+ * {@link #main(java.lang.String[])}.
+ * </p>
+ *
+ * @author Max Schuster
+ * @see MappedSuggestionProvider
+ * @since 3.0
+ */
+public final class MappedDictionaryWriter {
+
+    /**
+     * The magic number of a dictionary file ({@code ACTF})
+     */
+    static final int MAGIC = 0x41435446;
+
+    /**
+     * The version of the dictionary file format
+     */
+    static final int VERSION = 1;
+
+    /**
+     * The locale used if none is given, independent of the default locale of
+     * the JVM
+     */
+    static final Locale DEFAULT_LOCALE = Locale.ROOT;
+
+    private MappedDictionaryWriter() {
+    }
+
+    /**
+     * Writes a dictionary file using {@link Locale#ROOT}.
+     *
+     * @param values The values.
+     * @param ignoreCase Ignore case while matching.
+     * @param file The file to write.
+     * @throws IOException If writing the file fails.
+     * @throws IllegalArgumentException If the file would exceed 2 GB.
+     */
+    public static void write(Collection<String> values, boolean ignoreCase,
+            Path file) throws IOException {
+        write(values, ignoreCase, DEFAULT_LOCALE, file);
+    }
+
+    /**
+     * Writes a dictionary file.
+     *
+     * @param values The values.
+     * @param ignoreCase Ignore case while matching.
+     * @param locale Locale used for matching.
+     * @param file The file to write.
+     * @throws IOException If writing the file fails.
+     * @throws IllegalArgumentException If the file would exceed 2 GB.
+     */
+    public static void write(Collection<String> values, boolean ignoreCase,
+            Locale locale, Path file) throws IOException {
+        if (values == null) {
+            throw new NullPointerException("values is null!");
+        }
+        if (locale == null) {
+            throw new NullPointerException("locale is null!");
+        }
+        if (file == null) {
+            throw new NullPointerException("file is null!");
+        }
+        int count = values.size();
+        byte[][] encodedValues = new byte[count][];
+        byte[][] keys = new byte[count][];
+        long position = 8L + 4L * count; // size of the entries
+        int id = 0;
+        for (String value : values) {
+            if (value == null) {
+                throw new NullPointerException("value is null!");
+            }
+            encodedValues[id] = value.getBytes(StandardCharsets.UTF_8);
+            String key = ignoreCase ? value.toLowerCase(locale) : value;
+            keys[id] = key.equals(value) ? encodedValues[id]
+                    : key.getBytes(StandardCharsets.UTF_8);
+            position += 4 + encodedValues[id].length
+                    + (keys[id] == encodedValues[id] ? 0 : keys[id].length);
+            ++id;
+        }
+        if (position > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Dictionary exceeds 2 GB");
+        }
+        int[] order = sort(keys);
+
+        ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+        DataOutputStream header = new DataOutputStream(headerBytes);
+        header.writeInt(MAGIC);
+        header.writeInt(VERSION);
+        writeString(header, MatchMode.BEGINS.name());
+        header.writeBoolean(ignoreCase);
+        writeString(header, locale.toLanguageTag());
+        header.writeLong(0); // checksum, written when the entries are done
+
+        Path target = file.toAbsolutePath();
+        Path temp = Files.createTempFile(target.getParent(),
+                target.getFileName().toString(), ".tmp");
+        boolean moved = false;
+        try {
+            writeEntries(temp, headerBytes, count, keys, encodedValues, order);
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+            moved = true;
+        } finally {
+            if (!moved) {
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+
+    /**
+     * Writes the header and the entries in the order of their keys to the
+     * given file.
+     */
+    private static void writeEntries(Path file, ByteArrayOutputStream headerBytes,
+            int count, byte[][] keys, byte[][] encodedValues, int[] order)
+            throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.write(ByteBuffer.wrap(headerBytes.toByteArray()));
+            CRC32 crc = new CRC32();
+            // not closed, that would close the channel
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new CheckedOutputStream(Channels.newOutputStream(channel), crc),
+                    1 << 16));
+            out.writeInt(count);
+            int start = 8 + 4 * count;
+            for (int i = 0; i < count; ++i) {
+                out.writeInt(start);
+                byte[] key = keys[order[i]];
+                byte[] value = encodedValues[order[i]];
+                start += 4 + value.length + (key == value ? 0 : key.length);
+            }
+            out.writeInt(start);
+            for (int i = 0; i < count; ++i) {
+                byte[] key = keys[order[i]];
+                byte[] value = encodedValues[order[i]];
+                if (key == value) {
+                    out.writeInt(MappedSuggestionProvider.SAME_AS_VALUE);
+                } else {
+                    out.writeInt(key.length);
+                    out.write(key);
+                }
+                out.write(value);
+            }
+            out.flush();
+            ByteBuffer checksum = ByteBuffer.allocate(8);
+            checksum.putLong(0, crc.getValue());
+            channel.write(checksum, headerBytes.size() - 8);
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Writes a string as its UTF-8 bytes prefixed by their length.
+     */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Writes a dictionary file from a text file containing one value per
+     * line.
+     * <pre>
+     * MappedDictionaryWriter [--ignore-case] [--locale &lt;tag&gt;] &lt;input&gt; &lt;output&gt;
+     * </pre>
+     * <p>
+     * The input is read as UTF-8 and empty lines are skipped. The locale
+     * defaults to {@link Locale#ROOT}.
+     * </p>
+     *
+     * @param args The command line arguments.
+     * @throws IOException If reading or writing fails.
+     */
+    public static void main(String[] args) throws IOException {
+        boolean ignoreCase = false;
+        Locale locale = DEFAULT_LOCALE;
+        List<String> files = new ArrayList<>(2);
+        for (int i = 0; i < args.length; ++i) {
+            if ("--ignore-case".equals(args[i])) {
+                ignoreCase = true;
+            } else if ("--locale".equals(args[i]) && i + 1 < args.length) {
+                locale = Locale.forLanguageTag(args[++i]);
+            } else {
+                files.add(args[i]);
+            }
+        }
+        if (files.size() != 2) {
+            System.err.println("Usage: " + MappedDictionaryWriter.class.getName()
+                    + " [--ignore-case] [--locale <tag>] <input> <output>");
+            System.exit(1);
+            return;
+        }
+        List<String> values = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(
+                Paths.get(files.get(0)), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    values.add(line);
+                }
+            }
+        }
+        write(values, ignoreCase, locale, Paths.get(files.get(1)));
+        System.out.println("Wrote " + values.size() + " values to " + files.get(1));
+    }
+
+    /**
+     * Compares two UTF-8 encoded keys by their unsigned bytes.
+     */
+    private static int compare(byte[] a, byte[] b) {
+        int length = Math.min(a.length, b.length);
+        for (int i = 0; i < length; ++i) {
+            int result = (a[i] & 0xff) - (b[i] & 0xff);
+            if (result != 0) {
+                return result;
+            }
+        }
+        return a.length - b.length;
+    }
+
+    /**
+     * Sorts the ids of the given keys with a stable sort.
+     *
+     * @param keys The keys.
+     * @return The ids in the order of their keys.
+     */
+    private static int[] sort(byte[][] keys) {
+        int length = keys.length;
+        int[] order = new int[length];
+        for (int i = 0; i < length; ++i) {
+            order[i] = i;
+        }
+        IntList.stableSort(order, (left, right) -> compare(keys[left], keys[right]));
+        return order;
+    }
+
+}
@@ -0,0 +1,513 @@
+/*
+ * Copyright 2017 Max Schuster.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.maxschuster.vaadin.autocompletetextfield.provider;
+
+import eu.maxschuster.vaadin.autocompletetextfield.AutocompleteQuery;
+import eu.maxschuster.vaadin.autocompletetextfield.AutocompleteSuggestion;
+import eu.maxschuster.vaadin.autocompletetextfield.AutocompleteSuggestionProvider;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * An {@link AutocompleteSuggestionProvider} for very large dictionaries that
+ * reads its values from a memory-mapped file written by
+ * {@link MappedDictionaryWriter}. It always matches like
+ * {@link MatchMode#BEGINS}.
+ * <p>
+ * The sorted keys and the values stay in the mapped file outside of the Java
+ * heap. A query locates the matching range with two binary searches over the
+ * mapped bytes and only decodes the values it returns, so the heap usage and
+ * the garbage collection pauses do not depend on the size of the dictionary.
+ * Several JVMs mapping the same file share it in the page cache of the
+ * operating system.
+ * </p>
+ * <p>
+ * Suggestions are returned in the order of their keys. Keys are compared by
+ * their UTF-8 bytes, which is the order of their code points. Equal keys keep
+ * their original order.
+ * </p>
+ * <p>
+ * The matching options are read from the file. Its checksum is verified when
+ * it is mapped, which reads the file once sequentially but does no work per
+ * entry. All providers of a JVM share one verified mapping per version of a
+ * file, identified by its real path, modification time, size and file key,
+ * so creating or deserializing another provider for the same file neither
+ * maps it again nor verifies its checksum again. Instances are immutable and
+ * thread-safe. Only the path of the file is serialized, the shared mapping is
+ * looked up again on the first query after deserialization.
+ * </p>
+ *
+ * @author Max Schuster
+ * @see MappedDictionaryWriter
+ * @since 3.0
+ */
+public class MappedSuggestionProvider implements AutocompleteSuggestionProvider {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Marks an entry whose key equals its value.
+     */
+    static final int SAME_AS_VALUE = -1;
+
+    /**
+     * The verified mapping of the current version of each file
+     */
+    private static final ConcurrentHashMap<MappingKey, Mapping> MAPPINGS
+            = new ConcurrentHashMap<>();
+
+    /**
+     * Path of the dictionary file
+     */
+    private final String file;
+
+    /**
+     * Ignore case while matching
+     */
+    private final boolean ignoreCase;
+
+    /**
+     * Locale used for matching
+     */
+    private final Locale locale;
+
+    /**
+     * The mapped entries of the dictionary file
+     */
+    private transient volatile ByteBuffer buffer;
+
+    /**
+     * Creates a new provider using the matching options stored in the
+     * dictionary file.
+     *
+     * @param file The dictionary file.
+     * @throws IOException If the file can not be mapped or is not a valid
+     * dictionary file.
+     */
+    public MappedSuggestionProvider(Path file) throws IOException {
+        this(file, mapping(validateFile(file)));
+    }
+
+    /**
+     * Creates a new provider and checks that the dictionary file has been
+     * written with the given matching options and the default locale of
+     * {@link MappedDictionaryWriter}, {@link Locale#ROOT}.
+     *
+     * @param file The dictionary file.
+     * @param ignoreCase Ignore case while matching.
+     * @throws IOException If the file can not be mapped or is not a valid
+     * dictionary file.
+     * @throws IllegalArgumentException If the file has been written with
+     * other matching options.
+     */
+    public MappedSuggestionProvider(Path file, boolean ignoreCase) throws IOException {
+        this(file, ignoreCase, MappedDictionaryWriter.DEFAULT_LOCALE);
+    }
+
+    /**
+     * Creates a new provider and checks that the dictionary file has been
+     * written with the given matching options. The locale is only compared
+     * if the case is ignored, because it has no effect otherwise.
+     *
+     * @param file The dictionary file.
+     * @param ignoreCase Ignore case while matching.
+     * @param locale Locale used for matching.
+     * @throws IOException If the file can not be mapped or is not a valid
+     * dictionary file.
+     * @throws IllegalArgumentException If the file has been written with
+     * other matching options.
+     */
+    public MappedSuggestionProvider(Path file, boolean ignoreCase, Locale locale) throws IOException {
+        this(file);
+        if (locale == null) {
+            throw new NullPointerException("locale is null!");
+        }
+        if (!hasOptions(this.ignoreCase, this.locale, ignoreCase, locale)) {
+            throw new IllegalArgumentException("Dictionary file " + file
+                    + " has been written with ignoreCase=" + this.ignoreCase
+                    + " and locale " + this.locale.toLanguageTag());
+        }
+    }
+
+    private MappedSuggestionProvider(Path file, Mapping mapping) {
+        this.file = file.toAbsolutePath().toString();
+        this.ignoreCase = mapping.ignoreCase;
+        this.locale = mapping.locale;
+        this.buffer = mapping.buffer;
+    }
+
+    /**
+     * Checks if a dictionary file written with the given options matches
+     * like the expected options. The locale only matters if the case is
+     * ignored.
+     */
+    private static boolean hasOptions(boolean ignoreCase, Locale locale,
+            boolean expectedIgnoreCase, Locale expectedLocale) {
+        return ignoreCase == expectedIgnoreCase
+                && (!ignoreCase || locale.equals(expectedLocale));
+    }
+
+    private static Path validateFile(Path file) {
+        if (file == null) {
+            throw new NullPointerException("file is null!");
+        }
+        return file;
+    }
+
+    /**
+     * Gets the shared mapping of the current version of the given file and
+     * maps the file if it has not been mapped yet. The mappings of previous
+     * versions are dropped, providers using them keep reading them.
+     *
+     * @param file The file.
+     * @return The mapped file.
+     * @throws IOException If the file can not be mapped or is not a valid
+     * dictionary file.
+     */
+    private static Mapping mapping(Path file) throws IOException {
+        Path real = file.toRealPath();
+        BasicFileAttributes attributes = Files.readAttributes(real, BasicFileAttributes.class);
+        MappingKey key = new MappingKey(real.toString(), attributes);
+        Mapping mapping = MAPPINGS.get(key);
+        if (mapping != null) {
+            return mapping;
+        }
+        try {
+            // maps and verifies the file once, even if many providers need it
+            mapping = MAPPINGS.computeIfAbsent(key, k -> {
+                try {
+                    return map(real);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        MAPPINGS.keySet().removeIf(other -> other.path.equals(key.path) && !other.equals(key));
+        return mapping;
+    }
+
+    /**
+     * Reads the header of the given dictionary file, verifies its checksum
+     * and maps its entries into memory.
+     *
+     * @param file The file.
+     * @return The mapped file.
+     * @throws IOException If the file can not be mapped or is not a valid
+     * dictionary file.
+     * @see MappedDictionaryWriter
+     */
+    private static Mapping map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    Channels.newInputStream(channel)));
+            if (channel.size() < 8 || in.readInt() != MappedDictionaryWriter.MAGIC) {
+                throw new IOException("Not a dictionary file: " + file);
+            }
+            int version = in.readInt();
+            if (version != MappedDictionaryWriter.VERSION) {
+                throw new IOException("Unsupported dictionary file version "
+                        + version + ": " + file);
+            }
+            byte[] matchMode = readBytes(in);
+            boolean ignoreCase = in.readBoolean();
+            byte[] languageTag = readBytes(in);
+            long checksum = in.readLong();
+            if (!MatchMode.BEGINS.name().equals(
+                    new String(matchMode, StandardCharsets.UTF_8))) {
+                throw new IOException("Unsupported match mode "
+                        + new String(matchMode, StandardCharsets.UTF_8) + ": " + file);
+            }
+            long start = 4 + 4 + 2 + matchMode.length + 1 + 2 + languageTag.length + 8;
+            long size = channel.size() - start;
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Dictionary file exceeds 2 GB: " + file);
+            }
+            ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+            CRC32 crc = new CRC32();
+            crc.update(mapped.duplicate());
+            if (crc.getValue() != checksum) {
+                throw new IOException("Checksum mismatch, dictionary file is corrupt: " + file);
+            }
+            if (mapped.limit() < 4 || mapped.limit() < 8 + 4L * mapped.getInt(0)) {
+                throw new IOException("Invalid dictionary file: " + file);
+            }
+            return new Mapping(ignoreCase, Locale.forLanguageTag(
+                    new String(languageTag, StandardCharsets.UTF_8)), mapped);
+        } catch (EOFException e) {
+            throw new IOException("Truncated dictionary file: " + file, e);
+        }
+    }
+
+    /**
+     * Reads a byte array prefixed by its length as an unsigned short.
+     */
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readUnsignedShort()];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    /**
+     * Gets the mapped entries and looks up the shared mapping again after
+     * deserialization.
+     *
+     * @return The mapped entries.
+     */
+    private ByteBuffer getBuffer() {
+        ByteBuffer mapped = buffer;
+        if (mapped == null) {
+            try {
+                Mapping mapping = mapping(Paths.get(file));
+                if (!hasOptions(mapping.ignoreCase, mapping.locale, ignoreCase, locale)) {
+                    throw new IOException("Matching options of dictionary file "
+                            + file + " have changed");
+                }
+                buffer = mapped = mapping.buffer;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return mapped;
+    }
+
+    /**
+     * Gets the number of entries of the given mapped file.
+     */
+    private static int count(ByteBuffer buffer) {
+        return buffer.getInt(0);
+    }
+
+    /**
+     * Gets the position of an entry relative to the start of the entry count.
+     * The positions are stored behind the entry count, one more than there
+     * are entries.
+     */
+    private static int entryStart(ByteBuffer buffer, int entry) {
+        return buffer.getInt(4 + 4 * entry);
+    }
+
+    /**
+     * Compares the key of an entry with the given bytes.
+     *
+     * @param buffer The mapped file.
+     * @param entry The entry.
+     * @param term The UTF-8 bytes of the term.
+     * @param prefix Only check if the key starts with the term.
+     * @return The comparison result. When checking the prefix, zero means
+     * that the key starts with the term.
+     */
+    private static int compareKey(ByteBuffer buffer, int entry, byte[] term, boolean prefix) {
+        int start = entryStart(buffer, entry);
+        int end = entryStart(buffer, entry + 1);
+        int keyLength = buffer.getInt(start);
+        int keyStart = start + 4;
+        if (keyLength == SAME_AS_VALUE) {
+            keyLength = end - keyStart;
+        }
+        int length = Math.min(keyLength, term.length);
+        for (int i = 0; i < length; ++i) {
+            int result = (buffer.get(keyStart + i) & 0xff) - (term[i] & 0xff);
+            if (result != 0) {
+                return result;
+            }
+        }
+        if (prefix && keyLength >= term.length) {
+            return 0;
+        }
+        return keyLength - term.length;
+    }
+
+    /**
+     * Decodes the value of an entry.
+     */
+    private static String value(ByteBuffer buffer, int entry) {
+        int start = entryStart(buffer, entry);
+        int end = entryStart(buffer, entry + 1);
+        int keyLength = buffer.getInt(start);
+        int valueStart = start + 4 + (keyLength == SAME_AS_VALUE ? 0 : keyLength);
+        byte[] bytes = new byte[end - valueStart];
+        // read through a view, the position of the shared buffer must not change
+        ByteBuffer view = buffer.duplicate();
+        view.position(valueStart);
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public Collection<AutocompleteSuggestion> querySuggestions(AutocompleteQuery query) {
+        String term = query.getTerm();
+        if (term == null || term.isEmpty()) {
+            return Collections.emptyList();
+        }
+        if (ignoreCase) {
+            term = term.toLowerCase(locale);
+        }
+        byte[] bytes = term.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer mapped = getBuffer();
+        int count = count(mapped);
+
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compareKey(mapped, mid, bytes, false) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        int from = low;
+        high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compareKey(mapped, mid, bytes, true) == 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        int to = query.hasLimit() ? Math.min(low, from + query.getLimit()) : low;
+
+        List<AutocompleteSuggestion> suggestions = new ArrayList<>(to - from);
+        for (int entry = from; entry < to; ++entry) {
+            suggestions.add(new AutocompleteSuggestion(value(mapped, entry)));
+        }
+        return suggestions;
+    }
+
+    /**
+     * Gets the number of values in the dictionary.
+     *
+     * @return The number of values.
+     */
+    public int size() {
+        return count(getBuffer());
+    }
+
+    /**
+     * Gets the path of the dictionary file.
+     *
+     * @return The path of the dictionary file.
+     */
+    public Path getFile() {
+        return Paths.get(file);
+    }
+
+    /**
+     * Gets whether this provider is case insensitive.
+     *
+     * @return This provider is case insensitive.
+     */
+    public boolean isIgnoreCase() {
+        return ignoreCase;
+    }
+
+    /**
+     * Gets the {@link Locale} of this provider.
+     *
+     * @return The {@link Locale} of this provider.
+     */
+    public Locale getLocale() {
+        return locale;
+    }
+
+    /**
+     * The matching options and the mapped entries of a dictionary file.
+     */
+    private static final class Mapping {
+
+        private final boolean ignoreCase;
+
+        private final Locale locale;
+
+        private final ByteBuffer buffer;
+
+        Mapping(boolean ignoreCase, Locale locale, ByteBuffer buffer) {
+            this.ignoreCase = ignoreCase;
+            this.locale = locale;
+            this.buffer = buffer;
+        }
+
+    }
+
+    /**
+     * Identifies a version of a dictionary file.
+     */
+    private static final class MappingKey {
+
+        private final String path;
+
+        private final FileTime lastModified;
+
+        private final long size;
+
+        /**
+         * The file key, e.g. device and inode, or {@code null}
+         */
+        private final Object fileKey;
+
+        MappingKey(String path, BasicFileAttributes attributes) {
+            this.path = path;
+            this.lastModified = attributes.lastModifiedTime();
+            this.size = attributes.size();
+            this.fileKey = attributes.fileKey();
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(path, lastModified, size, fileKey);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof MappingKey)) {
+                return false;
+            }
+            MappingKey other = (MappingKey) obj;
+            return size == other.size && path.equals(other.path)
+                    && lastModified.equals(other.lastModified)
+                    && Objects.equals(fileKey, other.fileKey);
+        }
+
+    }
+
+}
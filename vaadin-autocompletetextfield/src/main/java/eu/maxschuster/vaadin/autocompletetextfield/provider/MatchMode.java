@@ -33,6 +33,22 @@ public enum MatchMode {
     /**
      * Should match if the value contains the search string.
      */
-    CONTAINS
+    CONTAINS,
+    /**
+     * Should match if the value begins with a string that is within a max
+     * edit distance (Levenshtein distance) of the search string. Tolerates
+     * typing errors.
+     *
+     * @since 3.0
+     */
+    FUZZY,
+    /**
+     * Should match if a word of the value begins with the search string. A
+     * word begins at the beginning of the value and at every letter or digit
+     * that follows a char that is neither.
+     *
+     * @since 3.0
+     */
+    WORD_BEGINS
 
 }
@@ -0,0 +1,423 @@
+/*
+ * Copyright 2017 Max Schuster.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.maxschuster.vaadin.autocompletetextfield.provider;
+
+import eu.maxschuster.vaadin.autocompletetextfield.AutocompleteQuery;
+import eu.maxschuster.vaadin.autocompletetextfield.AutocompleteSuggestion;
+import eu.maxschuster.vaadin.autocompletetextfield.AutocompleteSuggestionProvider;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * An {@link AutocompleteSuggestionProvider} that scans all values with a
+ * custom {@link Matcher} and spreads the scan over the threads of a
+ * {@link ForkJoinPool}.
+ * <p>
+ * Use it for matching rules that can not be indexed. The values are split
+ * into chunks that are matched concurrently. The matches of the chunks are
+ * merged in the original order of the values. Once the chunks completed
+ * without a gap from the start hold enough matches for the limit of the
+ * query, all following chunks stop scanning. All chunks stop scanning once
+ * the query has been {@link AutocompleteQuery#isCancelled() cancelled} or its
+ * time budget has been used up. In the latter case the matches found so far
+ * are returned and the query is marked as incomplete.
+ * </p>
+ * <p>
+ * Small collections are scanned by the calling thread. Instances are
+ * immutable and thread-safe except for the {@link ForkJoinPool}, which can be
+ * replaced at any time.
+ * </p>
+ *
+ * @author Max Schuster
+ * @since 3.0
+ */
+public class ParallelScanSuggestionProvider implements AutocompleteSuggestionProvider {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Min number of values per chunk
+     */
+    static final int MIN_CHUNK_SIZE = 4096;
+
+    /**
+     * Number of values a chunk scans between two checks if it is still needed,
+     * the query has been cancelled or its time budget has been used up
+     */
+    private static final int CHECK_INTERVAL = 1024;
+
+    /**
+     * Decides if a value matches a term.
+     */
+    @FunctionalInterface
+    public interface Matcher extends Serializable {
+
+        /**
+         * Checks if the given value matches the given term. Both are
+         * normalized like configured by the provider. Called concurrently by
+         * multiple threads.
+         *
+         * @param value The normalized value.
+         * @param term The normalized term.
+         * @return {@code true} if the value matches.
+         */
+        boolean matches(String value, String term);
+
+    }
+
+    /**
+     * Array of available values
+     */
+    private final String[] values;
+
+    /**
+     * The normalized values
+     */
+    private final String[] search;
+
+    /**
+     * The matcher
+     */
+    private final Matcher matcher;
+
+    /**
+     * Normalizes values and terms for matching
+     */
+    private final TextFolding folding;
+
+    /**
+     * Ignore case while matching
+     */
+    private final boolean ignoreCase;
+
+    /**
+     * Locale used for matching
+     */
+    private final Locale locale;
+
+    /**
+     * The pool scanning the chunks, {@code null} for the common pool
+     */
+    private transient volatile ForkJoinPool pool;
+
+    public ParallelScanSuggestionProvider(Collection<String> values, MatchMode matchMode) {
+        this(values, matchMode, false, Locale.getDefault());
+    }
+
+    public ParallelScanSuggestionProvider(Collection<String> values, MatchMode matchMode, boolean ignoreCase, Locale locale) {
+        this(values, toMatcher(matchMode), ignoreCase, locale);
+    }
+
+    public ParallelScanSuggestionProvider(Collection<String> values, Matcher matcher) {
+        this(values, matcher, false, Locale.getDefault());
+    }
+
+    /**
+     * Creates a new provider.
+     *
+     * @param values The values.
+     * @param matcher Decides if a value matches a term.
+     * @param ignoreCase Ignore case while matching.
+     * @param locale Locale used for matching.
+     */
+    public ParallelScanSuggestionProvider(Collection<String> values, Matcher matcher, boolean ignoreCase, Locale locale) {
+        if (values == null) {
+            throw new NullPointerException("values is null!");
+        }
+        if (matcher == null) {
+            throw new NullPointerException("matcher is null!");
+        }
+        if (locale == null) {
+            throw new NullPointerException("locale is null!");
+        }
+        this.values = values.toArray(new String[values.size()]);
+        this.matcher = matcher;
+        this.ignoreCase = ignoreCase;
+        this.locale = locale;
+        this.folding = new TextFolding(ignoreCase, false, locale);
+        this.search = new String[this.values.length];
+        for (int i = 0; i < search.length; ++i) {
+            if (this.values[i] == null) {
+                throw new NullPointerException("value is null!");
+            }
+            search[i] = folding.fold(this.values[i]);
+        }
+    }
+
+    /**
+     * Gets the {@link Matcher} of a {@link MatchMode}.
+     *
+     * @param matchMode The {@link MatchMode}.
+     * @return The {@link Matcher}.
+     * @throws IllegalArgumentException If the {@link MatchMode} can not be
+     * matched by scanning.
+     */
+    private static Matcher toMatcher(MatchMode matchMode) {
+        if (matchMode == null) {
+            throw new NullPointerException("matchMode is null!");
+        }
+        switch (matchMode) {
+            case BEGINS:
+                return String::startsWith;
+            case CONTAINS:
+                return String::contains;
+            case WORD_BEGINS:
+                return WordIndex::matches;
+            default:
+                throw new IllegalArgumentException(
+                        "Unsupported match mode " + matchMode);
+        }
+    }
+
+    @Override
+    public Collection<AutocompleteSuggestion> querySuggestions(AutocompleteQuery query) {
+        List<AutocompleteSuggestion> suggestions = new ArrayList<>();
+        collectSuggestions(query, suggestions);
+        return suggestions;
+    }
+
+    @Override
+    public void collectSuggestions(AutocompleteQuery query,
+            Collection<AutocompleteSuggestion> result) {
+        String term = query.getTerm();
+        if (values.length == 0 || term == null || term.isEmpty()) {
+            return;
+        }
+        term = folding.fold(term);
+        int limit = query.hasLimit() ? query.getLimit() : Integer.MAX_VALUE;
+
+        int parallelism = getPool().getParallelism();
+        int chunkSize = Math.max(MIN_CHUNK_SIZE,
+                (values.length + parallelism * 4 - 1) / (parallelism * 4));
+        if (parallelism <= 1 || values.length <= chunkSize) {
+            // not worth the coordination
+            int found = 0;
+            for (int i = 0; i < search.length && found < limit; ++i) {
+                if (i % CHECK_INTERVAL == 0 && i > 0) {
+                    if (query.isCancelled()) {
+                        return; // the result is discarded anyway
+                    }
+                    if (query.isExpired()) {
+                        query.markIncomplete();
+                        return; // keep the matches found so far
+                    }
+                }
+                if (matcher.matches(search[i], term)) {
+                    result.add(new AutocompleteSuggestion(values[i]));
+                    ++found;
+                }
+            }
+            return;
+        }
+
+        int chunkCount = (values.length + chunkSize - 1) / chunkSize;
+        Scan scan = new Scan(query, term, limit, chunkSize, chunkCount);
+        List<Callable<Void>> tasks = new ArrayList<>(chunkCount);
+        for (int chunk = 0; chunk < chunkCount; ++chunk) {
+            final int index = chunk;
+            tasks.add(() -> {
+                scan.scan(index);
+                return null;
+            });
+        }
+        getPool().invokeAll(tasks);
+
+        int added = 0;
+        for (int chunk = 0; chunk < chunkCount && added < limit; ++chunk) {
+            IntList matches = scan.matches[chunk];
+            if (matches == null) {
+                break; // skipped, all following chunks are not needed
+            }
+            int size = matches.size();
+            for (int i = 0; i < size && added < limit; ++i) {
+                result.add(new AutocompleteSuggestion(values[matches.get(i)]));
+                ++added;
+            }
+            if (scan.expired[chunk]) {
+                query.markIncomplete();
+                break; // the following matches would leave a gap
+            }
+        }
+    }
+
+    /**
+     * The state of a single parallel scan.
+     */
+    private final class Scan {
+
+        private final AutocompleteQuery query;
+
+        private final String term;
+
+        private final int limit;
+
+        private final int chunkSize;
+
+        /**
+         * Matches of each chunk, {@code null} until the chunk is done
+         */
+        private final IntList[] matches;
+
+        /**
+         * Chunks that have run out of time before scanning all values
+         */
+        private final boolean[] expired;
+
+        /**
+         * Chunks after this one are not needed
+         */
+        private volatile int lastNeeded;
+
+        /**
+         * Number of chunks completed without a gap from the start
+         */
+        private int completed;
+
+        /**
+         * Number of matches in the {@link #completed} chunks
+         */
+        private int completedMatches;
+
+        Scan(AutocompleteQuery query, String term, int limit, int chunkSize,
+                int chunkCount) {
+            this.query = query;
+            this.term = term;
+            this.limit = limit;
+            this.chunkSize = chunkSize;
+            this.matches = new IntList[chunkCount];
+            this.expired = new boolean[chunkCount];
+            this.lastNeeded = chunkCount - 1;
+        }
+
+        void scan(int chunk) {
+            if (chunk > lastNeeded || query.isCancelled()) {
+                return;
+            }
+            if (chunk > 0 && query.isExpired()) {
+                expired[chunk] = true;
+                done(chunk, new IntList(0));
+                return;
+            }
+            int from = chunk * chunkSize;
+            int to = Math.min(from + chunkSize, search.length);
+            IntList found = new IntList();
+            for (int i = from; i < to && found.size() < limit; ++i) {
+                if ((i - from) % CHECK_INTERVAL == 0) {
+                    if (chunk > lastNeeded) {
+                        return; // enough matches in the chunks before this one
+                    }
+                    if (query.isCancelled()) {
+                        return; // the result is discarded anyway
+                    }
+                    if (i > from && query.isExpired()) {
+                        expired[chunk] = true;
+                        break; // keep the matches found so far
+                    }
+                }
+                if (matcher.matches(search[i], term)) {
+                    found.add(i);
+                }
+            }
+            done(chunk, found);
+        }
+
+        /**
+         * Records the matches of a chunk and stops the scan of all chunks
+         * that can no longer contribute to the result.
+         */
+        private synchronized void done(int chunk, IntList found) {
+            matches[chunk] = found;
+            while (completed < matches.length && matches[completed] != null) {
+                completedMatches += matches[completed++].size();
+                if (completedMatches >= limit) {
+                    lastNeeded = completed - 1;
+                    return;
+                }
+            }
+        }
+
+    }
+
+    /**
+     * Gets the {@link ForkJoinPool} scanning the chunks.
+     *
+     * @return The {@link ForkJoinPool}.
+     */
+    public ForkJoinPool getPool() {
+        ForkJoinPool current = pool;
+        return current != null ? current : ForkJoinPool.commonPool();
+    }
+
+    /**
+     * Sets the {@link ForkJoinPool} scanning the chunks. The pool is not
+     * serialized, a deserialized provider uses the common pool.
+     *
+     * @param pool The {@link ForkJoinPool} or {@code null} for
+     * {@link ForkJoinPool#commonPool()}.
+     */
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Sets the {@link ForkJoinPool} scanning the chunks.
+     *
+     * @param pool The {@link ForkJoinPool} or {@code null} for
+     * {@link ForkJoinPool#commonPool()}.
+     * @return this (for method chaining)
+     * @see #setPool(java.util.concurrent.ForkJoinPool)
+     */
+    public ParallelScanSuggestionProvider withPool(ForkJoinPool pool) {
+        setPool(pool);
+        return this;
+    }
+
+    /**
+     * Returns an unmodifiable {@link Collection} containing the values used by
+     * this provider.
+     *
+     * @return An unmodifiable {@link Collection}
+     */
+    public Collection<String> getValues() {
+        return Collections.unmodifiableList(Arrays.asList(values));
+    }
+
+    /**
+     * Gets whether this provider is case insensitive.
+     *
+     * @return This provider is case insensitive.
+     */
+    public boolean isIgnoreCase() {
+        return ignoreCase;
+    }
+
+    /**
+     * Gets the {@link Locale} of this provider.
+     *
+     * @return The {@link Locale} of this provider.
+     */
+    public Locale getLocale() {
+        return locale;
+    }
+
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2017 Max Schuster.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.maxschuster.vaadin.autocompletetextfield.provider;
+
+import eu.maxschuster.vaadin.autocompletetextfield.AutocompleteQuery;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A {@link SuggestionIndex} for {@link MatchMode#BEGINS} backed by a sorted
+ * array of normalized keys.
+ * <p>
+ * All keys starting with a term form a contiguous range of the sorted array.
+ * The range is located by two binary searches, so a query in key order costs
+ * {@code O(log n + limit)} instead of a scan over all values.
+ * </p>
+ * <p>
+ * Keys are sorted by their natural order, equal keys by their original
+ * insertion order. If {@code preserveOrder} is {@code true} the matching ids
+ * are returned in insertion order instead, which requires visiting and
+ * selecting from the whole matching range: {@code O(log n + m log limit)} for {@code m}
+ * matches.
+ * </p>
+ *
+ * @author Max Schuster
+ * @since 3.0
+ */
+final class PrefixIndex extends SortedKeyIndex {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Return matches in insertion order instead of key order.
+     */
+    private final boolean preserveOrder;
+
+    /**
+     * Creates a new index over the given normalized values.
+     *
+     * @param search The normalized values. The list index is the value id.
+     * @param preserveOrder Return matches in insertion order instead of key
+     * order.
+     */
+    PrefixIndex(List<String> search, boolean preserveOrder) {
+        super(search);
+        this.preserveOrder = preserveOrder;
+    }
+
+    @Override
+    public int search(String term, int limit, AutocompleteQuery query,
+            IntList result) {
+        int from = lowerBound(term);
+        int to = prefixEnd(term, from);
+        // both binary searches compare about log2(n) keys
+        int cost = 2 * (32 - Integer.numberOfLeadingZeros(size));
+        if (!preserveOrder) {
+            int i = from;
+            for (int added = 0; i < to && (limit <= 0 || added < limit); ++i) {
+                if (!tombstones.get(ids[i])) {
+                    result.add(ids[i]);
+                    ++added;
+                }
+            }
+            return cost + i - from;
+        } else if (limit <= 0 || to - from <= limit) {
+            int offset = result.size();
+            for (int i = from; i < to; ++i) {
+                if (!tombstones.get(ids[i])) {
+                    result.add(ids[i]);
+                }
+            }
+            result.sort(offset);
+        } else {
+            collectSmallest(from, to, limit, result);
+        }
+        return cost + to - from;
+    }
+
+    /**
+     * Collects the {@code limit} smallest ids of the given range in ascending
+     * order using a bounded max-heap. The heap is built in the result itself,
+     * so no memory is allocated once the result has grown large enough.
+     *
+     * @param from Start of the range (inclusive).
+     * @param to End of the range (exclusive).
+     * @param limit Number of ids to collect.
+     * @param result Receives the ids.
+     */
+    private void collectSmallest(int from, int to, int limit, IntList result) {
+        int offset = result.size();
+        int i = from;
+        for (; i < to && result.size() - offset < limit; ++i) {
+            if (!tombstones.get(ids[i])) {
+                result.add(ids[i]);
+            }
+        }
+        int count = result.size() - offset;
+        int[] heap = result.elements();
+        for (int k = 1; k < count; ++k) {
+            siftUp(heap, offset, k);
+        }
+        for (; i < to; ++i) {
+            int id = ids[i];
+            if (id < heap[offset] && !tombstones.get(id)) {
+                heap[offset] = id;
+                siftDown(heap, offset, count);
+            }
+        }
+        Arrays.sort(heap, offset, offset + count);
+    }
+
+    private static void siftUp(int[] heap, int offset, int index) {
+        int id = heap[offset + index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (heap[offset + parent] >= id) {
+                break;
+            }
+            heap[offset + index] = heap[offset + parent];
+            index = parent;
+        }
+        heap[offset + index] = id;
+    }
+
+    private static void siftDown(int[] heap, int offset, int size) {
+        int id = heap[offset];
+        int index = 0;
+        int half = size >>> 1;
+        while (index < half) {
+            int child = (index << 1) + 1;
+            if (child + 1 < size && heap[offset + child + 1] > heap[offset + child]) {
+                ++child;
+            }
+            if (heap[offset + child] <= id) {
+                break;
+            }
+            heap[offset + index] = heap[offset + child];
+            index = child;
+        }
+        heap[offset + index] = id;
+    }
+
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2017 Max Schuster.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.maxschuster.vaadin.autocompletetextfield.provider;
+
+import eu.maxschuster.vaadin.autocompletetextfield.AutocompleteQuery;
+import eu.maxschuster.vaadin.autocompletetextfield.AutocompleteSuggestion;
+import eu.maxschuster.vaadin.autocompletetextfield.AutocompleteSuggestionProvider;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * An {@link AutocompleteSuggestionProvider} that caches the results of
+ * another provider in the JVM-wide {@link SharedSuggestionCache}.
+ * <p>
+ * All instances with the same region share their cached results, even if
+ * every session has its own instance of the other provider. Use one region
+ * per dictionary and call {@link SharedSuggestionCache#invalidate(String)}
+ * when the dictionary changes. Results of queries that ran out of time or
+ * have been cancelled are not cached.
+ * </p>
+ * <p>
+ * If the other provider ignores case, pass {@code ignoreCase = true} so terms
+ * differing only in case share a cache entry.
+ * </p>
+ *
+ * @author Max Schuster
+ * @see SharedSuggestionCache
+ * @since 3.0
+ */
+public class SharedCachingSuggestionProvider implements AutocompleteSuggestionProvider {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The provider whose results are cached
+     */
+    private final AutocompleteSuggestionProvider delegate;
+
+    /**
+     * The region of the cached results
+     */
+    private final String region;
+
+    /**
+     * Normalizes the terms of the cache keys
+     */
+    private final TextFolding folding;
+
+    /**
+     * The cache, {@code null} for the JVM-wide cache
+     */
+    private final transient SharedSuggestionCache cache;
+
+    public SharedCachingSuggestionProvider(AutocompleteSuggestionProvider delegate,
+            String region) {
+        this(delegate, region, false, Locale.getDefault());
+    }
+
+    /**
+     * Creates a new provider.
+     *
+     * @param delegate The provider whose results are cached.
+     * @param region The region of the cached results.
+     * @param ignoreCase Terms differing only in case share a cache entry.
+     * @param locale Locale used to fold the case of the terms.
+     */
+    public SharedCachingSuggestionProvider(AutocompleteSuggestionProvider delegate,
+            String region, boolean ignoreCase, Locale locale) {
+        this(delegate, region, ignoreCase, locale, null);
+    }
+
+    SharedCachingSuggestionProvider(AutocompleteSuggestionProvider delegate,
+            String region, boolean ignoreCase, Locale locale,
+            SharedSuggestionCache cache) {
+        if (delegate == null) {
+            throw new NullPointerException("delegate is null!");
+        }
+        if (region == null) {
+            throw new NullPointerException("region is null!");
+        }
+        if (locale == null) {
+            throw new NullPointerException("locale is null!");
+        }
+        this.delegate = delegate;
+        this.region = region;
+        this.folding = new TextFolding(ignoreCase, false, locale);
+        this.cache = cache;
+    }
+
+    @Override
+    public Collection<AutocompleteSuggestion> querySuggestions(AutocompleteQuery query) {
+        return new ArrayList<>(getSuggestions(query));
+    }
+
+    @Override
+    public void collectSuggestions(AutocompleteQuery query,
+            Collection<AutocompleteSuggestion> result) {
+        List<AutocompleteSuggestion> suggestions = getSuggestions(query);
+        int size = suggestions.size();
+        for (int i = 0; i < size; ++i) {
+            result.add(suggestions.get(i));
+        }
+    }
+
+    private List<AutocompleteSuggestion> getSuggestions(AutocompleteQuery query) {
+        String term = query.getTerm();
+        if (term == null) {
+            return CachingSuggestionProvider.copy(delegate.querySuggestions(query));
+        }
+        return getCache().get(region, folding.fold(term),
+                query.hasLimit() ? query.getLimit() : 0, query,
+                () -> delegate.querySuggestions(query));
+    }
+
+    /**
+     * Gets the cache of this provider.
+     *
+     * @return The cache.
+     */
+    public SharedSuggestionCache getCache() {
+        return cache != null ? cache : SharedSuggestionCache.getDefault();
+    }
+
+    /**
+     * Gets the region of the cached results.
+     *
+     * @return The region.
+     */
+    public String getRegion() {
+        return region;
+    }
+
+    /**
+     * Gets the provider whose results are cached.
+     *
+     * @return The provider.
+     */
+    public AutocompleteSuggestionProvider getDelegate() {
+        return delegate;
+    }
+
+}
@@ -0,0 +1,424 @@
+/*
+ * Copyright 2017 Max Schuster.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.maxschuster.vaadin.autocompletetextfield.provider;
+
+import eu.maxschuster.vaadin.autocompletetextfield.AutocompleteQuery;
+import eu.maxschuster.vaadin.autocompletetextfield.AutocompleteSuggestion;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * A JVM-wide cache of suggestion results shared by all sessions.
+ * <p>
+ * Results are grouped by regions, usually one per dictionary, and cached by
+ * the normalized term and the limit of the query. Lookups never lock. If many
+ * sessions miss the same result at the same time, only the first one loads
+ * it while the others wait for its result. Cached results are unmodifiable
+ * lists of read-only suggestions, so they are safe to share.
+ * </p>
+ * <p>
+ * The cache is bounded by its weight, the total number of suggestions it
+ * holds. When it grows beyond {@link #getMaxWeight()} it evicts results with
+ * the CLOCK algorithm: a result used since the last eviction pass gets a
+ * second chance, the others are evicted in the order they were loaded.
+ * </p>
+ *
+ * @author Max Schuster
+ * @see SharedCachingSuggestionProvider
+ * @since 3.0
+ */
+public final class SharedSuggestionCache {
+
+    /**
+     * The default max number of cached suggestions
+     */
+    public static final long DEFAULT_MAX_WEIGHT = 100000;
+
+    private static final SharedSuggestionCache DEFAULT
+            = new SharedSuggestionCache(DEFAULT_MAX_WEIGHT);
+
+    /**
+     * Max time a waiting call blocks before it checks if its query has been
+     * cancelled
+     */
+    private static final long WAIT_SLICE_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final ConcurrentHashMap<Key, Node> nodes = new ConcurrentHashMap<>();
+
+    /**
+     * Loaded nodes in eviction order
+     */
+    private final ConcurrentLinkedQueue<Node> clock = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Only one thread evicts at a time
+     */
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    private final AtomicLong weight = new AtomicLong();
+
+    private final LongAdder hitCount = new LongAdder();
+
+    private final LongAdder missCount = new LongAdder();
+
+    private volatile long maxWeight;
+
+    /**
+     * Creates a new cache.
+     *
+     * @param maxWeight Max number of cached suggestions.
+     */
+    SharedSuggestionCache(long maxWeight) {
+        setMaxWeight(maxWeight);
+    }
+
+    /**
+     * Gets the JVM-wide cache.
+     *
+     * @return The JVM-wide cache.
+     */
+    public static SharedSuggestionCache getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Gets a cached result or loads it. Concurrent calls for the same result
+     * wait for a single load. A result the loader found for an incomplete or
+     * cancelled query is neither kept nor handed to the waiting calls, they
+     * load the result again themselves. A waiting call stops waiting when
+     * its own query is cancelled or runs out of time, the latter is marked
+     * as incomplete. It returns an empty result then.
+     *
+     * @param region The region of the result.
+     * @param term The normalized term.
+     * @param limit The limit of the query, {@code 0} for none.
+     * @param query The query answered by the loader.
+     * @param loader Loads the result on a miss.
+     * @return The unmodifiable result of read-only suggestions.
+     */
+    List<AutocompleteSuggestion> get(String region, String term, int limit,
+            AutocompleteQuery query,
+            Supplier<? extends Collection<AutocompleteSuggestion>> loader) {
+        Key key = new Key(region, term, limit);
+        while (true) {
+            Node node = nodes.get(key);
+            if (node == null) {
+                Node created = new Node(key);
+                node = nodes.putIfAbsent(key, created);
+                if (node == null) {
+                    missCount.increment();
+                    return load(created, query, loader);
+                }
+            }
+            node.referenced = true;
+            if (!await(node, query)) {
+                return Collections.emptyList();
+            }
+            List<AutocompleteSuggestion> result;
+            try {
+                result = node.result.join();
+            } catch (CompletionException ex) {
+                // the loading thread has failed, report its error
+                Throwable cause = ex.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw ex;
+            }
+            if (result != null) {
+                hitCount.increment();
+                return result;
+            }
+            // the loading query has stopped early, load the result again
+        }
+    }
+
+    /**
+     * Waits until the given node has been loaded, as long as the given query
+     * has neither been cancelled nor run out of time.
+     *
+     * @param node The node.
+     * @param query The waiting query.
+     * @return {@code false} if the query has stopped waiting.
+     */
+    private static boolean await(Node node, AutocompleteQuery query) {
+        while (!node.result.isDone()) {
+            if (query.isCancelled()) {
+                return false;
+            }
+            long wait = WAIT_SLICE_NANOS;
+            if (query.hasDeadline()) {
+                long remaining = query.getDeadlineNanos() - System.nanoTime();
+                if (remaining <= 0) {
+                    query.markIncomplete();
+                    return false;
+                }
+                wait = Math.min(wait, remaining);
+            }
+            try {
+                node.result.get(wait, TimeUnit.NANOSECONDS);
+            } catch (TimeoutException | ExecutionException ex) {
+                // check the query again or report the error of the load
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                query.markIncomplete();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private List<AutocompleteSuggestion> load(Node node, AutocompleteQuery query,
+            Supplier<? extends Collection<AutocompleteSuggestion>> loader) {
+        List<AutocompleteSuggestion> suggestions;
+        try {
+            suggestions = CachingSuggestionProvider.copy(loader.get());
+        } catch (RuntimeException | Error ex) {
+            // don't cache failures
+            nodes.remove(node.key, node);
+            node.state.set(Node.REMOVED);
+            node.result.completeExceptionally(ex);
+            throw ex;
+        }
+        if (query.isIncomplete() || query.isCancelled()) {
+            // don't cache or share partial results
+            nodes.remove(node.key, node);
+            node.state.set(Node.REMOVED);
+            node.result.complete(null);
+            return suggestions;
+        }
+        node.weight = Math.max(suggestions.size(), 1);
+        if (node.state.compareAndSet(Node.LOADING, Node.LOADED)) {
+            weight.addAndGet(node.weight);
+            clock.offer(node);
+        }
+        node.result.complete(suggestions);
+        evict();
+        return suggestions;
+    }
+
+    /**
+     * Evicts results until the weight is within bounds.
+     */
+    private void evict() {
+        if (weight.get() <= maxWeight || !evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            while (weight.get() > maxWeight) {
+                Node node = clock.poll();
+                if (node == null) {
+                    break;
+                }
+                if (node.state.get() != Node.LOADED) {
+                    continue; // already invalidated
+                }
+                if (node.referenced) {
+                    // second chance
+                    node.referenced = false;
+                    clock.offer(node);
+                    continue;
+                }
+                remove(node);
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Removes the given node from the cache.
+     */
+    private void remove(Node node) {
+        nodes.remove(node.key, node);
+        int previous = node.state.getAndSet(Node.REMOVED);
+        if (previous == Node.LOADED) {
+            weight.addAndGet(-node.weight);
+        }
+    }
+
+    /**
+     * Removes all results of the given region. Results that are loading
+     * right now are not cached.
+     *
+     * @param region The region.
+     */
+    public void invalidate(String region) {
+        if (region == null) {
+            throw new NullPointerException("region is null!");
+        }
+        for (Node node : nodes.values()) {
+            if (region.equals(node.key.region)) {
+                remove(node);
+            }
+        }
+    }
+
+    /**
+     * Removes all results. Results that are loading right now are not
+     * cached.
+     */
+    public void invalidateAll() {
+        for (Node node : nodes.values()) {
+            remove(node);
+        }
+    }
+
+    /**
+     * Gets the max number of cached suggestions.
+     *
+     * @return The max number of cached suggestions.
+     */
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+
+    /**
+     * Sets the max number of cached suggestions. An empty result counts as
+     * one suggestion.
+     *
+     * @param maxWeight The max number of cached suggestions.
+     * @throws IllegalArgumentException If {@code maxWeight < 0}.
+     */
+    public void setMaxWeight(long maxWeight) throws IllegalArgumentException {
+        if (maxWeight < 0) {
+            throw new IllegalArgumentException("maxWeight must be >= 0!");
+        }
+        this.maxWeight = maxWeight;
+        evict();
+    }
+
+    /**
+     * Gets the number of cached suggestions.
+     *
+     * @return The number of cached suggestions.
+     */
+    public long getWeight() {
+        return weight.get();
+    }
+
+    /**
+     * Gets the number of lookups answered from the cache, including lookups
+     * that waited for a concurrent load.
+     *
+     * @return The number of cache hits.
+     */
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    /**
+     * Gets the number of results loaded.
+     *
+     * @return The number of cache misses.
+     */
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * The cache key of a result.
+     */
+    private static final class Key {
+
+        private final String region;
+
+        private final String term;
+
+        private final int limit;
+
+        Key(String region, String term, int limit) {
+            this.region = region;
+            this.term = term;
+            this.limit = limit;
+        }
+
+        @Override
+        public int hashCode() {
+            return (31 * region.hashCode() + term.hashCode()) * 31 + limit;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return limit == other.limit && term.equals(other.term)
+                    && region.equals(other.region);
+        }
+
+    }
+
+    /**
+     * A cached or loading result.
+     */
+    private static final class Node {
+
+        static final int LOADING = 0;
+
+        static final int LOADED = 1;
+
+        static final int REMOVED = 2;
+
+        final Key key;
+
+        /**
+         * The loaded result or {@code null} if the loading query stopped
+         * early
+         */
+        final CompletableFuture<List<AutocompleteSuggestion>> result
+                = new CompletableFuture<>();
+
+        /**
+         * Only a loaded node adds its weight, only a removed loaded node
+         * subtracts it
+         */
+        final AtomicInteger state = new AtomicInteger(LOADING);
+
+        /**
+         * Used since the last eviction pass
+         */
+        volatile boolean referenced;
+
+        volatile int weight;
+
+        Node(Key key) {
+            this.key = key;
+        }
+
+    }
+
+}
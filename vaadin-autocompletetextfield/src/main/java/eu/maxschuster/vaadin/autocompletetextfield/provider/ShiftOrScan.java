@@ -0,0 +1,452 @@
+/*
+ * Copyright 2017 Max Schuster.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.maxschuster.vaadin.autocompletetextfield.provider;
+
+import eu.maxschuster.vaadin.autocompletetextfield.AutocompleteQuery;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A {@link SuggestionIndex} for {@link MatchMode#CONTAINS} that scans all
+ * values with the bit-parallel Shift-Or algorithm instead of indexing them.
+ * <p>
+ * All values are packed into a single {@code char} buffer. A query compiles
+ * the term into one bitmask per char once and then streams over the buffer
+ * with a single shift, or and test per char. Values whose
+ * {@link CharSignatures signature} lacks a char of the term are skipped
+ * without touching their chars.
+ * </p>
+ * <p>
+ * If only the case is folded, the buffer holds the original values and the
+ * case folding is part of the bitmasks: the mask of a char of the term also
+ * accepts its upper and title case. Values whose case folding is not a
+ * char-by-char mapping in the {@link Locale} are packed in their folded form.
+ * </p>
+ * <p>
+ * Removed values are only marked as removed. Their chars stay in the buffer
+ * until the values are compacted, then the chars of the remaining values are
+ * moved in place without normalizing them again.
+ * </p>
+ * <p>
+ * Terms longer than 64 chars are matched with
+ * {@link String#contains(java.lang.CharSequence)}. Matching ids are returned in
+ * ascending order. Each thread compiles its terms into its own reused
+ * bitmasks, so concurrent queries do not allocate or interfere. Adding or
+ * removing values while querying requires external synchronization.
+ * </p>
+ *
+ * @author Max Schuster
+ * @since 3.0
+ */
+final class ShiftOrScan implements SuggestionIndex {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Number of chars with a direct bitmask slot
+     */
+    private static final int LOW_CHARS = 256;
+
+    /**
+     * The original values.
+     */
+    private final List<String> values;
+
+    /**
+     * The normalized values.
+     */
+    private final List<String> search;
+
+    /**
+     * The signatures of the normalized values
+     */
+    private final CharSignatures signatures;
+
+    /**
+     * The buffer holds original values and the bitmasks fold the case
+     */
+    private final boolean caseMasks;
+
+    private final Locale locale;
+
+    private final boolean asciiSafe;
+
+    /**
+     * The packed values
+     */
+    private char[] chars = new char[64];
+
+    /**
+     * Start of each packed value in {@link #chars} followed by the end of the
+     * buffer. The values are packed in the order of their ids.
+     */
+    private IntList starts = new IntList();
+
+    /**
+     * The ids of the removed values still packed in {@link #chars}
+     */
+    private final BitSet tombstones = new BitSet();
+
+    /**
+     * The bitmasks of the current thread
+     */
+    private static final ThreadLocal<Masks> MASKS = ThreadLocal.withInitial(Masks::new);
+
+    /**
+     * Creates a new scan over the given values.
+     *
+     * @param values The original values.
+     * @param search The normalized values. The list index is the value id.
+     * @param signatures The signatures of the normalized values.
+     * @param folding The folding used to normalize the values.
+     */
+    ShiftOrScan(List<String> values, List<String> search,
+            CharSignatures signatures, TextFolding folding) {
+        this.values = values;
+        this.search = search;
+        this.signatures = signatures;
+        this.caseMasks = folding.isIgnoreCase() && !folding.isIgnoreDiacritics();
+        this.locale = folding.getLocale();
+        this.asciiSafe = folding.isAsciiSafe();
+        starts.add(0);
+        addValues(0);
+    }
+
+    /**
+     * Appends the values from the given id to the end of the list to the
+     * buffer.
+     *
+     * @param fromId The first id.
+     */
+    private void addValues(int fromId) {
+        int length = starts.get(starts.size() - 1);
+        int count = search.size();
+        for (int id = fromId; id < count; ++id) {
+            String folded = search.get(id);
+            String value = folded;
+            if (caseMasks && packsOriginal(values.get(id), folded)) {
+                value = values.get(id);
+            }
+            int valueLength = value.length();
+            if (length + valueLength > chars.length) {
+                chars = Arrays.copyOf(chars, Math.max(chars.length << 1,
+                        length + valueLength));
+            }
+            value.getChars(0, valueLength, chars, length);
+            length += valueLength;
+            starts.add(length);
+        }
+    }
+
+    /**
+     * Checks if the bitmasks fold the case of the given value exactly like
+     * the {@link TextFolding} did.
+     */
+    private boolean packsOriginal(String value, String folded) {
+        int length = value.length();
+        if (length != folded.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; ++i) {
+            char c = value.charAt(i);
+            char f = folded.charAt(i);
+            if (c != f && !isCaseVariant(c, f)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks if the given char is an upper or title case variant of the given
+     * folded char that folds back to it.
+     *
+     * @param c The char.
+     * @param folded The folded char.
+     * @return {@code true} if the bitmask of {@code folded} accepts {@code c}.
+     */
+    private boolean isCaseVariant(char c, char folded) {
+        if (c == folded) {
+            return false;
+        }
+        if (asciiSafe && c < 0x80 && folded < 0x80) {
+            return c >= 'A' && c <= 'Z' && c + ('a' - 'A') == folded;
+        }
+        if (c != Character.toUpperCase(folded)
+                && c != Character.toTitleCase(folded)
+                && !String.valueOf(folded).toUpperCase(locale).equals(String.valueOf(c))) {
+            return false;
+        }
+        return String.valueOf(c).toLowerCase(locale).equals(String.valueOf(folded));
+    }
+
+    @Override
+    public void added(int fromId) {
+        addValues(fromId);
+    }
+
+    @Override
+    public void removed(int[] removedIds) {
+        for (int id : removedIds) {
+            tombstones.set(id);
+        }
+    }
+
+    /**
+     * Moves the chars of the remaining values over the chars of the removed
+     * ones.
+     */
+    @Override
+    public void compacted(int[] newIds) {
+        int count = starts.size() - 1;
+        int length = 0;
+        int out = 0;
+        for (int id = 0; id < count; ++id) {
+            int start = starts.get(id);
+            int end = starts.get(id + 1);
+            if (newIds[id] < 0) {
+                continue;
+            }
+            System.arraycopy(chars, start, chars, length, end - start);
+            starts.set(out++, length);
+            length += end - start;
+        }
+        starts.set(out, length);
+        starts.truncate(out + 1);
+        tombstones.clear();
+    }
+
+    @Override
+    public int search(String term, int limit, AutocompleteQuery query,
+            IntList result) {
+        int termLength = term.length();
+        long termSignature = CharSignatures.of(term);
+        if (termLength > Long.SIZE) {
+            return scan(term, termSignature, limit, query, result);
+        }
+        Masks masks = compile(term);
+        long[] low = masks.low;
+        char[] buffer = chars;
+        int[] offsets = starts.elements();
+        int count = starts.size() - 1;
+        long accept = 1L << (termLength - 1);
+        int found = 0;
+        int compared = 0;
+        for (int id = 0; id < count; ++id) {
+            if (id % DEADLINE_CHECK_INTERVAL == 0 && id > 0
+                    && SuggestionIndex.isOverdue(query)) {
+                break; // return the ids found so far
+            }
+            if (!signatures.mayContain(id, termSignature) || tombstones.get(id)) {
+                continue; // a char of the term is missing or removed
+            }
+            ++compared;
+            long state = ~0L;
+            int end = offsets[id + 1];
+            for (int p = offsets[id]; p < end; ++p) {
+                char c = buffer[p];
+                state = state << 1 | (c < LOW_CHARS ? low[c] : masks.high(c));
+                if ((state & accept) == 0) {
+                    result.add(id);
+                    if (++found == limit) {
+                        return compared;
+                    }
+                    break;
+                }
+            }
+        }
+        return compared;
+    }
+
+    /**
+     * Matches the term with {@link String#contains(java.lang.CharSequence)}.
+     */
+    private int scan(String term, long termSignature, int limit,
+            AutocompleteQuery query, IntList result) {
+        int count = search.size();
+        int found = 0;
+        int compared = 0;
+        for (int id = 0; id < count; ++id) {
+            if (id % DEADLINE_CHECK_INTERVAL == 0 && id > 0
+                    && SuggestionIndex.isOverdue(query)) {
+                break;
+            }
+            if (!signatures.mayContain(id, termSignature) || tombstones.get(id)) {
+                continue;
+            }
+            ++compared;
+            if (search.get(id).contains(term)) {
+                result.add(id);
+                if (++found == limit) {
+                    return compared;
+                }
+            }
+        }
+        return compared;
+    }
+
+    /**
+     * Compiles the bitmasks of the given term into the masks of the current
+     * thread. The masks of the previous term are reset in place, so repeated
+     * queries do not allocate.
+     *
+     * @param term The term of at most 64 chars.
+     * @return The masks of the current thread.
+     */
+    private Masks compile(String term) {
+        Masks masks = MASKS.get();
+        if (term.equals(masks.term) && masks.caseMasks == caseMasks
+                && masks.asciiSafe == asciiSafe && locale.equals(masks.locale)) {
+            return masks;
+        }
+        masks.reset();
+        int termLength = term.length();
+        for (int i = 0; i < termLength; ++i) {
+            char c = term.charAt(i);
+            long bit = 1L << i;
+            masks.accept(c, bit);
+            if (caseMasks) {
+                acceptCaseVariants(masks, c, bit);
+            }
+        }
+        masks.term = term;
+        masks.caseMasks = caseMasks;
+        masks.asciiSafe = asciiSafe;
+        masks.locale = locale;
+        return masks;
+    }
+
+    /**
+     * Lets the case variants of the given folded char match the term
+     * position of the given bit.
+     */
+    private void acceptCaseVariants(Masks masks, char folded, long bit) {
+        if (asciiSafe && folded < 0x80) {
+            if (folded >= 'a' && folded <= 'z') {
+                masks.accept((char) (folded - ('a' - 'A')), bit);
+            }
+            return;
+        }
+        char upper = Character.toUpperCase(folded);
+        if (isCaseVariant(upper, folded)) {
+            masks.accept(upper, bit);
+        }
+        char title = Character.toTitleCase(folded);
+        if (title != upper && isCaseVariant(title, folded)) {
+            masks.accept(title, bit);
+        }
+        String localeUpper = String.valueOf(folded).toUpperCase(locale);
+        if (localeUpper.length() == 1) {
+            char c = localeUpper.charAt(0);
+            if (c != upper && c != title && isCaseVariant(c, folded)) {
+                masks.accept(c, bit);
+            }
+        }
+    }
+
+    /**
+     * The Shift-Or bitmasks of a compiled term. A cleared bit {@code i} means
+     * the char matches the char at position {@code i} of the term.
+     */
+    private static final class Masks {
+
+        /**
+         * Bitmasks of the chars below {@link #LOW_CHARS}
+         */
+        final long[] low = new long[LOW_CHARS];
+
+        /**
+         * Chars of {@link #low} changed by the compiled term
+         */
+        final char[] touched = new char[Long.SIZE * 4];
+
+        int touchedCount;
+
+        /**
+         * Chars from {@link #LOW_CHARS} on that match a char of the compiled
+         * term
+         */
+        final char[] highChars = new char[Long.SIZE * 4];
+
+        final long[] highMasks = new long[Long.SIZE * 4];
+
+        int highCount;
+
+        /**
+         * The term and the options the masks have been compiled for
+         */
+        String term;
+
+        boolean caseMasks;
+
+        boolean asciiSafe;
+
+        Locale locale;
+
+        Masks() {
+            Arrays.fill(low, ~0L);
+        }
+
+        /**
+         * Resets the masks of the compiled term.
+         */
+        void reset() {
+            for (int i = 0; i < touchedCount; ++i) {
+                low[touched[i]] = ~0L;
+            }
+            touchedCount = 0;
+            highCount = 0;
+            term = null;
+        }
+
+        /**
+         * Lets the given char match the term position of the given bit.
+         */
+        void accept(char c, long bit) {
+            if (c < LOW_CHARS) {
+                if (low[c] == ~0L) {
+                    touched[touchedCount++] = c;
+                }
+                low[c] &= ~bit;
+                return;
+            }
+            for (int i = 0; i < highCount; ++i) {
+                if (highChars[i] == c) {
+                    highMasks[i] &= ~bit;
+                    return;
+                }
+            }
+            highChars[highCount] = c;
+            highMasks[highCount++] = ~bit;
+        }
+
+        /**
+         * Gets the bitmask of a char from {@link #LOW_CHARS} on.
+         */
+        long high(char c) {
+            for (int i = 0; i < highCount; ++i) {
+                if (highChars[i] == c) {
+                    return highMasks[i];
+                }
+            }
+            return ~0L;
+        }
+
+    }
+
+}
@@ -0,0 +1,560 @@
+/*
+ * Copyright 2017 Max Schuster.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.maxschuster.vaadin.autocompletetextfield.provider;
+
+import eu.maxschuster.vaadin.autocompletetextfield.AutocompleteQuery;
+import eu.maxschuster.vaadin.autocompletetextfield.AutocompleteSuggestion;
+import eu.maxschuster.vaadin.autocompletetextfield.AutocompleteSuggestionProvider;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * A thread-safe {@link AutocompleteSuggestionProvider} backed by a
+ * {@link Collection} that can be shared by all sessions of an application.
+ * <p>
+ * The values, their normalized form, the settings and the index are held by
+ * an immutable snapshot. Queries read the current snapshot from a volatile
+ * field and never lock. Every modification builds a new snapshot and
+ * publishes it atomically, so a query always sees a consistent state and a
+ * long running query is not affected by a concurrent modification.
+ * Modifications are serialized among each other.
+ * </p>
+ * <p>
+ * Because every modification rebuilds the index, this provider is meant for
+ * values that are read far more often than they change. Use
+ * {@link CollectionSuggestionProvider} for values owned by a single session.
+ * </p>
+ *
+ * @author Max Schuster
+ * @see CollectionSuggestionProvider
+ * @since 3.0
+ */
+public class SnapshotSuggestionProvider implements AutocompleteSuggestionProvider {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Lock for modifications
+     */
+    private final Object lock = new Object[0];
+
+    /**
+     * The current snapshot
+     */
+    private volatile Snapshot snapshot;
+
+    @SuppressWarnings("unchecked")
+    public SnapshotSuggestionProvider() {
+        this(Collections.EMPTY_LIST);
+    }
+
+    public SnapshotSuggestionProvider(Collection<String> values) {
+        this(values, MatchMode.BEGINS);
+    }
+
+    public SnapshotSuggestionProvider(Collection<String> values, MatchMode matchMode) {
+        this(values, matchMode, false);
+    }
+
+    public SnapshotSuggestionProvider(Collection<String> values, MatchMode matchMode, boolean ignoreCase) {
+        this(values, matchMode, ignoreCase, Locale.getDefault());
+    }
+
+    public SnapshotSuggestionProvider(Collection<String> values, MatchMode matchMode, boolean ignoreCase, Locale locale) {
+        validateValues(values);
+        validateMatchMode(matchMode);
+        validateLocale(locale);
+        List<String> copy = new ArrayList<>(values);
+        this.snapshot = new Snapshot(copy, normalize(copy, ignoreCase, locale),
+                matchMode, ignoreCase, locale, true, 1);
+    }
+
+    private static void validateValues(Collection<String> values) {
+        if (values == null) {
+            throw new NullPointerException("values is null!");
+        }
+        for (String value : values) {
+            if (value == null) {
+                throw new NullPointerException("value is null!");
+            }
+        }
+    }
+
+    private static void validateMatchMode(MatchMode matchMode) {
+        if (matchMode == null) {
+            throw new NullPointerException("matchMode is null!");
+        }
+    }
+
+    private static void validateLocale(Locale locale) {
+        if (locale == null) {
+            throw new NullPointerException("locale is null!");
+        }
+    }
+
+    /**
+     * Creates the {@link List} used for matching.
+     *
+     * @param values The values.
+     * @param ignoreCase Ignore case while matching.
+     * @param locale Locale used for matching.
+     * @return A {@link List} of lower case values or the values themselves.
+     */
+    private static List<String> normalize(List<String> values,
+            boolean ignoreCase, Locale locale) {
+        if (!ignoreCase) {
+            return values;
+        }
+        List<String> lowerCase = new ArrayList<>(values.size());
+        for (String value : values) {
+            lowerCase.add(value.toLowerCase(locale));
+        }
+        return lowerCase;
+    }
+
+    @Override
+    public Collection<AutocompleteSuggestion> querySuggestions(AutocompleteQuery query) {
+        return snapshot.querySuggestions(query);
+    }
+
+    /**
+     * Returns an unmodifiable {@link Collection} containing the values of the
+     * current snapshot. Later modifications are not reflected by it.
+     *
+     * @return An unmodifiable {@link Collection}
+     */
+    public Collection<String> getValues() {
+        return Collections.unmodifiableList(snapshot.values);
+    }
+
+    /**
+     * Replaces the values used by this provider.
+     *
+     * @param values The values used by this provider.
+     */
+    public void setValues(Collection<String> values) {
+        validateValues(values);
+        synchronized (lock) {
+            Snapshot current = snapshot;
+            List<String> copy = new ArrayList<>(values);
+            snapshot = new Snapshot(copy,
+                    normalize(copy, current.ignoreCase, current.locale),
+                    current.matchMode, current.ignoreCase, current.locale,
+                    current.preserveOrder, current.maxEditDistance);
+        }
+    }
+
+    /**
+     * Replaces the values used by this provider.
+     *
+     * @param values The values used by this provider.
+     * @return this (for method chaining)
+     * @see #setValues(java.util.Collection)
+     */
+    public SnapshotSuggestionProvider withValues(Collection<String> values) {
+        setValues(values);
+        return this;
+    }
+
+    /**
+     * Adds values to the end of the values used by this provider. Only the
+     * new values are normalized.
+     *
+     * @param values The values to add.
+     */
+    public void addAll(Collection<String> values) {
+        validateValues(values);
+        if (values.isEmpty()) {
+            return;
+        }
+        synchronized (lock) {
+            Snapshot current = snapshot;
+            List<String> copy = new ArrayList<>(current.values.size() + values.size());
+            copy.addAll(current.values);
+            copy.addAll(values);
+            List<String> search;
+            if (current.ignoreCase) {
+                search = new ArrayList<>(copy.size());
+                search.addAll(current.search);
+                for (String value : values) {
+                    search.add(value.toLowerCase(current.locale));
+                }
+            } else {
+                search = copy;
+            }
+            snapshot = new Snapshot(copy, search, current.matchMode,
+                    current.ignoreCase, current.locale, current.preserveOrder,
+                    current.maxEditDistance);
+        }
+    }
+
+    /**
+     * Adds a value to the end of the values used by this provider.
+     *
+     * @param value The value to add.
+     */
+    public void addValue(String value) {
+        addAll(Collections.singletonList(value));
+    }
+
+    /**
+     * Removes all occurrences of the given values from the values used by
+     * this provider.
+     *
+     * @param values The values to remove.
+     * @return {@code true} if at least one value was removed.
+     */
+    public boolean removeAll(Collection<String> values) {
+        if (values == null) {
+            throw new NullPointerException("values is null!");
+        }
+        Set<String> remove = new HashSet<>(values);
+        synchronized (lock) {
+            Snapshot current = snapshot;
+            int length = current.values.size();
+            List<String> copy = new ArrayList<>(length);
+            List<String> search = current.ignoreCase ? new ArrayList<>(length) : copy;
+            for (int i = 0; i < length; ++i) {
+                String value = current.values.get(i);
+                if (!remove.contains(value)) {
+                    copy.add(value);
+                    if (search != copy) {
+                        search.add(current.search.get(i));
+                    }
+                }
+            }
+            if (copy.size() == length) {
+                return false;
+            }
+            snapshot = new Snapshot(copy, search, current.matchMode,
+                    current.ignoreCase, current.locale, current.preserveOrder,
+                    current.maxEditDistance);
+            return true;
+        }
+    }
+
+    /**
+     * Removes the first occurrence of a value from the values used by this
+     * provider, like {@link CollectionSuggestionProvider#removeValue(java.lang.String)}.
+     *
+     * @param value The value to remove.
+     * @return {@code true} if the value was removed.
+     */
+    public boolean removeValue(String value) {
+        synchronized (lock) {
+            Snapshot current = snapshot;
+            int index = current.values.indexOf(value);
+            if (index < 0) {
+                return false;
+            }
+            List<String> copy = new ArrayList<>(current.values);
+            copy.remove(index);
+            List<String> search = copy;
+            if (current.ignoreCase) {
+                search = new ArrayList<>(current.search);
+                search.remove(index);
+            }
+            snapshot = new Snapshot(copy, search, current.matchMode,
+                    current.ignoreCase, current.locale, current.preserveOrder,
+                    current.maxEditDistance);
+            return true;
+        }
+    }
+
+    /**
+     * Gets the {@link MatchMode} of this provider.
+     *
+     * @return The {@link MatchMode} of this provider.
+     */
+    public MatchMode getMatchMode() {
+        return snapshot.matchMode;
+    }
+
+    /**
+     * Sets the {@link MatchMode} of this provider.
+     *
+     * @param matchMode The {@link MatchMode} of this provider.
+     */
+    public void setMatchMode(MatchMode matchMode) {
+        validateMatchMode(matchMode);
+        synchronized (lock) {
+            Snapshot current = snapshot;
+            if (current.matchMode != matchMode) {
+                snapshot = new Snapshot(current.values, current.search,
+                        matchMode, current.ignoreCase, current.locale,
+                        current.preserveOrder, current.maxEditDistance);
+            }
+        }
+    }
+
+    /**
+     * Sets the {@link MatchMode} of this provider.
+     *
+     * @param matchMode The {@link MatchMode} of this provider.
+     * @return this (for method chaining)
+     * @see
+     * #setMatchMode(eu.maxschuster.vaadin.autocompletetextfield.provider.MatchMode)
+     */
+    public SnapshotSuggestionProvider withMatchMode(MatchMode matchMode) {
+        setMatchMode(matchMode);
+        return this;
+    }
+
+    /**
+     * Gets whether this provider is case insensitive.
+     *
+     * @return This provider is case insensitive.
+     */
+    public boolean isIgnoreCase() {
+        return snapshot.ignoreCase;
+    }
+
+    /**
+     * Sets whether this provider is case insensitive.
+     *
+     * @param ignoreCase This provider is case insensitive.
+     */
+    public void setIgnoreCase(boolean ignoreCase) {
+        synchronized (lock) {
+            Snapshot current = snapshot;
+            if (current.ignoreCase != ignoreCase) {
+                snapshot = new Snapshot(current.values,
+                        normalize(current.values, ignoreCase, current.locale),
+                        current.matchMode, ignoreCase, current.locale,
+                        current.preserveOrder, current.maxEditDistance);
+            }
+        }
+    }
+
+    /**
+     * Sets whether this provider is case insensitive.
+     *
+     * @param ignoreCase This provider is case insensitive.
+     * @return this (for method chaining)
+     * @see #setIgnoreCase(boolean)
+     */
+    public SnapshotSuggestionProvider withIgnoreCase(boolean ignoreCase) {
+        setIgnoreCase(ignoreCase);
+        return this;
+    }
+
+    /**
+     * Gets the {@link Locale} of this provider.
+     *
+     * @return The {@link Locale} of this provider.
+     */
+    public Locale getLocale() {
+        return snapshot.locale;
+    }
+
+    /**
+     * Sets the {@link Locale} of this provider.
+     *
+     * @param locale The {@link Locale} of this provider.
+     */
+    public void setLocale(Locale locale) {
+        validateLocale(locale);
+        synchronized (lock) {
+            Snapshot current = snapshot;
+            if (!current.locale.equals(locale)) {
+                snapshot = new Snapshot(current.values,
+                        normalize(current.values, current.ignoreCase, locale),
+                        current.matchMode, current.ignoreCase, locale,
+                        current.preserveOrder, current.maxEditDistance);
+            }
+        }
+    }
+
+    /**
+     * Sets the {@link Locale} of this provider.
+     *
+     * @param locale The {@link Locale} of this provider.
+     * @return this (for method chaining)
+     * @see #setLocale(java.util.Locale)
+     */
+    public SnapshotSuggestionProvider withLocale(Locale locale) {
+        setLocale(locale);
+        return this;
+    }
+
+    /**
+     * Gets whether suggestions are returned in the order of the values.
+     *
+     * @return Suggestions are returned in the order of the values.
+     * @see CollectionSuggestionProvider#setPreserveOrder(boolean)
+     */
+    public boolean isPreserveOrder() {
+        return snapshot.preserveOrder;
+    }
+
+    /**
+     * Sets whether suggestions are returned in the order of the values. The
+     * default is {@code true}, which makes every indexed query visit all
+     * matches of the term. Use {@code false} for
+     * {@code O(log n + limit)} queries.
+     *
+     * @param preserveOrder Suggestions are returned in the order of the
+     * values.
+     * @see CollectionSuggestionProvider#setPreserveOrder(boolean)
+     */
+    public void setPreserveOrder(boolean preserveOrder) {
+        synchronized (lock) {
+            Snapshot current = snapshot;
+            if (current.preserveOrder != preserveOrder) {
+                snapshot = new Snapshot(current.values, current.search,
+                        current.matchMode, current.ignoreCase, current.locale,
+                        preserveOrder, current.maxEditDistance);
+            }
+        }
+    }
+
+    /**
+     * Sets whether suggestions are returned in the order of the values.
+     *
+     * @param preserveOrder Suggestions are returned in the order of the
+     * values.
+     * @return this (for method chaining)
+     * @see #setPreserveOrder(boolean)
+     */
+    public SnapshotSuggestionProvider withPreserveOrder(boolean preserveOrder) {
+        setPreserveOrder(preserveOrder);
+        return this;
+    }
+
+    /**
+     * Gets the max edit distance used by {@link MatchMode#FUZZY}.
+     *
+     * @return The max edit distance.
+     */
+    public int getMaxEditDistance() {
+        return snapshot.maxEditDistance;
+    }
+
+    /**
+     * Sets the max edit distance used by {@link MatchMode#FUZZY}.
+     *
+     * @param maxEditDistance The max edit distance.
+     * @see CollectionSuggestionProvider#setMaxEditDistance(int)
+     */
+    public void setMaxEditDistance(int maxEditDistance) {
+        if (maxEditDistance < 0) {
+            throw new IllegalArgumentException("maxEditDistance is negative!");
+        }
+        synchronized (lock) {
+            Snapshot current = snapshot;
+            if (current.maxEditDistance != maxEditDistance) {
+                snapshot = new Snapshot(current.values, current.search,
+                        current.matchMode, current.ignoreCase, current.locale,
+                        current.preserveOrder, maxEditDistance);
+            }
+        }
+    }
+
+    /**
+     * Sets the max edit distance used by {@link MatchMode#FUZZY}.
+     *
+     * @param maxEditDistance The max edit distance.
+     * @return this (for method chaining)
+     * @see #setMaxEditDistance(int)
+     */
+    public SnapshotSuggestionProvider withMaxEditDistance(int maxEditDistance) {
+        setMaxEditDistance(maxEditDistance);
+        return this;
+    }
+
+    /**
+     * An immutable state of the provider. The index is built eagerly, so a
+     * snapshot is never modified after it has been published.
+     */
+    private static final class Snapshot implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<String> values;
+
+        private final List<String> search;
+
+        private final MatchMode matchMode;
+
+        private final boolean ignoreCase;
+
+        private final Locale locale;
+
+        private final boolean preserveOrder;
+
+        private final int maxEditDistance;
+
+        private final SuggestionIndex index;
+
+        Snapshot(List<String> values, List<String> search, MatchMode matchMode,
+                boolean ignoreCase, Locale locale, boolean preserveOrder,
+                int maxEditDistance) {
+            this.values = values;
+            this.search = search;
+            this.matchMode = matchMode;
+            this.ignoreCase = ignoreCase;
+            this.locale = locale;
+            this.preserveOrder = preserveOrder;
+            this.maxEditDistance = maxEditDistance;
+            this.index = createIndex();
+        }
+
+        private SuggestionIndex createIndex() {
+            switch (matchMode) {
+                case BEGINS:
+                    return new PrefixIndex(search, preserveOrder);
+                case CONTAINS:
+                    return new TrigramIndex(search);
+                case FUZZY:
+                    return new FuzzyIndex(search, maxEditDistance);
+                case WORD_BEGINS:
+                    return new WordIndex(search, preserveOrder);
+                default:
+                    throw new IllegalStateException(
+                            "Unsupported match mode " + matchMode);
+            }
+        }
+
+        Collection<AutocompleteSuggestion> querySuggestions(AutocompleteQuery query) {
+            String term = query.getTerm();
+            if (values.isEmpty() || term == null || term.isEmpty()) {
+                return Collections.emptyList();
+            }
+            if (ignoreCase) {
+                // Use lower case version of the term for matching
+                term = term.toLowerCase(locale);
+            }
+            int limit = query.getLimit();
+            IntList ids = new IntList(query.hasLimit() ? limit : 16);
+            index.search(term, limit, query, ids);
+            int size = ids.size();
+            Set<AutocompleteSuggestion> suggestions = new LinkedHashSet<>(size);
+            for (int i = 0; i < size; ++i) {
+                suggestions.add(new AutocompleteSuggestion(values.get(ids.get(i))));
+            }
+            return suggestions;
+        }
+
+    }
+
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright 2017 Max Schuster.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.maxschuster.vaadin.autocompletetextfield.provider;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Base class of the {@link SuggestionIndex}es that keep the normalized values
+ * as an array of keys sorted by their natural order. Equal keys are sorted by
+ * their id, which is their insertion order.
+ * <p>
+ * Appended values are sorted separately and merged into the arrays, so they
+ * require no full rebuild. Removed values stay in the arrays until they are
+ * compacted, searches skip them.
+ * </p>
+ *
+ * @author Max Schuster
+ * @since 3.0
+ */
+abstract class SortedKeyIndex implements SuggestionIndex {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The normalized values.
+     */
+    protected final List<String> search;
+
+    /**
+     * The normalized keys in sorted order. Only the first {@link #size}
+     * elements are used.
+     */
+    protected String[] keys;
+
+    /**
+     * The value id of each entry of {@link #keys}.
+     */
+    protected int[] ids;
+
+    /**
+     * The number of entries.
+     */
+    protected int size;
+
+    /**
+     * The ids of the removed values that are still in the arrays
+     */
+    protected final BitSet tombstones = new BitSet();
+
+    /**
+     * Creates a new index over the given normalized values.
+     *
+     * @param search The normalized values. The list index is the value id.
+     */
+    SortedKeyIndex(List<String> search) {
+        this.search = search;
+        int length = search.size();
+        String[] unsorted = search.toArray(new String[length]);
+        int[] order = new int[length];
+        for (int i = 0; i < length; ++i) {
+            order[i] = i;
+        }
+        sortIds(order, unsorted);
+        this.keys = new String[length];
+        for (int i = 0; i < length; ++i) {
+            keys[i] = unsorted[order[i]];
+        }
+        this.ids = order;
+        this.size = length;
+    }
+
+    @Override
+    public void added(int fromId) {
+        int length = search.size();
+        int count = length - fromId;
+        if (count <= 0) {
+            return;
+        }
+        // sort the new entries on their own...
+        String[] newKeys = new String[count];
+        int[] order = new int[count];
+        for (int i = 0; i < count; ++i) {
+            order[i] = i;
+            newKeys[i] = search.get(fromId + i);
+        }
+        sortIds(order, newKeys);
+
+        // ...and merge them from the back, old entries first on equal keys
+        int total = size + count;
+        if (total > keys.length) {
+            int capacity = Math.max(total, keys.length + (keys.length >> 1));
+            keys = Arrays.copyOf(keys, capacity);
+            ids = Arrays.copyOf(ids, capacity);
+        }
+        int left = size - 1;
+        int right = count - 1;
+        for (int out = total - 1; right >= 0; --out) {
+            String newKey = newKeys[order[right]];
+            if (left >= 0 && keys[left].compareTo(newKey) > 0) {
+                keys[out] = keys[left];
+                ids[out] = ids[left--];
+            } else {
+                keys[out] = newKey;
+                ids[out] = fromId + order[right--];
+            }
+        }
+        size = total;
+    }
+
+    @Override
+    public void removed(int[] removedIds) {
+        for (int id : removedIds) {
+            tombstones.set(id);
+        }
+    }
+
+    @Override
+    public void compacted(int[] newIds) {
+        int out = 0;
+        for (int i = 0; i < size; ++i) {
+            int id = newIds[ids[i]];
+            if (id >= 0) {
+                keys[out] = keys[i];
+                ids[out++] = id;
+            }
+        }
+        for (int i = out; i < size; ++i) {
+            keys[i] = null;
+        }
+        size = out;
+        tombstones.clear();
+    }
+
+    /**
+     * Finds the position of the first key that is not less than the given
+     * term.
+     *
+     * @param term The term.
+     * @return The position of the first key {@code >= term}.
+     */
+    protected int lowerBound(String term) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (keys[mid].compareTo(term) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Finds the end of the range of keys starting with the given term.
+     *
+     * @param term The term.
+     * @param from The start of the range as returned by
+     * {@link #lowerBound(java.lang.String)}.
+     * @return The position of the first key after {@code from} that does not
+     * start with the term.
+     */
+    protected int prefixEnd(String term, int from) {
+        int low = from;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (keys[mid].startsWith(term)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Sorts the given ids by their keys using a stable sort, so equal keys
+     * keep their insertion order.
+     *
+     * @param ids The ids to sort.
+     * @param keys The key of each id.
+     */
+    static void sortIds(int[] ids, String[] keys) {
+        IntList.stableSort(ids, (left, right) -> keys[left].compareTo(keys[right]));
+    }
+
+}
@@ -0,0 +1,494 @@
+/*
+ * Copyright 2017 Max Schuster.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.maxschuster.vaadin.autocompletetextfield.provider;
+
+import eu.maxschuster.vaadin.autocompletetextfield.AutocompleteQuery;
+import eu.maxschuster.vaadin.autocompletetextfield.AutocompleteSuggestion;
+import eu.maxschuster.vaadin.autocompletetextfield.AutocompleteSuggestionProvider;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * An {@link AutocompleteSuggestionProvider} backed by a suffix array. It
+ * always matches like {@link MatchMode#CONTAINS}.
+ * <p>
+ * All normalized values are concatenated into one char buffer. A suffix array
+ * and an LCP array (longest common prefix of neighbouring suffixes) over this
+ * buffer are built once. All suffixes starting with a term are neighbours in
+ * the suffix array, so the first of them is found by a binary search in
+ * {@code O(m log n)} and the LCP array tells where the range ends without
+ * comparing further chars. Hits are mapped back to their values and
+ * deduplicated. A query with a limit keeps only the first {@code limit}
+ * values of the range in a heap instead of sorting every hit.
+ * </p>
+ * <p>
+ * The index needs about {@code 10} bytes per char of the values, independent
+ * of how many distinct n-grams they contain. This makes it a good fit for
+ * very large, static collections. Instances are immutable.
+ * </p>
+ *
+ * @author Max Schuster
+ * @since 3.0
+ * @see CollectionSuggestionProvider
+ */
+public class SuffixArraySuggestionProvider implements AutocompleteSuggestionProvider {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Separates the values in {@link #text}. Terms containing it never match.
+     */
+    private static final char SEPARATOR = '\uffff';
+
+    /**
+     * Array of available values
+     */
+    private final String[] values;
+
+    /**
+     * Ignore case while matching
+     */
+    private final boolean ignoreCase;
+
+    /**
+     * Locale used for matching
+     */
+    private final Locale locale;
+
+    /**
+     * Return suggestions in the order of {@link #values}
+     */
+    private final boolean preserveOrder;
+
+    /**
+     * All normalized values, each followed by {@link #SEPARATOR}
+     */
+    private final char[] text;
+
+    /**
+     * Offset of each value in {@link #text}
+     */
+    private final int[] starts;
+
+    /**
+     * Start offsets of all suffixes of {@link #text} in sorted order
+     */
+    private final int[] suffixes;
+
+    /**
+     * Length of the common prefix of each suffix and its predecessor in
+     * {@link #suffixes}
+     */
+    private final int[] lcp;
+
+    @SuppressWarnings("unchecked")
+    public SuffixArraySuggestionProvider() {
+        this(Collections.EMPTY_LIST);
+    }
+
+    public SuffixArraySuggestionProvider(Collection<String> values) {
+        this(values, false);
+    }
+
+    public SuffixArraySuggestionProvider(Collection<String> values, boolean ignoreCase) {
+        this(values, ignoreCase, Locale.getDefault());
+    }
+
+    public SuffixArraySuggestionProvider(Collection<String> values, boolean ignoreCase, Locale locale) {
+        this(values, ignoreCase, locale, true);
+    }
+
+    /**
+     * Creates a new provider.
+     *
+     * @param values The values.
+     * @param ignoreCase Ignore case while matching.
+     * @param locale Locale used for matching.
+     * @param preserveOrder Return suggestions in the order of the values. If
+     * {@code false} the suggestions are returned in the order of the matched
+     * suffixes, which allows a query to stop at its limit instead of visiting
+     * every match.
+     */
+    public SuffixArraySuggestionProvider(Collection<String> values, boolean ignoreCase, Locale locale, boolean preserveOrder) {
+        if (values == null) {
+            throw new NullPointerException("values is null!");
+        }
+        if (locale == null) {
+            throw new NullPointerException("locale is null!");
+        }
+        this.values = values.toArray(new String[values.size()]);
+        this.ignoreCase = ignoreCase;
+        this.locale = locale;
+        this.preserveOrder = preserveOrder;
+
+        int length = 0;
+        String[] normalized = new String[this.values.length];
+        for (int i = 0; i < normalized.length; ++i) {
+            normalized[i] = normalize(this.values[i]);
+            length += normalized[i].length() + 1;
+        }
+        this.text = new char[length];
+        this.starts = new int[normalized.length];
+        int offset = 0;
+        for (int i = 0; i < normalized.length; ++i) {
+            String value = normalized[i];
+            starts[i] = offset;
+            value.getChars(0, value.length(), text, offset);
+            offset += value.length();
+            text[offset++] = SEPARATOR;
+        }
+        int[] rank = new int[length];
+        this.suffixes = buildSuffixArray(text, rank);
+        this.lcp = buildLcpArray(text, suffixes, rank);
+    }
+
+    /**
+     * Normalizes the given value or term for matching.
+     *
+     * @param value The value or term.
+     * @return The normalized value.
+     */
+    private String normalize(String value) {
+        return ignoreCase ? value.toLowerCase(locale) : value;
+    }
+
+    /**
+     * Builds the suffix array of the given text by prefix doubling with radix
+     * sorted ranks in {@code O(n log n)}.
+     *
+     * @param text The text.
+     * @param rank Receives the position of every suffix in the suffix array.
+     * @return The suffix array.
+     */
+    static int[] buildSuffixArray(char[] text, int[] rank) {
+        int n = text.length;
+        int[] sa = new int[n];
+        if (n == 0) {
+            return sa;
+        }
+        int[] tmp = new int[n];
+        int buckets = Math.max(n, Character.MAX_VALUE + 1);
+        int[] count = new int[buckets + 1];
+
+        // sort by the first char
+        for (int i = 0; i < n; ++i) {
+            rank[i] = text[i];
+            ++count[rank[i] + 1];
+        }
+        for (int i = 1; i <= buckets; ++i) {
+            count[i] += count[i - 1];
+        }
+        for (int i = 0; i < n; ++i) {
+            sa[count[rank[i]]++] = i;
+        }
+        int classes = Character.MAX_VALUE + 1;
+
+        for (int k = 1; k < n; k <<= 1) {
+            // order by the second half: suffixes without one come first
+            int p = 0;
+            for (int i = n - k; i < n; ++i) {
+                tmp[p++] = i;
+            }
+            for (int i = 0; i < n; ++i) {
+                if (sa[i] >= k) {
+                    tmp[p++] = sa[i] - k;
+                }
+            }
+            // stable counting sort by the first half
+            Arrays.fill(count, 0, classes + 1, 0);
+            for (int i = 0; i < n; ++i) {
+                ++count[rank[i] + 1];
+            }
+            for (int i = 1; i <= classes; ++i) {
+                count[i] += count[i - 1];
+            }
+            for (int i = 0; i < n; ++i) {
+                sa[count[rank[tmp[i]]]++] = tmp[i];
+            }
+            // assign the new ranks
+            tmp[sa[0]] = 0;
+            p = 0;
+            for (int i = 1; i < n; ++i) {
+                int a = sa[i - 1];
+                int b = sa[i];
+                if (rank[a] != rank[b]
+                        || (a + k < n ? rank[a + k] : -1) != (b + k < n ? rank[b + k] : -1)) {
+                    ++p;
+                }
+                tmp[b] = p;
+            }
+            System.arraycopy(tmp, 0, rank, 0, n);
+            classes = p + 1;
+            if (classes == n) {
+                break;
+            }
+        }
+        for (int i = 0; i < n; ++i) {
+            rank[sa[i]] = i;
+        }
+        return sa;
+    }
+
+    /**
+     * Builds the LCP array with Kasai's algorithm in {@code O(n)}.
+     *
+     * @param text The text.
+     * @param sa The suffix array.
+     * @param rank The position of every suffix in the suffix array.
+     * @return The LCP array.
+     */
+    static int[] buildLcpArray(char[] text, int[] sa, int[] rank) {
+        int n = text.length;
+        int[] lcp = new int[n];
+        int h = 0;
+        for (int i = 0; i < n; ++i) {
+            if (rank[i] > 0) {
+                int j = sa[rank[i] - 1];
+                while (i + h < n && j + h < n && text[i + h] == text[j + h]) {
+                    ++h;
+                }
+                lcp[rank[i]] = h;
+                if (h > 0) {
+                    --h;
+                }
+            } else {
+                h = 0;
+            }
+        }
+        return lcp;
+    }
+
+    /**
+     * Counts how many chars of the term match the suffix at the given offset,
+     * starting at {@code from}.
+     *
+     * @param suffix Offset of the suffix.
+     * @param term The term.
+     * @param from Number of chars known to match.
+     * @return The number of matching chars.
+     */
+    private int matchLength(int suffix, String term, int from) {
+        int length = term.length();
+        int max = Math.min(length, text.length - suffix);
+        int i = from;
+        while (i < max && text[suffix + i] == term.charAt(i)) {
+            ++i;
+        }
+        return i;
+    }
+
+    /**
+     * Finds the first suffix that is not less than the given term. Chars that
+     * are known to match both bounds are skipped.
+     *
+     * @param term The term.
+     * @return The position in {@link #suffixes}.
+     */
+    private int lowerBound(String term) {
+        int length = term.length();
+        int low = 0;
+        int high = suffixes.length;
+        int lowMatch = 0;
+        int highMatch = 0;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            int suffix = suffixes[mid];
+            int match = matchLength(suffix, term, Math.min(lowMatch, highMatch));
+            if (match == length || suffix + match < text.length
+                    && text[suffix + match] > term.charAt(match)) {
+                high = mid;
+                highMatch = match;
+            } else {
+                low = mid + 1;
+                lowMatch = match;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Maps an offset in {@link #text} to the id of its value.
+     *
+     * @param offset The offset.
+     * @return The value id.
+     */
+    private int valueAt(int offset) {
+        int index = Arrays.binarySearch(starts, offset);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    /**
+     * Adds an id to a max-heap.
+     *
+     * @param heap The heap.
+     * @param size Number of ids in the heap.
+     * @param id The id.
+     */
+    private static void siftUp(int[] heap, int size, int id) {
+        int i = size;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (heap[parent] >= id) {
+                break;
+            }
+            heap[i] = heap[parent];
+            i = parent;
+        }
+        heap[i] = id;
+    }
+
+    /**
+     * Replaces the largest id of a max-heap.
+     *
+     * @param heap The heap.
+     * @param size Number of ids in the heap.
+     * @param id The id, less than the largest one.
+     */
+    private static void siftDown(int[] heap, int size, int id) {
+        int i = 0;
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && heap[child + 1] > heap[child]) {
+                ++child;
+            }
+            if (heap[child] <= id) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = id;
+    }
+
+    @Override
+    public Collection<AutocompleteSuggestion> querySuggestions(AutocompleteQuery query) {
+        String term = query.getTerm();
+        if (values.length == 0 || term == null || term.isEmpty()) {
+            return Collections.emptyList();
+        }
+        term = normalize(term);
+        if (term.indexOf(SEPARATOR) >= 0) {
+            return Collections.emptyList();
+        }
+
+        int length = term.length();
+        int from = lowerBound(term);
+        if (from == suffixes.length
+                || matchLength(suffixes[from], term, 0) < length) {
+            return Collections.emptyList();
+        }
+
+        boolean hasLimit = query.hasLimit();
+        int limit = query.getLimit();
+        int end = from + 1;
+        while (end < suffixes.length && lcp[end] >= length) {
+            ++end;
+        }
+        BitSet seen = new BitSet();
+        IntList ids = new IntList();
+        if (!preserveOrder) {
+            for (int i = from; i < end; ++i) {
+                int id = valueAt(suffixes[i]);
+                if (!seen.get(id)) {
+                    seen.set(id);
+                    ids.add(id);
+                    if (hasLimit && ids.size() >= limit) {
+                        break; // limit reached, exit loop
+                    }
+                }
+            }
+        } else if (hasLimit && limit < end - from) {
+            // keep the smallest ids of the range in a max-heap of limit size
+            int[] heap = new int[limit];
+            int size = 0;
+            for (int i = from; i < end; ++i) {
+                int id = valueAt(suffixes[i]);
+                if (size == limit && id >= heap[0] || seen.get(id)) {
+                    continue; // too large or value matches more than once
+                }
+                seen.set(id);
+                if (size < limit) {
+                    siftUp(heap, size++, id);
+                } else {
+                    siftDown(heap, size, id);
+                }
+            }
+            Arrays.sort(heap, 0, size);
+            for (int i = 0; i < size; ++i) {
+                ids.add(heap[i]);
+            }
+        } else {
+            // every match is returned, the bits are in the order of the values
+            for (int i = from; i < end; ++i) {
+                seen.set(valueAt(suffixes[i]));
+            }
+            for (int id = seen.nextSetBit(0); id >= 0; id = seen.nextSetBit(id + 1)) {
+                ids.add(id);
+            }
+        }
+
+        int size = ids.size();
+        List<AutocompleteSuggestion> suggestions = new ArrayList<>(size);
+        for (int i = 0; i < size; ++i) {
+            suggestions.add(new AutocompleteSuggestion(values[ids.get(i)]));
+        }
+        return suggestions;
+    }
+
+    /**
+     * Returns an unmodifiable {@link Collection} containing the values used by
+     * this provider.
+     *
+     * @return An unmodifiable {@link Collection}
+     */
+    public Collection<String> getValues() {
+        return Collections.unmodifiableList(Arrays.asList(values));
+    }
+
+    /**
+     * Gets whether this provider is case insensitive.
+     *
+     * @return This provider is case insensitive.
+     */
+    public boolean isIgnoreCase() {
+        return ignoreCase;
+    }
+
+    /**
+     * Gets the {@link Locale} of this provider.
+     *
+     * @return The {@link Locale} of this provider.
+     */
+    public Locale getLocale() {
+        return locale;
+    }
+
+    /**
+     * Gets whether suggestions are returned in the order of the values.
+     *
+     * @return Suggestions are returned in the order of the values.
+     */
+    public boolean isPreserveOrder() {
+        return preserveOrder;
+    }
+
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2017 Max Schuster.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.maxschuster.vaadin.autocompletetextfield.provider;
+
+import eu.maxschuster.vaadin.autocompletetextfield.AutocompleteQuery;
+import java.io.Serializable;
+
+/**
+ * A search structure over a list of normalized values that finds the ids
+ * (list indices) of matching values without scanning the whole list.
+ *
+ * @author Max Schuster
+ * @since 3.0
+ */
+interface SuggestionIndex extends Serializable {
+
+    /**
+     * Number of values compared between two checks of the time budget
+     */
+    int DEADLINE_CHECK_INTERVAL = 1024;
+
+    /**
+     * Collects the ids of all values matching the given normalized term.
+     * <p>
+     * An index that compares many values per search stops early if the
+     * query has been {@link AutocompleteQuery#isCancelled() cancelled} or its
+     * time budget has been used up. In the latter case it
+     * {@link AutocompleteQuery#markIncomplete() marks} the query as
+     * incomplete and the ids found so far are the result.
+     * </p>
+     *
+     * @param term The normalized search term.
+     * @param limit Max number of ids to collect. If {@code limit <= 0} all
+     * matching ids are collected.
+     * @param query The query.
+     * @param result Receives the ids of the matching values in result order.
+     * @return The number of values that had to be compared with the term,
+     * which is a measure of the cost of the search.
+     */
+    int search(String term, int limit, AutocompleteQuery query, IntList result);
+
+    /**
+     * Checks if a search should stop early. Marks the query as incomplete if
+     * its time budget has been used up.
+     *
+     * @param query The query.
+     * @return {@code true} if the query has been cancelled or has expired.
+     */
+    static boolean isOverdue(AutocompleteQuery query) {
+        if (query.isCancelled()) {
+            return true;
+        }
+        if (query.isExpired()) {
+            query.markIncomplete();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Updates the index after values have been appended to the normalized
+     * values.
+     *
+     * @param fromId The id of the first appended value. All values from this
+     * id to the end of the list are new.
+     */
+    void added(int fromId);
+
+    /**
+     * Updates the index after values have been removed. The removed values
+     * stay in the normalized values and keep their ids until they are
+     * {@link #compacted(int[]) compacted}, the index only stops finding them.
+     *
+     * @param removedIds The ascending ids of the removed values.
+     */
+    void removed(int[] removedIds);
+
+    /**
+     * Updates the index after the removed values have been dropped from the
+     * normalized values. The ids of the remaining values have been shifted
+     * down to close the gaps.
+     *
+     * @param newIds The new id by old id, {@code -1} for a removed value.
+     * @see IdRemapping#newIds(int, int[])
+     */
+    void compacted(int[] newIds);
+
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2017 Max Schuster.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.maxschuster.vaadin.autocompletetextfield.provider;
+
+import java.io.Serializable;
+import java.text.Normalizer;
+import java.util.Locale;
+
+/**
+ * Normalizes values and terms for matching.
+ * <p>
+ * Case folding uses {@link String#toLowerCase(java.util.Locale)}. Diacritic
+ * folding decomposes the text with Unicode NFKD and drops all combining marks,
+ * so {@code "Zürich"} becomes {@code "Zurich"} and the ligature {@code "ﬁ"}
+ * becomes {@code "fi"}.
+ * </p>
+ * <p>
+ * Pure ASCII text has neither diacritics nor compatibility characters, so it
+ * takes a fast path that only folds the case of {@code A - Z}. The fast path
+ * does not allocate if the text is already folded. It is not used for
+ * locales whose lower case of {@code I} is not {@code i}.
+ * </p>
+ *
+ * @author Max Schuster
+ * @since 3.0
+ */
+final class TextFolding implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final boolean ignoreCase;
+
+    private final boolean ignoreDiacritics;
+
+    private final Locale locale;
+
+    /**
+     * ASCII case folding gives the same result as the {@link #locale}
+     */
+    private final boolean asciiSafe;
+
+    /**
+     * Creates a new folding.
+     *
+     * @param ignoreCase Fold the case.
+     * @param ignoreDiacritics Fold diacritics and compatibility characters.
+     * @param locale Locale used for case folding.
+     */
+    TextFolding(boolean ignoreCase, boolean ignoreDiacritics, Locale locale) {
+        this.ignoreCase = ignoreCase;
+        this.ignoreDiacritics = ignoreDiacritics;
+        this.locale = locale;
+        this.asciiSafe = "i".equals("I".toLowerCase(locale));
+    }
+
+    /**
+     * Checks if this folding changes anything.
+     *
+     * @return {@code false} if {@link #fold(java.lang.String)} returns its
+     * argument unchanged.
+     */
+    boolean isIdentity() {
+        return !ignoreCase && !ignoreDiacritics;
+    }
+
+    boolean isIgnoreCase() {
+        return ignoreCase;
+    }
+
+    boolean isIgnoreDiacritics() {
+        return ignoreDiacritics;
+    }
+
+    Locale getLocale() {
+        return locale;
+    }
+
+    /**
+     * Checks if ASCII case folding gives the same result as the locale.
+     *
+     * @return {@code true} if {@code A - Z} fold to {@code a - z}.
+     */
+    boolean isAsciiSafe() {
+        return asciiSafe;
+    }
+
+    /**
+     * Folds the given value or term.
+     *
+     * @param value The value or term.
+     * @return The folded value.
+     */
+    String fold(String value) {
+        if (isIdentity()) {
+            return value;
+        }
+        if (asciiSafe && isAscii(value)) {
+            return ignoreCase ? asciiLowerCase(value) : value;
+        }
+        if (ignoreCase) {
+            value = value.toLowerCase(locale);
+        }
+        // strip after case folding, stripping "\u0130" first would leave an
+        // "I" that folds to a dotless "\u0131" in Turkish
+        return ignoreDiacritics ? stripDiacritics(value) : value;
+    }
+
+    private static boolean isAscii(String value) {
+        int length = value.length();
+        for (int i = 0; i < length; ++i) {
+            if (value.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Folds {@code A - Z} to lower case. Returns the value itself if it
+     * contains no upper case letters.
+     */
+    private static String asciiLowerCase(String value) {
+        int length = value.length();
+        int i = 0;
+        while (i < length && !isAsciiUpperCase(value.charAt(i))) {
+            ++i;
+        }
+        if (i == length) {
+            return value;
+        }
+        char[] chars = value.toCharArray();
+        for (; i < length; ++i) {
+            if (isAsciiUpperCase(chars[i])) {
+                chars[i] += 'a' - 'A';
+            }
+        }
+        return new String(chars);
+    }
+
+    private static boolean isAsciiUpperCase(char c) {
+        return c >= 'A' && c <= 'Z';
+    }
+
+    /**
+     * Decomposes the value with NFKD and removes the combining marks.
+     */
+    private static String stripDiacritics(String value) {
+        String decomposed = Normalizer.normalize(value, Normalizer.Form.NFKD);
+        int length = decomposed.length();
+        StringBuilder stripped = null;
+        for (int i = 0; i < length; ++i) {
+            char c = decomposed.charAt(i);
+            int type = Character.getType(c);
+            if (type == Character.NON_SPACING_MARK
+                    || type == Character.COMBINING_SPACING_MARK
+                    || type == Character.ENCLOSING_MARK) {
+                if (stripped == null) {
+                    stripped = new StringBuilder(length);
+                    stripped.append(decomposed, 0, i);
+                }
+            } else if (stripped != null) {
+                stripped.append(c);
+            }
+        }
+        return stripped != null ? stripped.toString() : decomposed;
+    }
+
+}
@@ -0,0 +1,402 @@
+/*
+ * Copyright 2017 Max Schuster.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.maxschuster.vaadin.autocompletetextfield.provider;
+
+import eu.maxschuster.vaadin.autocompletetextfield.AutocompleteQuery;
+import eu.maxschuster.vaadin.autocompletetextfield.AutocompleteSuggestion;
+import eu.maxschuster.vaadin.autocompletetextfield.AutocompleteSuggestionProvider;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * An {@link AutocompleteSuggestionProvider} backed by a compressed radix trie
+ * over the normalized values. It always matches like {@link MatchMode#BEGINS}.
+ * <p>
+ * Values sharing a prefix share the trie nodes of that prefix, so no
+ * normalized copy of the values has to be kept after construction. Every node
+ * with more than {@code cacheSize} values below it caches the ids of its first
+ * {@code cacheSize} completions, so a query with a limit of up to
+ * {@code cacheSize} is answered without visiting the subtree.
+ * </p>
+ * <p>
+ * Suggestions are returned in the order of the values. Instances are
+ * immutable.
+ * </p>
+ *
+ * @author Max Schuster
+ * @since 3.0
+ * @see CollectionSuggestionProvider
+ */
+public class TrieSuggestionProvider implements AutocompleteSuggestionProvider {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Default number of completions cached per node.
+     */
+    public static final int DEFAULT_CACHE_SIZE = 10;
+
+    /**
+     * Array of available values
+     */
+    private final String[] values;
+
+    /**
+     * Ignore case while matching
+     */
+    private final boolean ignoreCase;
+
+    /**
+     * Locale used for matching
+     */
+    private final Locale locale;
+
+    /**
+     * Number of completions cached per node
+     */
+    private final int cacheSize;
+
+    /**
+     * The root node of the trie
+     */
+    private final Node root;
+
+    @SuppressWarnings("unchecked")
+    public TrieSuggestionProvider() {
+        this(Collections.EMPTY_LIST);
+    }
+
+    public TrieSuggestionProvider(Collection<String> values) {
+        this(values, false);
+    }
+
+    public TrieSuggestionProvider(Collection<String> values, boolean ignoreCase) {
+        this(values, ignoreCase, Locale.getDefault());
+    }
+
+    public TrieSuggestionProvider(Collection<String> values, boolean ignoreCase, Locale locale) {
+        this(values, ignoreCase, locale, DEFAULT_CACHE_SIZE);
+    }
+
+    public TrieSuggestionProvider(Collection<String> values, boolean ignoreCase, Locale locale, int cacheSize) {
+        if (values == null) {
+            throw new NullPointerException("values is null!");
+        }
+        if (locale == null) {
+            throw new NullPointerException("locale is null!");
+        }
+        if (cacheSize < 1) {
+            throw new IllegalArgumentException("cacheSize must be >= 1!");
+        }
+        this.values = values.toArray(new String[values.size()]);
+        this.ignoreCase = ignoreCase;
+        this.locale = locale;
+        this.cacheSize = cacheSize;
+        this.root = new Node(new char[0]);
+        for (int i = 0; i < this.values.length; ++i) {
+            insert(normalize(this.values[i]), i);
+        }
+        root.cacheCompletions(cacheSize);
+    }
+
+    /**
+     * Normalizes the given value or term for matching.
+     *
+     * @param value The value or term.
+     * @return The normalized value.
+     */
+    private String normalize(String value) {
+        return ignoreCase ? value.toLowerCase(locale) : value;
+    }
+
+    /**
+     * Inserts the given normalized key into the trie, splitting edges where
+     * necessary.
+     *
+     * @param key The normalized key.
+     * @param id The value id.
+     */
+    private void insert(String key, int id) {
+        Node node = root;
+        int pos = 0;
+        int length = key.length();
+        while (pos < length) {
+            int index = node.indexOfChild(key.charAt(pos));
+            if (index < 0) {
+                node.addChild(-index - 1, new Node(
+                        key.substring(pos).toCharArray()));
+                node = node.children[-index - 1];
+                pos = length;
+                break;
+            }
+            Node child = node.children[index];
+            char[] label = child.label;
+            int common = 1;
+            while (common < label.length && pos + common < length
+                    && label[common] == key.charAt(pos + common)) {
+                ++common;
+            }
+            if (common < label.length) {
+                child = child.split(common);
+                node.children[index] = child;
+            }
+            node = child;
+            pos += common;
+        }
+        node.addId(id);
+    }
+
+    /**
+     * Finds the node whose subtree contains all keys starting with the given
+     * normalized term.
+     *
+     * @param term The normalized term.
+     * @return The node or {@code null} if no key starts with the term.
+     */
+    private Node find(String term) {
+        Node node = root;
+        int pos = 0;
+        int length = term.length();
+        while (pos < length) {
+            int index = node.indexOfChild(term.charAt(pos));
+            if (index < 0) {
+                return null;
+            }
+            node = node.children[index];
+            char[] label = node.label;
+            int end = Math.min(label.length, length - pos);
+            for (int i = 1; i < end; ++i) {
+                if (label[i] != term.charAt(pos + i)) {
+                    return null;
+                }
+            }
+            pos += end;
+        }
+        return node;
+    }
+
+    @Override
+    public Collection<AutocompleteSuggestion> querySuggestions(AutocompleteQuery query) {
+        String term = query.getTerm();
+        if (values.length == 0 || term == null || term.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Node node = find(normalize(term));
+        if (node == null) {
+            return Collections.emptyList();
+        }
+
+        int limit = query.getLimit();
+        int[] ids;
+        if (query.hasLimit() && node.completions != null
+                && limit <= node.completions.length) {
+            ids = node.completions;
+        } else {
+            IntList collected = new IntList();
+            node.collect(collected);
+            collected.sort(0);
+            ids = collected.toArray();
+        }
+
+        int length = query.hasLimit() ? Math.min(limit, ids.length) : ids.length;
+        List<AutocompleteSuggestion> suggestions = new ArrayList<>(length);
+        for (int i = 0; i < length; ++i) {
+            suggestions.add(new AutocompleteSuggestion(values[ids[i]]));
+        }
+        return suggestions;
+    }
+
+    /**
+     * Returns an unmodifiable {@link Collection} containing the values used by
+     * this provider.
+     *
+     * @return An unmodifiable {@link Collection}
+     */
+    public Collection<String> getValues() {
+        return Collections.unmodifiableList(Arrays.asList(values));
+    }
+
+    /**
+     * Gets whether this provider is case insensitive.
+     *
+     * @return This provider is case insensitive.
+     */
+    public boolean isIgnoreCase() {
+        return ignoreCase;
+    }
+
+    /**
+     * Gets the {@link Locale} of this provider.
+     *
+     * @return The {@link Locale} of this provider.
+     */
+    public Locale getLocale() {
+        return locale;
+    }
+
+    /**
+     * Gets the number of completions cached per node.
+     *
+     * @return The number of completions cached per node.
+     */
+    public int getCacheSize() {
+        return cacheSize;
+    }
+
+    /**
+     * A node of the radix trie.
+     */
+    private static final class Node implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private static final Node[] NO_CHILDREN = new Node[0];
+
+        /**
+         * Label of the edge leading to this node
+         */
+        private char[] label;
+
+        /**
+         * Child nodes sorted by the first char of their label
+         */
+        private Node[] children = NO_CHILDREN;
+
+        /**
+         * Ids of the values whose key ends at this node or {@code null}
+         */
+        private int[] ids;
+
+        /**
+         * Ids of the first completions below this node in ascending order or
+         * {@code null} if the subtree is small enough to be collected
+         */
+        private int[] completions;
+
+        Node(char[] label) {
+            this.label = label;
+        }
+
+        /**
+         * Binary searches the child starting with the given char.
+         *
+         * @param c The first char of the child label.
+         * @return The index of the child or {@code -(insertionPoint + 1)}.
+         */
+        int indexOfChild(char c) {
+            int low = 0;
+            int high = children.length - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                char midChar = children[mid].label[0];
+                if (midChar < c) {
+                    low = mid + 1;
+                } else if (midChar > c) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -(low + 1);
+        }
+
+        void addChild(int index, Node child) {
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(children, 0, newChildren, 0, index);
+            newChildren[index] = child;
+            System.arraycopy(children, index, newChildren, index + 1,
+                    children.length - index);
+            children = newChildren;
+        }
+
+        void addId(int id) {
+            if (ids == null) {
+                ids = new int[]{id};
+            } else {
+                ids = Arrays.copyOf(ids, ids.length + 1);
+                ids[ids.length - 1] = id;
+            }
+        }
+
+        /**
+         * Splits the label of this node at the given position.
+         *
+         * @param at Split position.
+         * @return The new parent node holding the first part of the label.
+         */
+        Node split(int at) {
+            Node parent = new Node(Arrays.copyOf(label, at));
+            label = Arrays.copyOfRange(label, at, label.length);
+            parent.children = new Node[]{this};
+            return parent;
+        }
+
+        /**
+         * Appends the ids of all values below this node.
+         *
+         * @param result Receives the ids.
+         */
+        void collect(IntList result) {
+            if (ids != null) {
+                for (int id : ids) {
+                    result.add(id);
+                }
+            }
+            for (Node child : children) {
+                child.collect(result);
+            }
+        }
+
+        /**
+         * Fills {@link #completions} of this node and all nodes below it.
+         *
+         * @param cacheSize Number of completions to cache.
+         * @return The first ids below this node (up to {@code cacheSize}) and
+         * the total number of values below this node as last element.
+         */
+        int[] cacheCompletions(int cacheSize) {
+            IntList first = new IntList();
+            int count = 0;
+            if (ids != null) {
+                for (int id : ids) {
+                    first.add(id);
+                }
+                count += ids.length;
+            }
+            for (Node child : children) {
+                int[] childFirst = child.cacheCompletions(cacheSize);
+                for (int i = 0; i < childFirst.length - 1; ++i) {
+                    first.add(childFirst[i]);
+                }
+                count += childFirst[childFirst.length - 1];
+            }
+            first.sort(0);
+            first.truncate(cacheSize);
+            if (count > cacheSize) {
+                completions = first.toArray();
+            }
+            first.add(count);
+            return first.toArray();
+        }
+
+    }
+
+}
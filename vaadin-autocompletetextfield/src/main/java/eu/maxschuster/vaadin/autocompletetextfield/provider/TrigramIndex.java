@@ -0,0 +1,256 @@
+/*
+ * Copyright 2017 Max Schuster.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.maxschuster.vaadin.autocompletetextfield.provider;
+
+import eu.maxschuster.vaadin.autocompletetextfield.AutocompleteQuery;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link SuggestionIndex} for {@link MatchMode#CONTAINS} backed by an
+ * inverted index of n-grams.
+ * <p>
+ * Every value is registered in the posting list of each of its unigrams,
+ * bigrams and trigrams. Terms of one or two chars are answered directly by
+ * their unigram or bigram posting list. Longer terms intersect the posting
+ * lists of their trigrams and only the surviving candidates are verified
+ * with {@link String#contains(java.lang.CharSequence)}.
+ * </p>
+ * <p>
+ * Matching ids are returned in ascending order.
+ * </p>
+ *
+ * @author Max Schuster
+ * @since 3.0
+ */
+final class TrigramIndex implements SuggestionIndex {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final IntList EMPTY = new IntList(1);
+
+    /**
+     * The normalized values.
+     */
+    private final List<String> search;
+
+    /**
+     * Ascending value ids by packed n-gram.
+     */
+    private final Map<Long, IntList> postings = new HashMap<>();
+
+    /**
+     * The ids of the removed values that are still in the posting lists
+     */
+    private final BitSet tombstones = new BitSet();
+
+    /**
+     * Creates a new index over the given normalized values.
+     *
+     * @param search The normalized values. The list index is the value id.
+     */
+    TrigramIndex(List<String> search) {
+        this.search = search;
+        addValues(0);
+        for (IntList posting : postings.values()) {
+            posting.trimToSize();
+        }
+    }
+
+    /**
+     * Registers the values from the given id to the end of the list in the
+     * posting lists of their n-grams.
+     *
+     * @param fromId The first id.
+     */
+    private void addValues(int fromId) {
+        int length = search.size();
+        for (int id = fromId; id < length; ++id) {
+            String value = search.get(id);
+            int valueLength = value.length();
+            for (int i = 0; i < valueLength; ++i) {
+                for (int n = 1; n <= 3 && i + n <= valueLength; ++n) {
+                    IntList list = postings.computeIfAbsent(gram(value, i, n),
+                            k -> new IntList(4));
+                    // values are visited in ascending order, so a duplicate
+                    // gram of the same value is always the last element
+                    if (list.isEmpty() || list.get(list.size() - 1) != id) {
+                        list.add(id);
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public void added(int fromId) {
+        // new ids are greater than all existing ones, so the posting lists
+        // stay sorted when they are appended
+        addValues(fromId);
+    }
+
+    @Override
+    public void removed(int[] removedIds) {
+        for (int id : removedIds) {
+            tombstones.set(id);
+        }
+    }
+
+    @Override
+    public void compacted(int[] newIds) {
+        Iterator<IntList> iterator = postings.values().iterator();
+        while (iterator.hasNext()) {
+            IntList posting = iterator.next();
+            int size = posting.size();
+            int out = 0;
+            for (int i = 0; i < size; ++i) {
+                int id = newIds[posting.get(i)];
+                if (id >= 0) {
+                    posting.set(out++, id);
+                }
+            }
+            if (out == 0) {
+                iterator.remove();
+            } else {
+                posting.truncate(out);
+            }
+        }
+        tombstones.clear();
+    }
+
+    /**
+     * Packs the n-gram at the given position into a {@code long}.
+     *
+     * @param value The string.
+     * @param offset Offset of the n-gram.
+     * @param n Length of the n-gram (1 - 3).
+     * @return The packed n-gram.
+     */
+    private static long gram(String value, int offset, int n) {
+        long gram = n;
+        for (int i = 0; i < n; ++i) {
+            gram = gram << 16 | value.charAt(offset + i);
+        }
+        return gram;
+    }
+
+    private IntList posting(long gram) {
+        IntList posting = postings.get(gram);
+        return posting != null ? posting : EMPTY;
+    }
+
+    @Override
+    public int search(String term, int limit, AutocompleteQuery query,
+            IntList result) {
+        int termLength = term.length();
+        if (termLength < 3) {
+            // unigram and bigram postings are exact
+            IntList posting = posting(gram(term, 0, termLength));
+            int size = posting.size();
+            int i = 0;
+            for (int found = 0; i < size && (limit <= 0 || found < limit); ++i) {
+                int id = posting.get(i);
+                if (!tombstones.get(id)) {
+                    result.add(id);
+                    ++found;
+                }
+            }
+            return i;
+        }
+
+        int gramCount = termLength - 2;
+        IntList[] lists = new IntList[gramCount];
+        for (int i = 0; i < gramCount; ++i) {
+            lists[i] = posting(gram(term, i, 3));
+            if (lists[i].isEmpty()) {
+                return 0; // a trigram of the term occurs nowhere
+            }
+        }
+        // drive the intersection by the shortest posting list
+        Arrays.sort(lists, (a, b) -> Integer.compare(a.size(), b.size()));
+        int[] cursors = new int[gramCount];
+        int[] driver = lists[0].elements();
+        int driverSize = lists[0].size();
+        int found = 0;
+        int cost = 0;
+        candidates:
+        for (int d = 0; d < driverSize; ++d) {
+            if (d % DEADLINE_CHECK_INTERVAL == 0 && d > 0
+                    && SuggestionIndex.isOverdue(query)) {
+                break; // return the ids found so far
+            }
+            int id = driver[d];
+            for (int i = 1; i < gramCount; ++i) {
+                int[] list = lists[i].elements();
+                int listSize = lists[i].size();
+                int cursor = advance(list, listSize, cursors[i], id);
+                cursors[i] = cursor;
+                if (cursor == listSize) {
+                    break candidates; // a posting list is exhausted
+                } else if (list[cursor] != id) {
+                    continue candidates;
+                }
+            }
+            if (tombstones.get(id)) {
+                continue; // removed
+            }
+            ++cost;
+            if (search.get(id).contains(term)) {
+                result.add(id);
+                if (++found == limit) {
+                    break;
+                }
+            }
+        }
+        return cost;
+    }
+
+    /**
+     * Finds the first position at or after {@code from} whose element is not
+     * less than {@code id} by galloping followed by a binary search.
+     *
+     * @param list Ascending posting list.
+     * @param length Number of valid elements of the list.
+     * @param from Start position.
+     * @param id The id to search.
+     * @return Position of the first element {@code >= id} or the list length.
+     */
+    private static int advance(int[] list, int length, int from, int id) {
+        int bound = 1;
+        int high = from;
+        while (high < length && list[high] < id) {
+            from = high + 1;
+            high += bound;
+            bound <<= 1;
+        }
+        high = Math.min(high, length - 1);
+        int low = from;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (list[mid] < id) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2017 Max Schuster.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.maxschuster.vaadin.autocompletetextfield.provider;
+
+import eu.maxschuster.vaadin.autocompletetextfield.AutocompleteQuery;
+import eu.maxschuster.vaadin.autocompletetextfield.AutocompleteSuggestion;
+import eu.maxschuster.vaadin.autocompletetextfield.AutocompleteSuggestionProvider;
+import eu.maxschuster.vaadin.autocompletetextfield.ProgressiveSuggestionProvider;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A {@link ProgressiveSuggestionProvider} that shows the suggestions of a
+ * fast provider first and appends the suggestions of a slow provider once
+ * they are available.
+ * <p>
+ * The fast suggestions keep their position when the slow ones arrive, so the
+ * suggestions the user is looking at don't move. Slow suggestions with the
+ * value of a fast suggestion are left out. If the fast suggestions already
+ * reach the limit of the query the slow provider is not queried at all.
+ * </p>
+ * <p>
+ * Only the slow provider is queried in the background. The fast provider is
+ * only queried while holding the lock of the session, so it need not be
+ * thread-safe. The slow provider of an
+ * {@link eu.maxschuster.vaadin.autocompletetextfield.AutocompleteTextFieldExtension}
+ * is never queried by two threads at once.
+ * </p>
+ *
+ * @author Max Schuster
+ * @since 3.0
+ */
+public class TwoPhaseSuggestionProvider implements ProgressiveSuggestionProvider {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Provides the first suggestions
+     */
+    private final AutocompleteSuggestionProvider fast;
+
+    /**
+     * Provides the refined suggestions
+     */
+    private final AutocompleteSuggestionProvider slow;
+
+    /**
+     * Creates a new provider.
+     *
+     * @param fast Provides the first suggestions, e.g. from an in-memory
+     * index. Queried while holding the lock of the session, except for a
+     * direct call of {@link #querySuggestions(AutocompleteQuery)}.
+     * @param slow Provides the suggestions appended later, e.g. from a
+     * database. Queried in the background.
+     */
+    public TwoPhaseSuggestionProvider(AutocompleteSuggestionProvider fast,
+            AutocompleteSuggestionProvider slow) {
+        if (fast == null) {
+            throw new NullPointerException("fast is null!");
+        }
+        if (slow == null) {
+            throw new NullPointerException("slow is null!");
+        }
+        this.fast = fast;
+        this.slow = slow;
+    }
+
+    @Override
+    public void collectFirstSuggestions(AutocompleteQuery query,
+            Collection<AutocompleteSuggestion> result) {
+        fast.collectSuggestions(query, result);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Queries both providers on the calling thread.
+     * </p>
+     */
+    @Override
+    public Collection<AutocompleteSuggestion> querySuggestions(AutocompleteQuery query) {
+        List<AutocompleteSuggestion> suggestions = new ArrayList<>();
+        fast.collectSuggestions(query, suggestions);
+        return appendSlowSuggestions(query, suggestions);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Queries only the slow provider and appends its suggestions to the
+     * first ones.
+     * </p>
+     */
+    @Override
+    public Collection<AutocompleteSuggestion> refineSuggestions(
+            AutocompleteQuery query, List<AutocompleteSuggestion> first) {
+        return appendSlowSuggestions(query, new ArrayList<>(first));
+    }
+
+    /**
+     * Appends the suggestions of the slow provider with new values to the
+     * given fast suggestions until the limit of the query is reached.
+     *
+     * @param query The query.
+     * @param suggestions The fast suggestions, receives the slow ones.
+     * @return The given suggestions.
+     */
+    private List<AutocompleteSuggestion> appendSlowSuggestions(
+            AutocompleteQuery query, List<AutocompleteSuggestion> suggestions) {
+        int limit = query.hasLimit() ? query.getLimit() : Integer.MAX_VALUE;
+        if (suggestions.size() >= limit) {
+            return suggestions;
+        }
+        Set<String> values = new HashSet<>();
+        for (AutocompleteSuggestion suggestion : suggestions) {
+            if (suggestion != null) {
+                values.add(suggestion.getValue());
+            }
+        }
+        Collection<AutocompleteSuggestion> slowSuggestions = slow.querySuggestions(query);
+        if (slowSuggestions == null) {
+            return suggestions;
+        }
+        for (AutocompleteSuggestion suggestion : slowSuggestions) {
+            if (suggestions.size() >= limit) {
+                break;
+            }
+            if (suggestion != null && values.add(suggestion.getValue())) {
+                suggestions.add(suggestion);
+            }
+        }
+        return suggestions;
+    }
+
+    /**
+     * Gets the provider of the first suggestions.
+     *
+     * @return The fast provider.
+     */
+    public AutocompleteSuggestionProvider getFast() {
+        return fast;
+    }
+
+    /**
+     * Gets the provider of the suggestions appended later.
+     *
+     * @return The slow provider.
+     */
+    public AutocompleteSuggestionProvider getSlow() {
+        return slow;
+    }
+
+}
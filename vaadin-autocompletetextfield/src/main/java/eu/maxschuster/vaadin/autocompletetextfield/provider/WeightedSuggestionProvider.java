@@ -0,0 +1,310 @@
+/*
+ * Copyright 2017 Max Schuster.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.maxschuster.vaadin.autocompletetextfield.provider;
+
+import eu.maxschuster.vaadin.autocompletetextfield.AutocompleteQuery;
+import eu.maxschuster.vaadin.autocompletetextfield.AutocompleteSuggestion;
+import eu.maxschuster.vaadin.autocompletetextfield.AutocompleteSuggestionProvider;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * An {@link AutocompleteSuggestionProvider} that returns the values with the
+ * highest weight first. It always matches like {@link MatchMode#BEGINS}.
+ * <p>
+ * The normalized values are kept in a sorted array, so all values starting
+ * with a term form a contiguous range. A tree over this array stores the
+ * position of the highest weight of every subrange. A query starts with the
+ * whole matching range and repeatedly takes the range whose best value has
+ * the highest weight, emits that value and splits the range around it. The
+ * first {@code limit} values emitted are the true top {@code limit} by weight
+ * and a query costs {@code O(log n + limit log n)}, no matter how many values
+ * match.
+ * </p>
+ * <p>
+ * Values with equal weights are returned in their original order. Instances
+ * are immutable.
+ * </p>
+ *
+ * @author Max Schuster
+ * @since 3.0
+ */
+public class WeightedSuggestionProvider implements AutocompleteSuggestionProvider {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Array of available values
+     */
+    private final String[] values;
+
+    /**
+     * Weight of each value
+     */
+    private final double[] weights;
+
+    /**
+     * Ignore case while matching
+     */
+    private final boolean ignoreCase;
+
+    /**
+     * Locale used for matching
+     */
+    private final Locale locale;
+
+    /**
+     * The normalized keys in sorted order
+     */
+    private final String[] keys;
+
+    /**
+     * The value id of each entry of {@link #keys}
+     */
+    private final int[] ids;
+
+    /**
+     * Number of leaves of {@link #tree} (a power of two)
+     */
+    private final int leaves;
+
+    /**
+     * Segment tree holding the position in {@link #keys} of the best value of
+     * each subrange or {@code -1} for empty subranges
+     */
+    private final int[] tree;
+
+    @SuppressWarnings("unchecked")
+    public WeightedSuggestionProvider() {
+        this(Collections.EMPTY_MAP);
+    }
+
+    public WeightedSuggestionProvider(Map<String, ? extends Number> weightedValues) {
+        this(weightedValues, false);
+    }
+
+    public WeightedSuggestionProvider(Map<String, ? extends Number> weightedValues, boolean ignoreCase) {
+        this(weightedValues, ignoreCase, Locale.getDefault());
+    }
+
+    /**
+     * Creates a new provider.
+     *
+     * @param weightedValues The values and their weights. The iteration order
+     * of the {@link Map} breaks ties between equal weights.
+     * @param ignoreCase Ignore case while matching.
+     * @param locale Locale used for matching.
+     */
+    public WeightedSuggestionProvider(Map<String, ? extends Number> weightedValues, boolean ignoreCase, Locale locale) {
+        if (weightedValues == null) {
+            throw new NullPointerException("weightedValues is null!");
+        }
+        if (locale == null) {
+            throw new NullPointerException("locale is null!");
+        }
+        this.ignoreCase = ignoreCase;
+        this.locale = locale;
+        int length = weightedValues.size();
+        this.values = new String[length];
+        this.weights = new double[length];
+        String[] normalized = new String[length];
+        int id = 0;
+        for (Map.Entry<String, ? extends Number> entry : weightedValues.entrySet()) {
+            if (entry.getValue() == null) {
+                throw new NullPointerException("weight of '" + entry.getKey()
+                        + "' is null!");
+            }
+            values[id] = entry.getKey();
+            weights[id] = entry.getValue().doubleValue();
+            normalized[id] = normalize(entry.getKey());
+            ++id;
+        }
+        int[] order = new int[length];
+        for (int i = 0; i < length; ++i) {
+            order[i] = i;
+        }
+        SortedKeyIndex.sortIds(order, normalized);
+        this.keys = new String[length];
+        for (int i = 0; i < length; ++i) {
+            keys[i] = normalized[order[i]];
+        }
+        this.ids = order;
+
+        int size = 1;
+        while (size < length) {
+            size <<= 1;
+        }
+        this.leaves = size;
+        this.tree = new int[size << 1];
+        Arrays.fill(tree, -1);
+        for (int i = 0; i < length; ++i) {
+            tree[size + i] = i;
+        }
+        for (int node = size - 1; node > 0; --node) {
+            tree[node] = better(tree[node << 1], tree[(node << 1) + 1]);
+        }
+    }
+
+    /**
+     * Normalizes the given value or term for matching.
+     *
+     * @param value The value or term.
+     * @return The normalized value.
+     */
+    private String normalize(String value) {
+        return ignoreCase ? value.toLowerCase(locale) : value;
+    }
+
+    /**
+     * Compares the values at two positions of {@link #keys}: higher weight
+     * first, then lower id.
+     *
+     * @return A negative number if {@code a} is better than {@code b}.
+     */
+    private int compare(int a, int b) {
+        int result = Double.compare(weights[ids[b]], weights[ids[a]]);
+        return result != 0 ? result : Integer.compare(ids[a], ids[b]);
+    }
+
+    /**
+     * Gets the better of two positions, {@code -1} meaning none.
+     */
+    private int better(int a, int b) {
+        if (a < 0) {
+            return b;
+        } else if (b < 0) {
+            return a;
+        }
+        return compare(a, b) <= 0 ? a : b;
+    }
+
+    /**
+     * Finds the position of the best value in the given range.
+     *
+     * @param from Start of the range (inclusive).
+     * @param to End of the range (exclusive).
+     * @return The position.
+     */
+    private int best(int from, int to) {
+        int result = -1;
+        for (int low = from + leaves, high = to + leaves; low < high;
+                low >>= 1, high >>= 1) {
+            if ((low & 1) == 1) {
+                result = better(result, tree[low++]);
+            }
+            if ((high & 1) == 1) {
+                result = better(result, tree[--high]);
+            }
+        }
+        return result;
+    }
+
+    private int lowerBound(String term) {
+        int low = 0;
+        int high = keys.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (keys[mid].compareTo(term) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private int prefixEnd(String term, int from) {
+        int low = from;
+        int high = keys.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (keys[mid].startsWith(term)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    @Override
+    public Collection<AutocompleteSuggestion> querySuggestions(AutocompleteQuery query) {
+        String term = query.getTerm();
+        if (values.length == 0 || term == null || term.isEmpty()) {
+            return Collections.emptyList();
+        }
+        term = normalize(term);
+        int from = lowerBound(term);
+        int to = prefixEnd(term, from);
+        if (from == to) {
+            return Collections.emptyList();
+        }
+
+        int limit = query.hasLimit() ? Math.min(query.getLimit(), to - from) : to - from;
+        List<AutocompleteSuggestion> suggestions = new ArrayList<>(limit);
+        // ranges ordered by their best value
+        PriorityQueue<int[]> ranges = new PriorityQueue<>(
+                (a, b) -> compare(a[2], b[2]));
+        ranges.add(new int[]{from, to, best(from, to)});
+        while (suggestions.size() < limit) {
+            int[] range = ranges.poll();
+            int position = range[2];
+            suggestions.add(new AutocompleteSuggestion(values[ids[position]]));
+            if (range[0] < position) {
+                ranges.add(new int[]{range[0], position, best(range[0], position)});
+            }
+            if (position + 1 < range[1]) {
+                ranges.add(new int[]{position + 1, range[1], best(position + 1, range[1])});
+            }
+        }
+        return suggestions;
+    }
+
+    /**
+     * Returns an unmodifiable {@link Collection} containing the values used by
+     * this provider.
+     *
+     * @return An unmodifiable {@link Collection}
+     */
+    public Collection<String> getValues() {
+        return Collections.unmodifiableList(Arrays.asList(values));
+    }
+
+    /**
+     * Gets whether this provider is case insensitive.
+     *
+     * @return This provider is case insensitive.
+     */
+    public boolean isIgnoreCase() {
+        return ignoreCase;
+    }
+
+    /**
+     * Gets the {@link Locale} of this provider.
+     *
+     * @return The {@link Locale} of this provider.
+     */
+    public Locale getLocale() {
+        return locale;
+    }
+
+}
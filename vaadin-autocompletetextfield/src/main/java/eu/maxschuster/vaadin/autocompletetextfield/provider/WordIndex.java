@@ -0,0 +1,315 @@
+/*
+ * Copyright 2017 Max Schuster.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.maxschuster.vaadin.autocompletetextfield.provider;
+
+import eu.maxschuster.vaadin.autocompletetextfield.AutocompleteQuery;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A {@link SuggestionIndex} for {@link MatchMode#WORD_BEGINS} backed by a
+ * token index.
+ * <p>
+ * Every word start of every value is an entry of the index. The entries are
+ * sorted by the text following the word start, so all entries whose text
+ * starts with a term form a contiguous range that is located by two binary
+ * searches, just like {@link PrefixIndex} does for whole values.
+ * </p>
+ * <p>
+ * A word starts at the beginning of a value and at every letter or digit that
+ * follows a char that is neither.
+ * </p>
+ *
+ * @author Max Schuster
+ * @since 3.0
+ */
+final class WordIndex implements SuggestionIndex {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The normalized values.
+     */
+    private final List<String> search;
+
+    /**
+     * The value id of each entry in sorted order. Only the first
+     * {@link #size} elements are used.
+     */
+    private int[] ids = new int[0];
+
+    /**
+     * The word start offset of each entry in sorted order.
+     */
+    private int[] offsets = new int[0];
+
+    /**
+     * The number of entries.
+     */
+    private int size;
+
+    /**
+     * The ids of the removed values that still have entries
+     */
+    private final BitSet tombstones = new BitSet();
+
+    /**
+     * Return matches in insertion order instead of word order.
+     */
+    private final boolean preserveOrder;
+
+    /**
+     * Creates a new index over the given normalized values.
+     *
+     * @param search The normalized values. The list index is the value id.
+     * @param preserveOrder Return matches in insertion order instead of word
+     * order.
+     */
+    WordIndex(List<String> search, boolean preserveOrder) {
+        this.search = search;
+        this.preserveOrder = preserveOrder;
+        added(0);
+    }
+
+    @Override
+    public void added(int fromId) {
+        // sort the entries of the new values on their own...
+        IntList entryIds = new IntList();
+        IntList entryOffsets = new IntList();
+        int length = search.size();
+        for (int id = fromId; id < length; ++id) {
+            String value = search.get(id);
+            int valueLength = value.length();
+            for (int offset = 0; offset < valueLength; ++offset) {
+                if (isWordStart(value, offset)) {
+                    entryIds.add(id);
+                    entryOffsets.add(offset);
+                }
+            }
+        }
+        int count = entryIds.size();
+        if (count == 0) {
+            return;
+        }
+        int[] newIds = entryIds.toArray();
+        int[] newOffsets = entryOffsets.toArray();
+        int[] order = sortEntries(newIds, newOffsets);
+
+        // ...and merge them from the back, old entries first on equal texts
+        int total = size + count;
+        if (total > ids.length) {
+            int capacity = Math.max(total, ids.length + (ids.length >> 1));
+            ids = Arrays.copyOf(ids, capacity);
+            offsets = Arrays.copyOf(offsets, capacity);
+        }
+        int left = size - 1;
+        int right = count - 1;
+        for (int out = total - 1; right >= 0; --out) {
+            int entry = order[right];
+            if (left >= 0 && compareEntries(ids[left], offsets[left],
+                    newIds[entry], newOffsets[entry]) > 0) {
+                ids[out] = ids[left];
+                offsets[out] = offsets[left--];
+            } else {
+                ids[out] = newIds[entry];
+                offsets[out] = newOffsets[entry];
+                --right;
+            }
+        }
+        size = total;
+    }
+
+    @Override
+    public void removed(int[] removedIds) {
+        for (int id : removedIds) {
+            tombstones.set(id);
+        }
+    }
+
+    @Override
+    public void compacted(int[] newIds) {
+        int out = 0;
+        for (int i = 0; i < size; ++i) {
+            int id = newIds[ids[i]];
+            if (id >= 0) {
+                ids[out] = id;
+                offsets[out++] = offsets[i];
+            }
+        }
+        size = out;
+        tombstones.clear();
+    }
+
+    /**
+     * Checks if a word starts at the given offset.
+     *
+     * @param value The value.
+     * @param offset The offset.
+     * @return {@code true} if a word starts at the offset.
+     */
+    static boolean isWordStart(String value, int offset) {
+        return offset == 0 || Character.isLetterOrDigit(value.charAt(offset))
+                && !Character.isLetterOrDigit(value.charAt(offset - 1));
+    }
+
+    /**
+     * Checks if a word of the given value starts with the given term. Used
+     * for matching without an index.
+     *
+     * @param value The normalized value.
+     * @param term The normalized term.
+     * @return {@code true} if a word of the value starts with the term.
+     */
+    static boolean matches(String value, String term) {
+        int last = value.length() - term.length();
+        for (int offset = 0; offset <= last; ++offset) {
+            if (isWordStart(value, offset) && value.startsWith(term, offset)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Compares the texts following the word starts of two entries.
+     */
+    private int compareEntries(int id1, int offset1, int id2, int offset2) {
+        String value1 = search.get(id1);
+        String value2 = search.get(id2);
+        int length1 = value1.length() - offset1;
+        int length2 = value2.length() - offset2;
+        int length = Math.min(length1, length2);
+        for (int i = 0; i < length; ++i) {
+            char c1 = value1.charAt(offset1 + i);
+            char c2 = value2.charAt(offset2 + i);
+            if (c1 != c2) {
+                return c1 - c2;
+            }
+        }
+        return length1 - length2;
+    }
+
+    /**
+     * Sorts the entries with a stable sort, so equal texts keep their
+     * insertion order.
+     *
+     * @return The entry indices in sorted order.
+     */
+    private int[] sortEntries(int[] entryIds, int[] entryOffsets) {
+        int length = entryIds.length;
+        int[] order = new int[length];
+        for (int i = 0; i < length; ++i) {
+            order[i] = i;
+        }
+        IntList.stableSort(order, (left, right) -> compareEntries(
+                entryIds[left], entryOffsets[left],
+                entryIds[right], entryOffsets[right]));
+        return order;
+    }
+
+    @Override
+    public int search(String term, int limit, AutocompleteQuery query,
+            IntList result) {
+        int from = lowerBound(term);
+        int to = prefixEnd(term, from);
+        int cost = 2 * (32 - Integer.numberOfLeadingZeros(size));
+        if (preserveOrder) {
+            // collect the whole range, then restore the order of the values
+            IntList matches = new IntList(to - from);
+            for (int i = from; i < to; ++i) {
+                if (!tombstones.get(ids[i])) {
+                    matches.add(ids[i]);
+                }
+            }
+            matches.sort(0);
+            int previous = -1;
+            int count = matches.size();
+            int added = 0;
+            for (int i = 0; i < count && (limit <= 0 || added < limit); ++i) {
+                int id = matches.get(i);
+                if (id != previous) {
+                    result.add(id);
+                    previous = id;
+                    ++added;
+                }
+            }
+            return cost + to - from;
+        }
+        Set<Integer> seen = new HashSet<>();
+        int i = from;
+        for (; i < to && (limit <= 0 || seen.size() < limit); ++i) {
+            if (!tombstones.get(ids[i]) && seen.add(ids[i])) {
+                result.add(ids[i]);
+            }
+        }
+        return cost + i - from;
+    }
+
+    /**
+     * Finds the position of the first entry whose text is not less than the
+     * given term.
+     */
+    private int lowerBound(String term) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compareToTerm(mid, term) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Finds the end of the range of entries whose text starts with the given
+     * term.
+     */
+    private int prefixEnd(String term, int from) {
+        int low = from;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (search.get(ids[mid]).startsWith(term, offsets[mid])) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private int compareToTerm(int entry, String term) {
+        String value = search.get(ids[entry]);
+        int offset = offsets[entry];
+        int valueLength = value.length() - offset;
+        int length = Math.min(valueLength, term.length());
+        for (int i = 0; i < length; ++i) {
+            char c1 = value.charAt(offset + i);
+            char c2 = term.charAt(i);
+            if (c1 != c2) {
+                return c1 - c2;
+            }
+        }
+        return valueLength - term.length();
+    }
+
+}
@@ -0,0 +1,395 @@
+/*
+ * Copyright 2017 Max Schuster.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.maxschuster.vaadin.autocompletetextfield;
+
+import com.sun.management.ThreadMXBean;
+import com.vaadin.server.VaadinRequest;
+import com.vaadin.ui.UI;
+import elemental.json.Json;
+import elemental.json.JsonArray;
+import elemental.json.JsonValue;
+import eu.maxschuster.vaadin.autocompletetextfield.provider.CollectionSuggestionProvider;
+import eu.maxschuster.vaadin.autocompletetextfield.provider.MatchMode;
+import eu.maxschuster.vaadin.autocompletetextfield.provider.TwoPhaseSuggestionProvider;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AutocompleteTextFieldExtensionTest {
+
+    /**
+     * Runs {@link #access(java.lang.Runnable)} right away while holding the
+     * lock of the UI, which stands in for the lock of the session.
+     */
+    private static class TestUI extends UI {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected void init(VaadinRequest request) {
+        }
+
+        @Override
+        public Future<Void> access(Runnable runnable) {
+            synchronized (this) {
+                runnable.run();
+            }
+            return null;
+        }
+
+    }
+
+    /**
+     * Records the calls of JavaScript functions like
+     * {@code "setSuggestions 3 [Bern, Berlin] false"}.
+     */
+    private static class TestExtension extends AutocompleteTextFieldExtension {
+
+        private static final long serialVersionUID = 1L;
+
+        private final TestUI ui = new TestUI();
+
+        private final List<String> calls = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public UI getUI() {
+            return ui;
+        }
+
+        @Override
+        protected void callFunction(String name, Object... arguments) {
+            JsonArray suggestions = (JsonArray) arguments[1];
+            List<String> values = new ArrayList<>();
+            for (int i = 0; i < suggestions.length(); ++i) {
+                values.add(suggestions.getObject(i).getString("value"));
+            }
+            calls.add(name + " " + (int) Double.parseDouble(((JsonValue) arguments[0]).toJson())
+                    + " " + values + " " + arguments[2]);
+        }
+
+        /**
+         * Sends a term like the client-side without writing the response.
+         */
+        void send(int requestId, String term) {
+            send(arguments(requestId, term));
+        }
+
+        /**
+         * Sends the given arguments like the client-side without writing the
+         * response.
+         */
+        void send(JsonArray arguments) {
+            synchronized (ui) {
+                jsQuerySuggestions(arguments);
+            }
+        }
+
+        /**
+         * Creates the arguments the client-side sends for a term.
+         */
+        static JsonArray arguments(int requestId, String term) {
+            JsonArray arguments = Json.createArray();
+            arguments.set(0, Json.create(requestId));
+            arguments.set(1, term);
+            return arguments;
+        }
+
+        /**
+         * Writes the response, which executes the latest query.
+         */
+        void respond() {
+            synchronized (ui) {
+                beforeClientResponse(false);
+            }
+        }
+
+        /**
+         * Sends a term like the client-side and writes the response.
+         */
+        void query(int requestId, String term) {
+            send(requestId, term);
+            respond();
+        }
+
+        /**
+         * Waits until the given number of JavaScript functions has been
+         * called.
+         */
+        List<String> awaitCalls(int count) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (calls.size() < count && System.nanoTime() - deadline < 0) {
+                Thread.sleep(1);
+            }
+            synchronized (calls) {
+                return new ArrayList<>(calls);
+            }
+        }
+
+    }
+
+    /**
+     * Drops the calls of JavaScript functions.
+     */
+    private static class SilentExtension extends TestExtension {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected void callFunction(String name, Object... arguments) {
+        }
+
+    }
+
+    @Test
+    public void steadyStateQueryAllocatesOnlyThePayload() {
+        if (!(ManagementFactory.getThreadMXBean() instanceof ThreadMXBean)) {
+            return; // allocation counting not supported by this JVM
+        }
+        ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        List<String> values = new ArrayList<>();
+        for (int i = 0; i < 3000; ++i) {
+            values.add(Integer.toString(i * 7919 % 3001, 6) + (i % 2 == 0 ? "-Ab" : "-aB"));
+        }
+        CollectionSuggestionProvider provider = new CollectionSuggestionProvider(
+                values, MatchMode.BEGINS, true, Locale.ROOT)
+                .withSharedSuggestions(true);
+        SilentExtension extension = new SilentExtension();
+        extension.setSuggestionLimit(10);
+        extension.setSuggestionProvider(provider);
+        List<String> terms = Arrays.asList("1", "12", "123-AB", "2-aB", "4", "X");
+        List<JsonArray> arguments = new ArrayList<>();
+        List<List<AutocompleteSuggestion>> results = new ArrayList<>();
+        for (String term : terms) {
+            arguments.add(TestExtension.arguments(arguments.size(), term));
+            results.add(new ArrayList<>(extension.querySuggestions(term)));
+        }
+        int keystrokes = 2000 * terms.size();
+        for (int round = 0; round < 2; ++round) {
+            // the first round warms up the caches and the buffers
+            long before = threads.getThreadAllocatedBytes(thread);
+            for (int i = 0; i < 2000; ++i) {
+                for (JsonArray argument : arguments) {
+                    extension.send(argument);
+                    extension.respond();
+                }
+            }
+            long query = threads.getThreadAllocatedBytes(thread) - before;
+            before = threads.getThreadAllocatedBytes(thread);
+            for (int i = 0; i < 2000; ++i) {
+                for (List<AutocompleteSuggestion> result : results) {
+                    extension.suggestionsToJson(result);
+                }
+            }
+            long payload = threads.getThreadAllocatedBytes(thread) - before;
+            if (round == 1) {
+                // the query and the folded term of each keystroke remain
+                long overhead = (query - payload) / keystrokes;
+                Assert.assertTrue(overhead + " bytes allocated per keystroke",
+                        overhead < 256);
+            }
+        }
+        Assert.assertEquals(10, results.get(0).size());
+        Assert.assertTrue(results.get(0).get(0).isReadOnly());
+    }
+
+    @Test
+    public void skipsRefineWhenFirstSuggestionsReachTheLimit() throws Exception {
+        AtomicInteger slowCalls = new AtomicInteger();
+        TwoPhaseSuggestionProvider provider = new TwoPhaseSuggestionProvider(
+                new CollectionSuggestionProvider(Arrays.asList("Berlin", "Bern"),
+                        MatchMode.BEGINS, true, Locale.ROOT),
+                query -> {
+                    slowCalls.incrementAndGet();
+                    return Arrays.asList(new AutocompleteSuggestion("Bergen"));
+                });
+        TestExtension extension = new TestExtension();
+        extension.setSuggestionLimit(2);
+        extension.setSuggestionProvider(provider);
+        extension.query(1, "ber");
+        Assert.assertEquals(Arrays.asList("setSuggestions 1 [Berlin, Bern] false"),
+                extension.calls);
+
+        extension.setSuggestionLimit(3);
+        extension.query(2, "ber");
+        Assert.assertEquals(Arrays.asList("setSuggestions 1 [Berlin, Bern] false",
+                "setSuggestions 2 [Berlin, Bern] true",
+                "updateSuggestions 2 [Berlin, Bern, Bergen] false"),
+                extension.awaitCalls(3));
+        Assert.assertEquals(1, slowCalls.get());
+    }
+
+    @Test
+    public void backgroundQueriesRunOneAfterAnother() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<String> terms = Collections.synchronizedList(new ArrayList<>());
+        TestExtension extension = new TestExtension();
+        extension.setExecutionMode(AutocompleteTextFieldExtension.ExecutionMode.BACKGROUND);
+        extension.setSuggestionProvider(query -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            terms.add(query.getTerm());
+            started.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            running.decrementAndGet();
+            return Arrays.asList(new AutocompleteSuggestion(query.getTerm()));
+        });
+        extension.query(1, "a");
+        Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+        extension.query(2, "ab");
+        extension.query(3, "abc");
+        release.countDown();
+
+        List<String> calls = extension.awaitCalls(1);
+        Assert.assertEquals(Arrays.asList("setSuggestions 3 [abc] false"), calls);
+        // "a" ran to its end, "ab" has been skipped while it was waiting
+        Assert.assertEquals(Arrays.asList("a", "abc"), terms);
+        Assert.assertEquals(1, maxRunning.get());
+    }
+
+    /**
+     * An {@link AsyncAutocompleteSuggestionProvider} completed by the test.
+     */
+    private static class ManualProvider implements AsyncAutocompleteSuggestionProvider {
+
+        private static final long serialVersionUID = 1L;
+
+        final List<AutocompleteQuery> queries = new ArrayList<>();
+
+        final List<CompletableFuture<Collection<AutocompleteSuggestion>>> futures
+                = new ArrayList<>();
+
+        @Override
+        public CompletableFuture<Collection<AutocompleteSuggestion>> querySuggestionsAsync(
+                AutocompleteQuery query) {
+            CompletableFuture<Collection<AutocompleteSuggestion>> future
+                    = new CompletableFuture<>();
+            queries.add(query);
+            futures.add(future);
+            return future;
+        }
+
+        void complete(int index, String... values) {
+            List<AutocompleteSuggestion> suggestions = new ArrayList<>();
+            for (String value : values) {
+                suggestions.add(new AutocompleteSuggestion(value));
+            }
+            futures.get(index).complete(suggestions);
+        }
+
+    }
+
+    @Test
+    public void deliversAsyncResultThroughAccess() {
+        ManualProvider provider = new ManualProvider();
+        TestExtension extension = new TestExtension();
+        extension.setSuggestionProvider(provider);
+        extension.query(1, "ber");
+        Assert.assertEquals(1, provider.queries.size());
+        Assert.assertTrue(extension.calls.isEmpty()); // the lock is released
+
+        provider.complete(0, "Berlin", "Bern");
+        Assert.assertEquals(Arrays.asList("setSuggestions 1 [Berlin, Bern] false"),
+                extension.calls);
+    }
+
+    @Test
+    public void dropsResultsOfSupersededQueries() {
+        ManualProvider provider = new ManualProvider();
+        TestExtension extension = new TestExtension();
+        extension.setSuggestionProvider(provider);
+        extension.query(1, "b");
+        extension.query(2, "be");
+        extension.query(3, "ber");
+
+        provider.complete(2, "Berlin");
+        provider.complete(0, "Bonn");
+        provider.complete(1, "Bern");
+        Assert.assertEquals(Arrays.asList("setSuggestions 3 [Berlin] false"),
+                extension.calls);
+    }
+
+    @Test
+    public void answersFailedQueriesWithoutSuggestions() {
+        ManualProvider provider = new ManualProvider();
+        TestExtension extension = new TestExtension();
+        extension.setSuggestionProvider(provider);
+        extension.query(1, "ber");
+        provider.futures.get(0).completeExceptionally(
+                new IllegalStateException("database down"));
+        // the client-side stops waiting
+        Assert.assertEquals(Arrays.asList("setSuggestions 1 [] false"), extension.calls);
+    }
+
+    @Test
+    public void executesOnlyTheLatestPendingQuery() {
+        List<String> terms = new ArrayList<>();
+        TestExtension extension = new TestExtension();
+        extension.setSuggestionProvider(query -> {
+            terms.add(query.getTerm());
+            return Arrays.asList(new AutocompleteSuggestion(query.getTerm()));
+        });
+        extension.send(1, "b");
+        extension.send(2, "be");
+        extension.send(3, "ber");
+        extension.respond();
+        Assert.assertEquals(Arrays.asList("ber"), terms);
+        Assert.assertEquals(Arrays.asList("setSuggestions 3 [ber] false"), extension.calls);
+
+        extension.respond(); // nothing pending
+        Assert.assertEquals(1, extension.calls.size());
+    }
+
+    @Test
+    public void cancelsSupersededQueries() {
+        ManualProvider provider = new ManualProvider();
+        TestExtension extension = new TestExtension();
+        extension.setSuggestionProvider(provider);
+        extension.query(1, "b");
+        Assert.assertFalse(provider.queries.get(0).isCancelled());
+
+        // the running query is cancelled as soon as a new term arrives
+        extension.send(2, "be");
+        Assert.assertTrue(provider.queries.get(0).isCancelled());
+        Assert.assertTrue(provider.futures.get(0).isCancelled());
+        extension.respond();
+        Assert.assertFalse(provider.queries.get(1).isCancelled());
+
+        // so is the query of a replaced provider
+        extension.setSuggestionProvider(null);
+        Assert.assertTrue(provider.queries.get(1).isCancelled());
+        Assert.assertTrue(provider.futures.get(1).isCancelled());
+        Assert.assertTrue(extension.calls.isEmpty());
+    }
+
+}
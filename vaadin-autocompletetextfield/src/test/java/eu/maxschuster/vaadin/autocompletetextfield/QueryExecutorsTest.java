@@ -0,0 +1,72 @@
+/*
+ * Copyright 2017 Max Schuster.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.maxschuster.vaadin.autocompletetextfield;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class QueryExecutorsTest {
+
+    @Test
+    public void detectsVirtualThreads() throws Exception {
+        boolean supported;
+        try {
+            Thread.class.getMethod("ofVirtual");
+            supported = true;
+        } catch (NoSuchMethodException ex) {
+            supported = false;
+        }
+        Assert.assertEquals(supported, QueryExecutors.isVirtual());
+        Future<String> result = QueryExecutors.getDefault().submit(
+                () -> Thread.currentThread().getName());
+        Assert.assertNotNull(result.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void poolIsBounded() throws Exception {
+        ExecutorService pool = QueryExecutors.createPool();
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            int capacity = QueryExecutors.POOL_SIZE + QueryExecutors.QUEUE_CAPACITY;
+            for (int i = 0; i < capacity; ++i) {
+                pool.execute(() -> {
+                    try {
+                        release.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            }
+            try {
+                pool.execute(() -> {
+                });
+                Assert.fail("RejectedExecutionException expected");
+            } catch (RejectedExecutionException ex) {
+                // expected
+            }
+        } finally {
+            release.countDown();
+            pool.shutdown();
+        }
+        Assert.assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2017 Max Schuster.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.maxschuster.vaadin.autocompletetextfield.provider;
+
+import eu.maxschuster.vaadin.autocompletetextfield.AutocompleteQuery;
+import eu.maxschuster.vaadin.autocompletetextfield.AutocompleteSuggestion;
+import eu.maxschuster.vaadin.autocompletetextfield.AutocompleteSuggestionProvider;
+import eu.maxschuster.vaadin.autocompletetextfield.AutocompleteTextFieldExtension;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CachingSuggestionProviderTest {
+
+    private static List<String> query(AutocompleteSuggestionProvider provider,
+            String term, int limit) {
+        AutocompleteQuery query = new AutocompleteQuery(
+                new AutocompleteTextFieldExtension(), term, limit);
+        List<String> result = new ArrayList<>();
+        for (AutocompleteSuggestion suggestion : provider.querySuggestions(query)) {
+            result.add(suggestion.getValue());
+        }
+        return result;
+    }
+
+    private static class TestCache extends CachingSuggestionProvider {
+
+        private static final long serialVersionUID = 1L;
+
+        private long time;
+
+        TestCache(AutocompleteSuggestionProvider delegate) {
+            super(delegate, 2, Duration.ofNanos(100), true, Locale.ROOT);
+        }
+
+        @Override
+        long currentTime() {
+            return time;
+        }
+
+    }
+
+    @Test
+    public void cachesByNormalizedTermAndLimit() {
+        int[] calls = new int[1];
+        CollectionSuggestionProvider values = new CollectionSuggestionProvider(
+                Arrays.asList("Java", "JavaScript", "Go", "Jython"),
+                MatchMode.BEGINS, true, Locale.ROOT);
+        TestCache cache = new TestCache(query -> {
+            ++calls[0];
+            return Arrays.asList(new AutocompleteSuggestion("x"), null);
+        });
+        Assert.assertEquals(Arrays.asList("x"), query(cache, "Jav", 0));
+        Assert.assertEquals(Arrays.asList("x"), query(cache, "JAV", 0));
+        Assert.assertEquals(1, calls[0]);
+        query(cache, "jav", 1);
+        Assert.assertEquals(2, calls[0]);
+        Assert.assertEquals(1, cache.getHitCount());
+        Assert.assertEquals(2, cache.getMissCount());
+
+        // least recently used entry is evicted
+        query(cache, "jav", 0);
+        query(cache, "go", 0);
+        Assert.assertEquals(2, cache.getSize());
+        query(cache, "jav", 1);
+        Assert.assertEquals(4, calls[0]);
+
+        // expired entries are queried again
+        cache.time = 100;
+        query(cache, "go", 0);
+        Assert.assertEquals(5, calls[0]);
+
+        cache.invalidate();
+        Assert.assertEquals(0, cache.getSize());
+        query(cache, "go", 0);
+        Assert.assertEquals(6, calls[0]);
+
+        CachingSuggestionProvider collection = new CachingSuggestionProvider(values);
+        Assert.assertEquals(Arrays.asList("Java", "JavaScript"), query(collection, "jav", 0));
+        values.addValue("Javelin");
+        Assert.assertEquals(Arrays.asList("Java", "JavaScript"), query(collection, "jav", 0));
+        collection.invalidate();
+        Assert.assertEquals(Arrays.asList("Java", "JavaScript", "Javelin"),
+                query(collection, "jav", 0));
+    }
+
+    @Test
+    public void cachedSuggestionsAreReadOnly() {
+        AutocompleteSuggestion original = new AutocompleteSuggestion("a", "b")
+                .withStyleName("c");
+        CachingSuggestionProvider cache = new CachingSuggestionProvider(
+                query -> Arrays.asList(original));
+        AutocompleteQuery query = new AutocompleteQuery(
+                new AutocompleteTextFieldExtension(), "a", 0);
+        AutocompleteSuggestion cached = cache.querySuggestions(query).iterator().next();
+        Assert.assertNotSame(original, cached);
+        Assert.assertTrue(cached.isReadOnly());
+        Assert.assertEquals("b", cached.getDescription());
+        Assert.assertEquals("c", cached.getStyleName());
+        Assert.assertFalse(original.isReadOnly());
+    }
+
+    @Test
+    public void doesNotCacheIncompleteResults() {
+        int[] calls = new int[1];
+        CachingSuggestionProvider cache = new CachingSuggestionProvider(query -> {
+            if (++calls[0] == 1) {
+                query.markIncomplete(); // ran out of time
+            }
+            return Arrays.asList(new AutocompleteSuggestion("x" + calls[0]));
+        });
+        Assert.assertEquals(Arrays.asList("x1"), query(cache, "x", 0));
+        Assert.assertEquals(0, cache.getSize());
+        Assert.assertEquals(Arrays.asList("x2"), query(cache, "x", 0));
+        Assert.assertEquals(Arrays.asList("x2"), query(cache, "x", 0));
+        Assert.assertEquals(2, calls[0]);
+    }
+
+}
@@ -0,0 +1,506 @@
+/*
+ * Copyright 2017 Max Schuster.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.maxschuster.vaadin.autocompletetextfield.provider;
+
+import eu.maxschuster.vaadin.autocompletetextfield.AutocompleteQuery;
+import eu.maxschuster.vaadin.autocompletetextfield.AutocompleteSuggestion;
+import eu.maxschuster.vaadin.autocompletetextfield.AutocompleteSuggestionProvider;
+import eu.maxschuster.vaadin.autocompletetextfield.AutocompleteTextFieldExtension;
+import eu.maxschuster.vaadin.autocompletetextfield.RefinableSuggestionProvider;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CollectionSuggestionProviderTest {
+
+    private static final List<String> LANGUAGES = Arrays.asList(
+            "Java", "JavaScript", "Go", "Jython", "java", "C", "Julia", "C++");
+
+    private static List<String> query(AutocompleteSuggestionProvider provider,
+            String term, int limit) {
+        AutocompleteQuery query = new AutocompleteQuery(
+                new AutocompleteTextFieldExtension(), term, limit);
+        List<String> result = new ArrayList<>();
+        for (AutocompleteSuggestion suggestion : provider.querySuggestions(query)) {
+            result.add(suggestion.getValue());
+        }
+        return result;
+    }
+
+    @Test
+    public void beginsPreservesOrder() {
+        CollectionSuggestionProvider provider = new CollectionSuggestionProvider(
+                LANGUAGES, MatchMode.BEGINS, true, Locale.ROOT);
+        Assert.assertEquals(Arrays.asList("Java", "JavaScript", "java"),
+                query(provider, "JAV", 0));
+        Assert.assertEquals(Arrays.asList("Java", "JavaScript", "Jython"),
+                query(provider, "j", 3));
+    }
+
+    @Test
+    public void beginsSortedWithInsertionOrderTieBreak() {
+        CollectionSuggestionProvider provider = new CollectionSuggestionProvider(
+                LANGUAGES, MatchMode.BEGINS, true, Locale.ROOT)
+                .withPreserveOrder(false);
+        Assert.assertEquals(Arrays.asList("Java", "java", "JavaScript", "Julia"),
+                query(provider, "j", 4));
+        Assert.assertEquals(Arrays.asList("C", "C++"), query(provider, "c", 0));
+        Assert.assertEquals(Arrays.asList(), query(provider, "x", 0));
+    }
+
+    @Test
+    public void contains() {
+        CollectionSuggestionProvider provider = new CollectionSuggestionProvider(
+                LANGUAGES, MatchMode.CONTAINS);
+        Assert.assertEquals(Arrays.asList("Java", "JavaScript"),
+                query(provider, "va", 2));
+        Assert.assertEquals(Arrays.asList("C++"), query(provider, "+", 0));
+    }
+
+    @Test
+    public void indexMatchesScan() {
+        List<String> values = new ArrayList<>();
+        for (int i = 0; i < 3000; ++i) {
+            values.add(Integer.toString(i * 7919 % 3001, 6) + "-" + (i % 7 == 0 ? "Ab" : "aB")
+                    + (i % 5 == 0 ? " " + Integer.toString(i, 3) : ""));
+        }
+        CollectionSuggestionProvider indexed = new CollectionSuggestionProvider(
+                values, MatchMode.CONTAINS, true, Locale.ROOT);
+        CollectionSuggestionProvider scan = new CollectionSuggestionProvider(
+                values, MatchMode.CONTAINS, true, Locale.ROOT).withIndexed(false);
+        for (MatchMode matchMode : EnumSet.complementOf(EnumSet.of(MatchMode.FUZZY))) {
+            indexed.setMatchMode(matchMode);
+            scan.setMatchMode(matchMode);
+            for (String term : Arrays.asList("1", "12", "123", "4-a", "0-ab", "ab 1",
+                    "1234", "5555-ab", "ab", "-", "x", "55x")) {
+                for (int limit : new int[]{0, 1, 10}) {
+                    Assert.assertEquals(matchMode + "/" + term + "/" + limit,
+                            query(scan, term, limit), query(indexed, term, limit));
+                }
+            }
+        }
+        indexed.setMatchMode(MatchMode.CONTAINS);
+        scan.setMatchMode(MatchMode.CONTAINS);
+        query(indexed, "5555", 0);
+        query(scan, "5555", 0);
+        Assert.assertTrue(indexed.getLastQueryCost() < scan.getLastQueryCost() / 10);
+    }
+
+    @Test
+    public void containsScanMatchesIndex() {
+        List<String> values = new ArrayList<>(Arrays.asList("İstanbul", "ISTANBUL",
+                "Kelvin K", "Straße", "STRASSE", "Ǆemal", "ǅemal", "ǆemal",
+                "Σίσυφος", "ΣΊΣΥΦΟΣ", "Zürich", "ZÜRICH"));
+        StringBuilder longValue = new StringBuilder();
+        for (int i = 0; i < 10; ++i) {
+            longValue.append("Long Value ").append(i);
+        }
+        values.add(longValue.toString());
+        for (Locale locale : Arrays.asList(Locale.ROOT, Locale.forLanguageTag("tr"))) {
+            for (boolean ignoreDiacritics : new boolean[]{false, true}) {
+                CollectionSuggestionProvider indexed = new CollectionSuggestionProvider(
+                        values, MatchMode.CONTAINS, true, locale)
+                        .withIgnoreDiacritics(ignoreDiacritics);
+                CollectionSuggestionProvider scan = new CollectionSuggestionProvider(
+                        values, MatchMode.CONTAINS, true, locale)
+                        .withIgnoreDiacritics(ignoreDiacritics).withIndexed(false);
+                query(scan, "x", 0); // build the buffer before the updates
+                scan.addValue("Late İzmir");
+                indexed.addValue("Late İzmir");
+                scan.removeValue("ISTANBUL");
+                indexed.removeValue("ISTANBUL");
+                for (String term : Arrays.asList("ist", "İST", "k", "kelvin k", "ß",
+                        "ss", "ǆ", "ǅe", "σ", "ΣΥΦ", "üri", "uri", "izmir", "İzmir",
+                        "e", longValue.toString(), "value 9", "x")) {
+                    for (int limit : new int[]{0, 1}) {
+                        Assert.assertEquals(locale + "/" + ignoreDiacritics + "/"
+                                + term + "/" + limit, query(indexed, term, limit),
+                                query(scan, term, limit));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void concurrentQueriesMatchSequentialOnes() throws Exception {
+        List<String> values = new ArrayList<>();
+        for (int i = 0; i < 3000; ++i) {
+            values.add(Integer.toString(i * 7919 % 3001, 6) + "-" + (i % 7 == 0 ? "Ab" : "aB"));
+        }
+        List<String> terms = Arrays.asList("1", "12", "4-a", "0-ab", "ab", "-", "55x");
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            for (MatchMode matchMode : MatchMode.values()) {
+                for (boolean indexed : new boolean[]{true, false}) {
+                    CollectionSuggestionProvider sequential = new CollectionSuggestionProvider(
+                            values, matchMode, true, Locale.ROOT).withIndexed(indexed);
+                    List<List<String>> expected = new ArrayList<>();
+                    for (String term : terms) {
+                        expected.add(query(sequential, term, 10));
+                    }
+                    // a new provider, so the threads also race to build the index
+                    CollectionSuggestionProvider provider = new CollectionSuggestionProvider(
+                            values, matchMode, true, Locale.ROOT).withIndexed(indexed)
+                            .withSharedSuggestions(true);
+                    CountDownLatch start = new CountDownLatch(1);
+                    List<Future<?>> futures = new ArrayList<>();
+                    for (int t = 0; t < 4; ++t) {
+                        int offset = t;
+                        futures.add(executor.submit(() -> {
+                            start.await();
+                            List<AutocompleteSuggestion> collected = new ArrayList<>();
+                            List<String> result = new ArrayList<>();
+                            for (int i = 0; i < 50; ++i) {
+                                int term = (i + offset) % terms.size();
+                                collected.clear();
+                                result.clear();
+                                provider.collectSuggestions(new AutocompleteQuery(
+                                        new AutocompleteTextFieldExtension(),
+                                        terms.get(term), 10), collected);
+                                for (AutocompleteSuggestion suggestion : collected) {
+                                    result.add(suggestion.getValue());
+                                }
+                                Assert.assertEquals(matchMode + "/" + indexed + "/"
+                                        + terms.get(term), expected.get(term), result);
+                            }
+                            return null;
+                        }));
+                    }
+                    start.countDown();
+                    for (Future<?> future : futures) {
+                        future.get(30, TimeUnit.SECONDS);
+                    }
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void signaturesSkipValues() {
+        List<String> values = new ArrayList<>();
+        for (int i = 0; i < 1000; ++i) {
+            values.add(i % 100 == 0 ? "Quiz " + i : "Plain value number " + i);
+        }
+        for (MatchMode matchMode : Arrays.asList(MatchMode.BEGINS, MatchMode.CONTAINS)) {
+            CollectionSuggestionProvider provider = new CollectionSuggestionProvider(
+                    values, matchMode, true, Locale.ROOT).withIndexed(false);
+            // only the values containing all chars of the term are compared
+            Assert.assertEquals(Arrays.asList("Quiz 200"), query(provider, "QUIZ 2", 0));
+            Assert.assertEquals(1, provider.getLastQueryCost());
+            provider.removeAll(Arrays.asList("Quiz 0", "Plain value number 1"));
+            provider.addValue("Quiz 0");
+            Assert.assertEquals(10, query(provider, "quiz", 0).size());
+            Assert.assertEquals(10, provider.getLastQueryCost());
+            Assert.assertEquals(Arrays.asList("Quiz 0"), query(provider, "quiz 0", 0));
+        }
+    }
+
+    private static class TestExtension extends AutocompleteTextFieldExtension {
+
+        private static final long serialVersionUID = 1L;
+
+        List<String> query(String term) {
+            List<String> result = new ArrayList<>();
+            for (AutocompleteSuggestion suggestion : querySuggestions(term)) {
+                result.add(suggestion.getValue());
+            }
+            return result;
+        }
+
+        Collection<AutocompleteSuggestion> suggestions(String term) {
+            return querySuggestions(term);
+        }
+
+    }
+
+    @Test
+    public void refinesPreviousCandidates() {
+        List<String> values = new ArrayList<>();
+        for (int i = 0; i < 2000; ++i) {
+            values.add(Integer.toString(i * 7919 % 2003, 5) + (i % 3 == 0 ? " Java" : "-Go"));
+        }
+        for (MatchMode matchMode : EnumSet.complementOf(EnumSet.of(MatchMode.FUZZY))) {
+            CollectionSuggestionProvider provider = new CollectionSuggestionProvider(
+                    values, matchMode, true, Locale.ROOT).withIndexed(false);
+            CollectionSuggestionProvider expected = new CollectionSuggestionProvider(
+                    values, matchMode, true, Locale.ROOT);
+            TestExtension extension = new TestExtension();
+            extension.setSuggestionProvider(provider);
+            extension.setSuggestionLimit(5);
+            int previousMatches = values.size();
+            for (String term : Arrays.asList("1", "12", "12 J", "12 JAVA", "12 j",
+                    "12 ja", "3", "3-", "3-go")) {
+                Assert.assertEquals(matchMode + "/" + term,
+                        query(expected, term, 5), extension.query(term));
+                if (term.length() > 1 && !"12 j".equals(term) && !"3".equals(term)) {
+                    // refined, only the previous matches have been compared
+                    Assert.assertTrue(matchMode + "/" + term,
+                            provider.getLastQueryCost() <= previousMatches);
+                }
+                previousMatches = query(expected, term, 0).size();
+            }
+            provider.removeValue(values.get(0));
+            expected.removeValue(values.get(0));
+            Assert.assertEquals(query(expected, "3-go", 5), extension.query("3-go"));
+        }
+    }
+
+    @Test
+    public void incrementalUpdatesMatchRebuild() {
+        List<String> values = new ArrayList<>();
+        for (int i = 0; i < 500; ++i) {
+            values.add(Integer.toString(i * 7919 % 503, 5) + (i % 3 == 0 ? " Ab" : "-aB"));
+        }
+        for (MatchMode matchMode : MatchMode.values()) {
+            for (boolean preserveOrder : new boolean[]{true, false}) {
+                CollectionSuggestionProvider incremental = new CollectionSuggestionProvider(
+                        values.subList(0, 300), matchMode, true, Locale.ROOT)
+                        .withPreserveOrder(preserveOrder);
+                // builds its index only after the removals
+                CollectionSuggestionProvider lazy = new CollectionSuggestionProvider(
+                        values.subList(0, 300), matchMode, true, Locale.ROOT)
+                        .withPreserveOrder(preserveOrder);
+                List<String> expected = new ArrayList<>(values.subList(0, 300));
+                query(incremental, "1", 0); // build the index
+                for (int i = 300; i < 500; i += 50) {
+                    for (CollectionSuggestionProvider provider : Arrays.asList(incremental, lazy)) {
+                        provider.addAll(values.subList(i, i + 50));
+                        provider.removeValue(values.get(i - 1));
+                        provider.removeAll(values.subList(i - 150, i - 140));
+                    }
+                    expected.addAll(values.subList(i, i + 50));
+                    expected.remove(values.get(i - 1));
+                    expected.removeAll(values.subList(i - 150, i - 140));
+                }
+                // the removed values are still in the lists and the indexes
+                assertMatchesRebuild(incremental, expected, matchMode, preserveOrder);
+                assertMatchesRebuild(lazy, expected, matchMode, preserveOrder);
+
+                // more removed than remaining values, compacts the lists
+                List<String> bulk = new ArrayList<>(expected.subList(0, 250));
+                incremental.removeAll(bulk);
+                expected.removeAll(bulk);
+                incremental.addValue("Zz Ab");
+                expected.add("Zz Ab");
+                assertMatchesRebuild(incremental, expected, matchMode, preserveOrder);
+            }
+        }
+    }
+
+    private static void assertMatchesRebuild(CollectionSuggestionProvider incremental,
+            List<String> expected, MatchMode matchMode, boolean preserveOrder) {
+        CollectionSuggestionProvider rebuilt = new CollectionSuggestionProvider(
+                expected, matchMode, true, Locale.ROOT)
+                .withPreserveOrder(preserveOrder);
+        Assert.assertEquals(expected, new ArrayList<>(incremental.getValues()));
+        Assert.assertEquals(rebuilt, incremental);
+        for (String term : Arrays.asList("1", "12", "ab", "-ab", "0 a",
+                "4321", "zz", "x")) {
+            for (int limit : new int[]{0, 5}) {
+                Assert.assertEquals(matchMode + "/" + term + "/" + limit,
+                        query(rebuilt, term, limit),
+                        query(incremental, term, limit));
+            }
+        }
+    }
+
+    @Test
+    public void collectsThroughOverriddenQuery() {
+        CollectionSuggestionProvider custom = new CollectionSuggestionProvider(
+                Arrays.asList("Java", "JavaScript", "Go"), MatchMode.BEGINS, true,
+                Locale.ROOT) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public Collection<AutocompleteSuggestion> querySuggestions(AutocompleteQuery query) {
+                Collection<AutocompleteSuggestion> suggestions = super.querySuggestions(query);
+                for (AutocompleteSuggestion suggestion : suggestions) {
+                    suggestion.setDescription("About " + suggestion.getValue());
+                }
+                return suggestions;
+            }
+
+        }.withIndexed(false).withSharedSuggestions(true);
+        TestExtension extension = new TestExtension();
+        extension.setSuggestionProvider(custom);
+        for (String term : Arrays.asList("j", "ja", "jav")) {
+            for (AutocompleteSuggestion suggestion : extension.suggestions(term)) {
+                Assert.assertEquals("About " + suggestion.getValue(),
+                        suggestion.getDescription());
+            }
+        }
+
+        // without an override only collectSuggestions shares suggestions
+        CollectionSuggestionProvider provider = new CollectionSuggestionProvider(
+                Arrays.asList("Java"), MatchMode.BEGINS, true, Locale.ROOT);
+        AutocompleteQuery query = new AutocompleteQuery(extension, "j", 0);
+        List<AutocompleteSuggestion> collected = new ArrayList<>();
+        provider.collectSuggestions(query, collected);
+        Assert.assertFalse(collected.get(0).isReadOnly());
+        provider.setSharedSuggestions(true);
+        collected.clear();
+        provider.collectSuggestions(query, collected);
+        Assert.assertTrue(collected.get(0).isReadOnly());
+        Assert.assertFalse(provider.querySuggestions(query).iterator().next().isReadOnly());
+    }
+
+    @Test
+    public void fuzzyRanksByDistance() {
+        CollectionSuggestionProvider provider = new CollectionSuggestionProvider(
+                Arrays.asList("Zurich", "Zürich", "Zug", "Basel", "Bern",
+                        "Zuerich", "Turin", "Zurück"),
+                MatchMode.FUZZY, true, Locale.ROOT);
+        Assert.assertEquals(Arrays.asList("Zurich", "Zürich", "Zuerich", "Zurück"),
+                query(provider, "zuric", 0));
+        Assert.assertEquals(Arrays.asList("Zurich", "Zürich"),
+                query(provider, "zurich", 2));
+        Assert.assertEquals(Arrays.asList("Bern"), query(provider, "bsr", 0));
+        // short terms must match exactly
+        Assert.assertEquals(Arrays.asList("Zurich", "Zug", "Zuerich", "Zurück"),
+                query(provider, "zu", 0));
+        provider.setMaxEditDistance(2);
+        Assert.assertEquals(Arrays.asList("Zurich", "Zürich", "Zuerich", "Zurück"),
+                query(provider, "zurich", 0));
+    }
+
+    @Test
+    public void ignoreDiacritics() {
+        CollectionSuggestionProvider provider = new CollectionSuggestionProvider(
+                Arrays.asList("Zürich", "Zug", "Genève", "Ærøskøbing", "ﬁnal", "ZURICH"),
+                MatchMode.BEGINS, true, Locale.ROOT).withIgnoreDiacritics(true);
+        Assert.assertEquals(Arrays.asList("Zürich", "ZURICH"), query(provider, "zurich", 0));
+        Assert.assertEquals(Arrays.asList("Zürich", "ZURICH"), query(provider, "ZÜR", 0));
+        Assert.assertEquals(Arrays.asList("Genève"), query(provider, "geneve", 0));
+        Assert.assertEquals(Arrays.asList("ﬁnal"), query(provider, "fi", 0));
+        provider.setIgnoreCase(false);
+        Assert.assertEquals(Arrays.asList("Zürich"), query(provider, "Zur", 0));
+        provider.setIgnoreDiacritics(false);
+        Assert.assertEquals(Arrays.asList(), query(provider, "Zur", 0));
+
+        TextFolding folding = new TextFolding(true, true, Locale.ROOT);
+        String folded = "already folded";
+        Assert.assertSame(folded, folding.fold(folded));
+        Assert.assertEquals("mixed case", folding.fold("Mixed CASE"));
+        Assert.assertEquals("ı", new TextFolding(true, true,
+                Locale.forLanguageTag("tr")).fold("I"));
+    }
+
+    @Test
+    public void ignoreDiacriticsAfterCaseFolding() {
+        for (Locale locale : new Locale[]{Locale.ROOT, Locale.forLanguageTag("tr")}) {
+            CollectionSuggestionProvider provider = new CollectionSuggestionProvider(
+                    Arrays.asList("İzmir", "Ankara"), MatchMode.BEGINS, true, locale)
+                    .withIgnoreDiacritics(true);
+            Assert.assertEquals(locale.toString(), Arrays.asList("İzmir"),
+                    query(provider, "izmir", 0));
+            Assert.assertEquals(locale.toString(), Arrays.asList("İzmir"),
+                    query(provider, "İZMİR", 0));
+            provider.setIndexed(false);
+            Assert.assertEquals(locale.toString(), Arrays.asList("İzmir"),
+                    query(provider, "izmir", 0));
+            Assert.assertEquals("izmir", new TextFolding(true, true, locale).fold("İzmir"));
+        }
+    }
+
+    @Test
+    public void wordBegins() {
+        CollectionSuggestionProvider provider = new CollectionSuggestionProvider(
+                Arrays.asList("Java Script", "JavaScript", "TypeScript",
+                        "Objective-C", "C", "Visual Basic .NET", "ActionScript"),
+                MatchMode.WORD_BEGINS, true, Locale.ROOT);
+        Assert.assertEquals(Arrays.asList("Java Script"), query(provider, "scr", 0));
+        Assert.assertEquals(Arrays.asList("Objective-C", "C"), query(provider, "c", 0));
+        Assert.assertEquals(Arrays.asList("Visual Basic .NET"), query(provider, "net", 0));
+        Assert.assertEquals(Arrays.asList("Java Script", "JavaScript"),
+                query(provider, "java", 0));
+        Assert.assertEquals(Arrays.asList("Java Script"), query(provider, "java s", 0));
+    }
+
+    @Test
+    public void expiredQueryReturnsPartialResult() {
+        List<String> values = new ArrayList<>();
+        for (int i = 0; i < 5000; ++i) {
+            values.add((i < 3000 ? "value " : "other ") + i);
+        }
+        CollectionSuggestionProvider provider = new CollectionSuggestionProvider(
+                values, MatchMode.BEGINS, true, Locale.ROOT).withIndexed(false);
+        AutocompleteTextFieldExtension extension = new AutocompleteTextFieldExtension();
+
+        AutocompleteQuery expired = new AutocompleteQuery(extension, "other", 5,
+                Duration.ZERO);
+        Assert.assertTrue(expired.isExpired());
+        Assert.assertTrue(provider.querySuggestions(expired).isEmpty());
+        Assert.assertTrue(expired.isIncomplete());
+
+        AutocompleteQuery unlimited = new AutocompleteQuery(extension, "other", 5);
+        Assert.assertFalse(unlimited.isExpired());
+        Assert.assertEquals(5, provider.querySuggestions(unlimited).size());
+        Assert.assertFalse(unlimited.isIncomplete());
+
+        // candidates of an expired query are completed by the next refinement
+        RefinableSuggestionProvider.Candidates candidates = provider.queryCandidates(
+                new AutocompleteQuery(extension, "other", 5, Duration.ZERO));
+        AutocompleteQuery refine = new AutocompleteQuery(extension, "other 4", 0);
+        candidates = provider.refineCandidates(candidates, refine);
+        List<AutocompleteSuggestion> refined = new ArrayList<>();
+        provider.collectSuggestions(candidates, refine, refined);
+        Assert.assertEquals(1000, refined.size());
+        Assert.assertEquals("other 4000", refined.get(0).getValue());
+        Assert.assertFalse(refine.isIncomplete());
+
+        // the packed scan of CONTAINS checks the time budget as well
+        CollectionSuggestionProvider contains = new CollectionSuggestionProvider(
+                values, MatchMode.CONTAINS, true, Locale.ROOT).withIndexed(false);
+        expired = new AutocompleteQuery(extension, "other", 5, Duration.ZERO);
+        Assert.assertTrue(contains.querySuggestions(expired).isEmpty());
+        Assert.assertTrue(expired.isIncomplete());
+        candidates = contains.queryCandidates(
+                new AutocompleteQuery(extension, "other", 5, Duration.ZERO));
+        refine = new AutocompleteQuery(extension, "other 4", 0);
+        candidates = contains.refineCandidates(candidates, refine);
+        refined.clear();
+        contains.collectSuggestions(candidates, refine, refined);
+        Assert.assertEquals(1000, refined.size());
+        Assert.assertFalse(refine.isIncomplete());
+
+        // and so does the verification of the trigram candidates
+        CollectionSuggestionProvider trigrams = new CollectionSuggestionProvider(
+                values, MatchMode.CONTAINS, true, Locale.ROOT).withIndexed(true);
+        expired = new AutocompleteQuery(extension, "other", 0, Duration.ZERO);
+        int found = trigrams.querySuggestions(expired).size();
+        Assert.assertTrue(found > 0 && found < 2000);
+        Assert.assertTrue(expired.isIncomplete());
+        unlimited = new AutocompleteQuery(extension, "other", 0);
+        Assert.assertEquals(2000, trigrams.querySuggestions(unlimited).size());
+        Assert.assertFalse(unlimited.isIncomplete());
+    }
+
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2017 Max Schuster.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.maxschuster.vaadin.autocompletetextfield.provider;
+
+import eu.maxschuster.vaadin.autocompletetextfield.AutocompleteQuery;
+import eu.maxschuster.vaadin.autocompletetextfield.AutocompleteSuggestion;
+import eu.maxschuster.vaadin.autocompletetextfield.AutocompleteSuggestionProvider;
+import eu.maxschuster.vaadin.autocompletetextfield.AutocompleteTextFieldExtension;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DictionaryRegistryTest {
+
+    private static List<String> query(AutocompleteSuggestionProvider provider,
+            String term) {
+        List<String> result = new ArrayList<>();
+        for (AutocompleteSuggestion suggestion : provider.querySuggestions(
+                new AutocompleteQuery(new AutocompleteTextFieldExtension(), term, 0))) {
+            result.add(suggestion.getValue());
+        }
+        return result;
+    }
+
+    @Test
+    public void handlesShareOneProvider() throws Exception {
+        final AtomicInteger builds = new AtomicInteger();
+        DictionaryRegistry.register("languages", () -> {
+            builds.incrementAndGet();
+            return new SnapshotSuggestionProvider(
+                    Arrays.asList("Java", "JavaScript", "Go"));
+        });
+        try {
+            DictionaryHandle first = DictionaryRegistry.getHandle("languages");
+            DictionaryHandle second = DictionaryRegistry.getHandle("languages");
+            Assert.assertEquals(Arrays.asList("Java", "JavaScript"), query(first, "Ja"));
+            Assert.assertEquals(Arrays.asList("Go"), query(second, "G"));
+            Assert.assertEquals(1, builds.get());
+            Assert.assertTrue(DictionaryRegistry.isLoaded("languages"));
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                out.writeObject(first);
+            }
+            Assert.assertTrue(bytes.size() < 200);
+            DictionaryHandle copy;
+            try (ObjectInputStream in = new ObjectInputStream(
+                    new ByteArrayInputStream(bytes.toByteArray()))) {
+                copy = (DictionaryHandle) in.readObject();
+            }
+            Assert.assertEquals(Arrays.asList("Go"), query(copy, "G"));
+            Assert.assertEquals(1, builds.get());
+
+            // handles switch to a dictionary registered anew
+            DictionaryRegistry.register("languages",
+                    () -> new SnapshotSuggestionProvider(Arrays.asList("Gosu")));
+            Assert.assertEquals(Arrays.asList("Gosu"), query(first, "G"));
+        } finally {
+            DictionaryRegistry.unregister("languages");
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownDictionary() {
+        DictionaryRegistry.getHandle("unknown");
+    }
+
+}
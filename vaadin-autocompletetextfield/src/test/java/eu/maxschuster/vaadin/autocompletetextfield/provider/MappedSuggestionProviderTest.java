@@ -0,0 +1,180 @@
+/*
+ * Copyright 2017 Max Schuster.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.maxschuster.vaadin.autocompletetextfield.provider;
+
+import eu.maxschuster.vaadin.autocompletetextfield.AutocompleteQuery;
+import eu.maxschuster.vaadin.autocompletetextfield.AutocompleteSuggestion;
+import eu.maxschuster.vaadin.autocompletetextfield.AutocompleteSuggestionProvider;
+import eu.maxschuster.vaadin.autocompletetextfield.AutocompleteTextFieldExtension;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MappedSuggestionProviderTest {
+
+    private static List<String> query(AutocompleteSuggestionProvider provider,
+            String term, int limit) {
+        AutocompleteQuery query = new AutocompleteQuery(
+                new AutocompleteTextFieldExtension(), term, limit);
+        List<String> result = new ArrayList<>();
+        for (AutocompleteSuggestion suggestion : provider.querySuggestions(query)) {
+            result.add(suggestion.getValue());
+        }
+        return result;
+    }
+
+    @Test
+    public void matchesSortedCollectionProvider() throws Exception {
+        List<String> values = new ArrayList<>(Arrays.asList(
+                "Java", "JavaScript", "java", "Jython", "Julia", "Äpfel", "äpfel", ""));
+        for (int i = 0; i < 2000; ++i) {
+            values.add(Integer.toString(i * 7919 % 2003, 7) + (i % 3 == 0 ? "Ab" : "aB"));
+        }
+        Path file = Files.createTempFile("dictionary", ".bin");
+        try {
+            MappedDictionaryWriter.write(values, true, Locale.ROOT, file);
+            MappedSuggestionProvider mapped = new MappedSuggestionProvider(file);
+            Assert.assertTrue(mapped.isIgnoreCase());
+            Assert.assertEquals(Locale.ROOT, mapped.getLocale());
+            CollectionSuggestionProvider collection = new CollectionSuggestionProvider(
+                    values, MatchMode.BEGINS, true, Locale.ROOT)
+                    .withPreserveOrder(false);
+            Assert.assertEquals(values.size(), mapped.size());
+            Assert.assertEquals(Arrays.asList("Java", "java", "JavaScript"),
+                    query(mapped, "JAV", 0));
+            Assert.assertEquals(Arrays.asList("Äpfel", "äpfel"),
+                    query(mapped, "ä", 0));
+            for (String term : Arrays.asList("1", "12", "123", "0ab", "6", "j", "x")) {
+                for (int limit : new int[]{0, 1, 10}) {
+                    Assert.assertEquals(term + "/" + limit,
+                            query(collection, term, limit), query(mapped, term, limit));
+                }
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void replacesFilesAtomically() throws Exception {
+        Path directory = Files.createTempDirectory("dictionaries");
+        Path file = directory.resolve("cities.bin");
+        try {
+            MappedDictionaryWriter.write(Arrays.asList("Bern", "Berlin"), true, file);
+            MappedSuggestionProvider old = new MappedSuggestionProvider(file);
+            Assert.assertEquals(Arrays.asList("Berlin", "Bern"), query(old, "ber", 0));
+
+            MappedDictionaryWriter.write(Arrays.asList("Bergen"), true, file);
+            // the old provider still reads the file it has mapped
+            Assert.assertEquals(Arrays.asList("Berlin", "Bern"), query(old, "ber", 0));
+            Assert.assertEquals(Arrays.asList("Bergen"),
+                    query(new MappedSuggestionProvider(file), "ber", 0));
+            // no temporary file is left behind
+            try (Stream<Path> files = Files.list(directory)) {
+                Assert.assertEquals(Arrays.asList(file), files.collect(Collectors.toList()));
+            }
+        } finally {
+            Files.deleteIfExists(file);
+            Files.delete(directory);
+        }
+    }
+
+    @Test
+    public void sharesVerifiedMappingPerVersion() throws Exception {
+        Path file = Files.createTempFile("dictionary", ".bin");
+        try {
+            MappedDictionaryWriter.write(Arrays.asList("Bern", "Berlin"), true, file);
+            MappedSuggestionProvider first = new MappedSuggestionProvider(file);
+            FileTime lastModified = Files.getLastModifiedTime(file);
+            byte[] bytes = Files.readAllBytes(file);
+            bytes[bytes.length - 1] ^= 1;
+            Files.write(file, bytes);
+            Files.setLastModifiedTime(file, lastModified);
+            // the same version of the file is neither mapped nor verified again
+            MappedSuggestionProvider second = new MappedSuggestionProvider(Paths.get(
+                    file.getParent().toString(), ".", file.getFileName().toString()));
+            Assert.assertEquals(first.size(), second.size());
+
+            Files.setLastModifiedTime(file, FileTime.fromMillis(lastModified.toMillis() + 1000));
+            try {
+                new MappedSuggestionProvider(file);
+                Assert.fail("corrupt file accepted");
+            } catch (IOException e) {
+                Assert.assertTrue(e.getMessage().startsWith("Checksum mismatch"));
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void rejectsMismatchedOrCorruptFiles() throws Exception {
+        Path file = Files.createTempFile("dictionary", ".bin");
+        try {
+            MappedDictionaryWriter.write(Arrays.asList("Java", "Go"), true,
+                    Locale.GERMAN, file);
+            new MappedSuggestionProvider(file, true, Locale.GERMAN);
+            try {
+                new MappedSuggestionProvider(file, false, Locale.GERMAN);
+                Assert.fail("ignoreCase mismatch accepted");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+            try {
+                new MappedSuggestionProvider(file, true, Locale.ROOT);
+                Assert.fail("locale mismatch accepted");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+            // the locale has no effect on case sensitive matching
+            MappedDictionaryWriter.write(Arrays.asList("Java", "Go"), false,
+                    Locale.GERMAN, file);
+            new MappedSuggestionProvider(file, false, Locale.ROOT);
+            new MappedSuggestionProvider(file, false);
+
+            // the defaults of the writer and the provider agree
+            MappedDictionaryWriter.write(Arrays.asList("Java", "Go"), true, file);
+            Assert.assertEquals(Locale.ROOT,
+                    new MappedSuggestionProvider(file, true).getLocale());
+
+            byte[] bytes = Files.readAllBytes(file);
+            bytes[bytes.length - 1] ^= 1;
+            FileTime lastModified = Files.getLastModifiedTime(file);
+            Files.write(file, bytes);
+            // a new version even if the clock has not advanced
+            Files.setLastModifiedTime(file, FileTime.fromMillis(lastModified.toMillis() + 1000));
+            try {
+                new MappedSuggestionProvider(file);
+                Assert.fail("corrupt file accepted");
+            } catch (IOException e) {
+                Assert.assertTrue(e.getMessage().startsWith("Checksum mismatch"));
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2017 Max Schuster.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.maxschuster.vaadin.autocompletetextfield.provider;
+
+import eu.maxschuster.vaadin.autocompletetextfield.AutocompleteQuery;
+import eu.maxschuster.vaadin.autocompletetextfield.AutocompleteSuggestion;
+import eu.maxschuster.vaadin.autocompletetextfield.AutocompleteSuggestionProvider;
+import eu.maxschuster.vaadin.autocompletetextfield.AutocompleteTextFieldExtension;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ParallelScanSuggestionProviderTest {
+
+    private static List<String> query(AutocompleteSuggestionProvider provider,
+            String term, int limit) {
+        AutocompleteQuery query = new AutocompleteQuery(
+                new AutocompleteTextFieldExtension(), term, limit);
+        List<String> result = new ArrayList<>();
+        for (AutocompleteSuggestion suggestion : provider.querySuggestions(query)) {
+            result.add(suggestion.getValue());
+        }
+        return result;
+    }
+
+    @Test
+    public void matchesSequentialScan() {
+        List<String> values = new ArrayList<>();
+        for (int i = 0; i < 50000; ++i) {
+            values.add(Integer.toString(i * 7919 % 50021, 6) + "-" + (i % 7 == 0 ? "Ab" : "aB")
+                    + (i % 5 == 0 ? " " + Integer.toString(i, 3) : ""));
+        }
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (MatchMode matchMode : EnumSet.complementOf(EnumSet.of(MatchMode.FUZZY))) {
+                CollectionSuggestionProvider scan = new CollectionSuggestionProvider(
+                        values, matchMode, true, Locale.ROOT).withIndexed(false);
+                ParallelScanSuggestionProvider parallel = new ParallelScanSuggestionProvider(
+                        values, matchMode, true, Locale.ROOT).withPool(pool);
+                for (String term : Arrays.asList("1", "12", "123", "4-a", "0-ab",
+                        "ab 1", "1234", "5555-ab", "ab", "x", "55x")) {
+                    for (int limit : new int[]{0, 1, 10, 5000}) {
+                        Assert.assertEquals(matchMode + "/" + term + "/" + limit,
+                                query(scan, term, limit), query(parallel, term, limit));
+                    }
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void customMatcher() {
+        List<String> values = new ArrayList<>();
+        for (int i = 0; i < 20000; ++i) {
+            values.add("Value " + i);
+        }
+        ParallelScanSuggestionProvider provider = new ParallelScanSuggestionProvider(
+                values, (value, term) -> value.endsWith(term), true, Locale.ROOT);
+        Assert.assertEquals(Arrays.asList("Value 99", "Value 199", "Value 299"),
+                query(provider, "99", 3));
+        Assert.assertEquals(20, query(provider, "999", 0).size());
+        Assert.assertEquals(Arrays.asList(), query(provider, "x", 0));
+    }
+
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright 2017 Max Schuster.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.maxschuster.vaadin.autocompletetextfield.provider;
+
+import eu.maxschuster.vaadin.autocompletetextfield.AutocompleteQuery;
+import eu.maxschuster.vaadin.autocompletetextfield.AutocompleteSuggestion;
+import eu.maxschuster.vaadin.autocompletetextfield.AutocompleteSuggestionProvider;
+import eu.maxschuster.vaadin.autocompletetextfield.AutocompleteTextFieldExtension;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SharedSuggestionCacheTest {
+
+    private static List<String> query(AutocompleteSuggestionProvider provider,
+            String term, int limit) {
+        AutocompleteQuery query = new AutocompleteQuery(
+                new AutocompleteTextFieldExtension(), term, limit);
+        List<String> result = new ArrayList<>();
+        for (AutocompleteSuggestion suggestion : provider.querySuggestions(query)) {
+            result.add(suggestion.getValue());
+        }
+        return result;
+    }
+
+    @Test
+    public void coalescesConcurrentMisses() throws Exception {
+        SharedSuggestionCache cache = new SharedSuggestionCache(1000);
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AutocompleteSuggestionProvider slow = query -> {
+            calls.incrementAndGet();
+            loading.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            return Arrays.asList(new AutocompleteSuggestion("München"));
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<List<String>>> results = new ArrayList<>();
+            for (int i = 0; i < 8; ++i) {
+                // every session has its own provider instance
+                SharedCachingSuggestionProvider provider = new SharedCachingSuggestionProvider(
+                        slow, "cities", true, Locale.ROOT, cache);
+                String term = i % 2 == 0 ? "mü" : "MÜ";
+                results.add(executor.submit(() -> query(provider, term, 5)));
+                if (i == 0) {
+                    Assert.assertTrue(loading.await(10, TimeUnit.SECONDS));
+                }
+            }
+            release.countDown();
+            for (Future<List<String>> result : results) {
+                Assert.assertEquals(Arrays.asList("München"), result.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdown();
+        }
+        Assert.assertEquals(1, calls.get());
+        Assert.assertEquals(1, cache.getMissCount());
+        Assert.assertEquals(7, cache.getHitCount());
+        Assert.assertEquals(1, cache.getWeight());
+    }
+
+    @Test
+    public void evictsByWeight() {
+        SharedSuggestionCache cache = new SharedSuggestionCache(10);
+        AtomicInteger calls = new AtomicInteger();
+        AutocompleteSuggestionProvider provider = query -> {
+            calls.incrementAndGet();
+            List<AutocompleteSuggestion> suggestions = new ArrayList<>();
+            for (int i = 0; i < query.getLimit(); ++i) {
+                suggestions.add(new AutocompleteSuggestion(query.getTerm() + i));
+            }
+            return suggestions;
+        };
+        SharedCachingSuggestionProvider a = new SharedCachingSuggestionProvider(
+                provider, "a", false, Locale.ROOT, cache);
+        SharedCachingSuggestionProvider b = new SharedCachingSuggestionProvider(
+                provider, "b", false, Locale.ROOT, cache);
+        query(a, "x", 4);
+        query(a, "y", 4);
+        query(a, "x", 4); // gets a second chance
+        Assert.assertEquals(8, cache.getWeight());
+        query(b, "x", 4);
+        Assert.assertEquals(8, cache.getWeight());
+        Assert.assertEquals(3, calls.get());
+        query(a, "x", 4);
+        Assert.assertEquals(3, calls.get());
+        query(a, "y", 4); // evicts b/x, which has not been used again
+        Assert.assertEquals(4, calls.get());
+
+        query(b, "z", 1);
+        Assert.assertEquals(9, cache.getWeight());
+        cache.invalidate("a");
+        Assert.assertEquals(1, cache.getWeight());
+        query(b, "z", 1);
+        Assert.assertEquals(5, calls.get());
+        query(a, "x", 4);
+        Assert.assertEquals(6, calls.get());
+        cache.invalidateAll();
+        Assert.assertEquals(0, cache.getWeight());
+    }
+
+    @Test
+    public void doesNotCacheFailures() {
+        SharedSuggestionCache cache = new SharedSuggestionCache(10);
+        AtomicInteger calls = new AtomicInteger();
+        SharedCachingSuggestionProvider provider = new SharedCachingSuggestionProvider(
+                query -> {
+                    if (calls.incrementAndGet() == 1) {
+                        throw new IllegalStateException("database down");
+                    }
+                    return Collections.emptyList();
+                }, "failing", false, Locale.ROOT, cache);
+        try {
+            query(provider, "x", 0);
+            Assert.fail("exception expected");
+        } catch (IllegalStateException ex) {
+            Assert.assertEquals("database down", ex.getMessage());
+        }
+        Assert.assertEquals(Arrays.asList(), query(provider, "x", 0));
+        Assert.assertEquals(Arrays.asList(), query(provider, "x", 0));
+        Assert.assertEquals(2, calls.get());
+        Assert.assertEquals(1, cache.getWeight());
+    }
+
+    @Test
+    public void doesNotCacheIncompleteResults() {
+        SharedSuggestionCache cache = new SharedSuggestionCache(10);
+        AtomicInteger calls = new AtomicInteger();
+        SharedCachingSuggestionProvider provider = new SharedCachingSuggestionProvider(
+                query -> {
+                    if (calls.incrementAndGet() == 1) {
+                        query.markIncomplete(); // ran out of time
+                    }
+                    return Arrays.asList(new AutocompleteSuggestion("x" + calls.get()));
+                }, "partial", false, Locale.ROOT, cache);
+        Assert.assertEquals(Arrays.asList("x1"), query(provider, "x", 0));
+        Assert.assertEquals(0, cache.getWeight());
+        Assert.assertEquals(Arrays.asList("x2"), query(provider, "x", 0));
+        Assert.assertEquals(Arrays.asList("x2"), query(provider, "x", 0));
+        Assert.assertEquals(2, calls.get());
+        Assert.assertEquals(1, cache.getWeight());
+    }
+
+    @Test
+    public void waitersDoNotShareIncompleteResults() throws Exception {
+        SharedSuggestionCache cache = new SharedSuggestionCache(10);
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        SharedCachingSuggestionProvider provider = new SharedCachingSuggestionProvider(
+                query -> {
+                    if (calls.incrementAndGet() == 1) {
+                        loading.countDown();
+                        try {
+                            release.await(10, TimeUnit.SECONDS);
+                        } catch (InterruptedException ex) {
+                            Thread.currentThread().interrupt();
+                        }
+                        query.markIncomplete(); // ran out of time
+                    }
+                    return Arrays.asList(new AutocompleteSuggestion("x" + calls.get()));
+                }, "partial", false, Locale.ROOT, cache);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<List<String>> first = executor.submit(() -> query(provider, "x", 0));
+            Assert.assertTrue(loading.await(10, TimeUnit.SECONDS));
+            Future<List<String>> waiting = executor.submit(() -> query(provider, "x", 0));
+            Thread.sleep(50);
+            release.countDown();
+            Assert.assertEquals(Arrays.asList("x1"), first.get(10, TimeUnit.SECONDS));
+            // the waiting query loads the result again instead of taking "x1"
+            Assert.assertEquals(Arrays.asList("x2"), waiting.get(10, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdown();
+        }
+        Assert.assertEquals(2, calls.get());
+        Assert.assertEquals(1, cache.getWeight());
+    }
+
+    @Test
+    public void waitersStopAtTheirDeadline() throws Exception {
+        SharedSuggestionCache cache = new SharedSuggestionCache(10);
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        SharedCachingSuggestionProvider provider = new SharedCachingSuggestionProvider(
+                query -> {
+                    loading.countDown();
+                    try {
+                        release.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return Arrays.asList(new AutocompleteSuggestion("x"));
+                }, "slow", false, Locale.ROOT, cache);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<List<String>> first = executor.submit(() -> query(provider, "x", 0));
+            Assert.assertTrue(loading.await(10, TimeUnit.SECONDS));
+            AutocompleteQuery query = new AutocompleteQuery(
+                    new AutocompleteTextFieldExtension(), "x", 0, Duration.ofMillis(50));
+            long start = System.nanoTime();
+            Assert.assertTrue(provider.querySuggestions(query).isEmpty());
+            Assert.assertTrue(query.isIncomplete());
+            Assert.assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+            release.countDown();
+            Assert.assertEquals(Arrays.asList("x"), first.get(10, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+
+}
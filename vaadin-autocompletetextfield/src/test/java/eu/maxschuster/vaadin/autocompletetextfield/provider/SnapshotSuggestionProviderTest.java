@@ -0,0 +1,99 @@
+/*
+ * Copyright 2017 Max Schuster.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.maxschuster.vaadin.autocompletetextfield.provider;
+
+import eu.maxschuster.vaadin.autocompletetextfield.AutocompleteQuery;
+import eu.maxschuster.vaadin.autocompletetextfield.AutocompleteSuggestion;
+import eu.maxschuster.vaadin.autocompletetextfield.AutocompleteTextFieldExtension;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SnapshotSuggestionProviderTest {
+
+    private static final AutocompleteTextFieldExtension EXTENSION
+            = new AutocompleteTextFieldExtension();
+
+    private static List<String> query(SnapshotSuggestionProvider provider,
+            String term, int limit) {
+        List<String> result = new ArrayList<>();
+        for (AutocompleteSuggestion suggestion : provider.querySuggestions(
+                new AutocompleteQuery(EXTENSION, term, limit))) {
+            result.add(suggestion.getValue());
+        }
+        return result;
+    }
+
+    @Test
+    public void modifications() {
+        SnapshotSuggestionProvider provider = new SnapshotSuggestionProvider(
+                Arrays.asList("Java", "JavaScript", "Go"), MatchMode.BEGINS,
+                true, Locale.ROOT);
+        provider.addValue("java");
+        Assert.assertEquals(Arrays.asList("Java", "JavaScript", "java"),
+                query(provider, "JAV", 0));
+        Assert.assertTrue(provider.removeValue("JavaScript"));
+        Assert.assertFalse(provider.removeValue("JavaScript"));
+        provider.setMatchMode(MatchMode.CONTAINS);
+        Assert.assertEquals(Arrays.asList("Java", "java"), query(provider, "va", 0));
+        provider.setIgnoreCase(false);
+        Assert.assertEquals(Arrays.asList("Java"), query(provider, "Ja", 0));
+        provider.addValue("Java");
+        Assert.assertTrue(provider.removeValue("Java"));
+        // only the first occurrence is removed
+        Assert.assertEquals(Arrays.asList("java", "Java"), query(provider, "a", 0));
+    }
+
+    @Test
+    public void concurrentReadersSeeConsistentSnapshots() throws InterruptedException {
+        final SnapshotSuggestionProvider provider = new SnapshotSuggestionProvider(
+                Arrays.asList("a0", "b0"));
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread[] readers = new Thread[4];
+        for (int r = 0; r < readers.length; ++r) {
+            readers[r] = new Thread(() -> {
+                try {
+                    for (int i = 0; i < 2000; ++i) {
+                        // values are always added in pairs
+                        int a = query(provider, "a", 0).size();
+                        List<String> all = new ArrayList<>(provider.getValues());
+                        Assert.assertEquals(0, all.size() % 2);
+                        Assert.assertTrue(a >= 1);
+                    }
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                }
+            });
+            readers[r].start();
+        }
+        for (int i = 1; i <= 200; ++i) {
+            provider.addAll(Arrays.asList("a" + i, "b" + i));
+        }
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        Assert.assertEquals(201, query(provider, "a", 0).size());
+        Assert.assertEquals(Arrays.asList("a1", "a10"), query(provider, "a1", 2));
+    }
+
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2017 Max Schuster.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.maxschuster.vaadin.autocompletetextfield.provider;
+
+import eu.maxschuster.vaadin.autocompletetextfield.AutocompleteQuery;
+import eu.maxschuster.vaadin.autocompletetextfield.AutocompleteSuggestion;
+import eu.maxschuster.vaadin.autocompletetextfield.AutocompleteSuggestionProvider;
+import eu.maxschuster.vaadin.autocompletetextfield.AutocompleteTextFieldExtension;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SuffixArraySuggestionProviderTest {
+
+    private static List<String> query(AutocompleteSuggestionProvider provider,
+            String term, int limit) {
+        AutocompleteQuery query = new AutocompleteQuery(
+                new AutocompleteTextFieldExtension(), term, limit);
+        List<String> result = new ArrayList<>();
+        for (AutocompleteSuggestion suggestion : provider.querySuggestions(query)) {
+            result.add(suggestion.getValue());
+        }
+        return result;
+    }
+
+    @Test
+    public void matchesLikeCollectionProvider() {
+        List<String> values = new ArrayList<>();
+        for (int i = 0; i < 2000; ++i) {
+            values.add("St. " + Integer.toString(i * 7919 % 2003, 4) + (i % 3 == 0 ? "a" : "A"));
+        }
+        values.add("");
+        values.add("aaaa");
+        values.add("a");
+        SuffixArraySuggestionProvider ordered = new SuffixArraySuggestionProvider(
+                values, true, Locale.ROOT);
+        SuffixArraySuggestionProvider unordered = new SuffixArraySuggestionProvider(
+                values, true, Locale.ROOT, false);
+        CollectionSuggestionProvider collection = new CollectionSuggestionProvider(
+                values, MatchMode.CONTAINS, true, Locale.ROOT).withIndexed(false);
+        for (String term : Arrays.asList("1", "12", "123", "0a", "aa", "A",
+                "st. 3", ". ", "33333", "x", "a\uffff")) {
+            for (int limit : new int[]{0, 1, 5, 50, 5000}) {
+                List<String> expected = query(collection, term, limit);
+                Assert.assertEquals(term + "/" + limit, expected,
+                        query(ordered, term, limit));
+                List<String> actual = query(unordered, term, limit);
+                Assert.assertEquals(expected.size(), actual.size());
+                Assert.assertEquals(actual.size(), new HashSet<>(actual).size());
+                if (limit == 0) {
+                    Assert.assertEquals(new HashSet<>(expected), new HashSet<>(actual));
+                }
+            }
+        }
+    }
+
+}
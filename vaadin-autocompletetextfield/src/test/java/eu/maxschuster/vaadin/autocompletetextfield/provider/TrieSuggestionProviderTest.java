@@ -0,0 +1,66 @@
+/*
+ * Copyright 2017 Max Schuster.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.maxschuster.vaadin.autocompletetextfield.provider;
+
+import eu.maxschuster.vaadin.autocompletetextfield.AutocompleteQuery;
+import eu.maxschuster.vaadin.autocompletetextfield.AutocompleteSuggestion;
+import eu.maxschuster.vaadin.autocompletetextfield.AutocompleteSuggestionProvider;
+import eu.maxschuster.vaadin.autocompletetextfield.AutocompleteTextFieldExtension;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TrieSuggestionProviderTest {
+
+    private static List<String> query(AutocompleteSuggestionProvider provider,
+            String term, int limit) {
+        AutocompleteQuery query = new AutocompleteQuery(
+                new AutocompleteTextFieldExtension(), term, limit);
+        List<String> result = new ArrayList<>();
+        for (AutocompleteSuggestion suggestion : provider.querySuggestions(query)) {
+            result.add(suggestion.getValue());
+        }
+        return result;
+    }
+
+    @Test
+    public void matchesLikeCollectionProvider() {
+        List<String> values = new ArrayList<>();
+        for (int i = 0; i < 2000; ++i) {
+            values.add(Integer.toString(i * 7919 % 2003, 5));
+        }
+        values.add("");
+        values.add("1");
+        values.add("Abc");
+        values.add("abcd");
+        TrieSuggestionProvider trie = new TrieSuggestionProvider(
+                values, true, Locale.ROOT, 3);
+        CollectionSuggestionProvider collection = new CollectionSuggestionProvider(
+                values, MatchMode.BEGINS, true, Locale.ROOT);
+        for (String term : Arrays.asList("1", "12", "1234", "40", "4444",
+                "ab", "ABC", "abcde", "9")) {
+            for (int limit : new int[]{0, 1, 3, 5, 50}) {
+                Assert.assertEquals(term + "/" + limit,
+                        query(collection, term, limit),
+                        query(trie, term, limit));
+            }
+        }
+    }
+
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2017 Max Schuster.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.maxschuster.vaadin.autocompletetextfield.provider;
+
+import eu.maxschuster.vaadin.autocompletetextfield.AutocompleteQuery;
+import eu.maxschuster.vaadin.autocompletetextfield.AutocompleteSuggestion;
+import eu.maxschuster.vaadin.autocompletetextfield.AutocompleteTextFieldExtension;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TwoPhaseSuggestionProviderTest {
+
+    private static List<String> values(Iterable<AutocompleteSuggestion> suggestions) {
+        List<String> result = new ArrayList<>();
+        for (AutocompleteSuggestion suggestion : suggestions) {
+            result.add(suggestion.getValue());
+        }
+        return result;
+    }
+
+    @Test
+    public void appendsSlowSuggestions() {
+        CollectionSuggestionProvider fast = new CollectionSuggestionProvider(
+                Arrays.asList("Berlin", "Bern"), MatchMode.BEGINS, true, Locale.ROOT);
+        AtomicInteger slowCalls = new AtomicInteger();
+        TwoPhaseSuggestionProvider provider = new TwoPhaseSuggestionProvider(fast,
+                query -> {
+                    slowCalls.incrementAndGet();
+                    return Arrays.asList(new AutocompleteSuggestion("Bergamo"),
+                            new AutocompleteSuggestion("Bern"),
+                            new AutocompleteSuggestion("Bergen"));
+                });
+        AutocompleteTextFieldExtension extension = new AutocompleteTextFieldExtension();
+
+        List<AutocompleteSuggestion> first = new ArrayList<>();
+        provider.collectFirstSuggestions(new AutocompleteQuery(extension, "ber", 3), first);
+        Assert.assertEquals(Arrays.asList("Berlin", "Bern"), values(first));
+        Assert.assertEquals(0, slowCalls.get());
+
+        Assert.assertEquals(Arrays.asList("Berlin", "Bern", "Bergamo"), values(
+                provider.querySuggestions(new AutocompleteQuery(extension, "ber", 3))));
+        Assert.assertEquals(Arrays.asList("Berlin", "Bern", "Bergamo", "Bergen"), values(
+                provider.querySuggestions(new AutocompleteQuery(extension, "ber", 0))));
+        Assert.assertEquals(2, slowCalls.get());
+
+        // the fast suggestions reach the limit
+        Assert.assertEquals(Arrays.asList("Berlin", "Bern"), values(
+                provider.querySuggestions(new AutocompleteQuery(extension, "ber", 2))));
+        Assert.assertEquals(2, slowCalls.get());
+    }
+
+    @Test
+    public void refinesWithoutQueryingTheFastProvider() throws Exception {
+        Thread session = Thread.currentThread();
+        CollectionSuggestionProvider values = new CollectionSuggestionProvider(
+                Arrays.asList("Berlin", "Bern", "Bonn"), MatchMode.BEGINS, true, Locale.ROOT);
+        AtomicInteger foreignCalls = new AtomicInteger();
+        CountDownLatch refining = new CountDownLatch(1);
+        CountDownLatch nextFirst = new CountDownLatch(1);
+        TwoPhaseSuggestionProvider provider = new TwoPhaseSuggestionProvider(
+                query -> {
+                    if (Thread.currentThread() != session) {
+                        foreignCalls.incrementAndGet();
+                    }
+                    return values.querySuggestions(query);
+                },
+                query -> {
+                    refining.countDown();
+                    try {
+                        // the first phase of the next query runs meanwhile
+                        nextFirst.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return Arrays.asList(new AutocompleteSuggestion("Bergen"),
+                            new AutocompleteSuggestion("Bern"));
+                });
+        AutocompleteTextFieldExtension extension = new AutocompleteTextFieldExtension();
+
+        AutocompleteQuery query = new AutocompleteQuery(extension, "ber", 0);
+        List<AutocompleteSuggestion> first = new ArrayList<>();
+        provider.collectFirstSuggestions(query, first);
+        CompletableFuture<Collection<AutocompleteSuggestion>> refined
+                = CompletableFuture.supplyAsync(() -> provider.refineSuggestions(query, first));
+        Assert.assertTrue(refining.await(10, TimeUnit.SECONDS));
+        List<AutocompleteSuggestion> next = new ArrayList<>();
+        provider.collectFirstSuggestions(new AutocompleteQuery(extension, "bo", 0), next);
+        nextFirst.countDown();
+
+        Assert.assertEquals(Arrays.asList("Bonn"), values(next));
+        Assert.assertEquals(Arrays.asList("Berlin", "Bern", "Bergen"),
+                values(refined.get(10, TimeUnit.SECONDS)));
+        Assert.assertEquals(0, foreignCalls.get());
+    }
+
+}
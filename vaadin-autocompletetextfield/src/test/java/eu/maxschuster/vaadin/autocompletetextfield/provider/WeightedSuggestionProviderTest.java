@@ -0,0 +1,84 @@
+/*
+ * Copyright 2017 Max Schuster.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.maxschuster.vaadin.autocompletetextfield.provider;
+
+import eu.maxschuster.vaadin.autocompletetextfield.AutocompleteQuery;
+import eu.maxschuster.vaadin.autocompletetextfield.AutocompleteSuggestion;
+import eu.maxschuster.vaadin.autocompletetextfield.AutocompleteTextFieldExtension;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class WeightedSuggestionProviderTest {
+
+    private static List<String> query(WeightedSuggestionProvider provider,
+            String term, int limit) {
+        AutocompleteQuery query = new AutocompleteQuery(
+                new AutocompleteTextFieldExtension(), term, limit);
+        List<String> result = new ArrayList<>();
+        for (AutocompleteSuggestion suggestion : provider.querySuggestions(query)) {
+            result.add(suggestion.getValue());
+        }
+        return result;
+    }
+
+    @Test
+    public void returnsTopByWeight() {
+        Map<String, Integer> values = new LinkedHashMap<>();
+        values.put("Java", 10);
+        values.put("JavaScript", 50);
+        values.put("Julia", 5);
+        values.put("Jython", 10);
+        values.put("Go", 100);
+        values.put("JAVA EE", 50);
+        WeightedSuggestionProvider provider = new WeightedSuggestionProvider(
+                values, true, Locale.ROOT);
+        Assert.assertEquals(Arrays.asList("JavaScript", "JAVA EE"),
+                query(provider, "j", 2));
+        Assert.assertEquals(Arrays.asList("JavaScript", "JAVA EE", "Java",
+                "Jython", "Julia"), query(provider, "J", 0));
+        Assert.assertEquals(Arrays.asList("JavaScript", "JAVA EE", "Java"),
+                query(provider, "jav", 10));
+        Assert.assertEquals(Arrays.asList(), query(provider, "x", 10));
+    }
+
+    @Test
+    public void matchesSortedScan() {
+        Map<String, Integer> values = new LinkedHashMap<>();
+        for (int i = 0; i < 1000; ++i) {
+            values.put(Integer.toString(i * 7919 % 1009, 3), i * 31 % 17);
+        }
+        WeightedSuggestionProvider provider = new WeightedSuggestionProvider(values);
+        for (String term : Arrays.asList("1", "12", "210", "2222")) {
+            List<String> expected = new ArrayList<>();
+            for (String value : values.keySet()) {
+                if (value.startsWith(term)) {
+                    expected.add(value);
+                }
+            }
+            // stable sort keeps the original order of equal weights
+            expected.sort((a, b) -> values.get(b) - values.get(a));
+            Assert.assertEquals(expected.subList(0, Math.min(7, expected.size())),
+                    query(provider, term, 7));
+        }
+    }
+
+}